@@ -0,0 +1,259 @@
+package com.mycompany.xmljsonapi;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Admission control for the conversion endpoints (POST /api/**), so a burst of
+ * large documents is turned away instead of running the server out of memory.
+ *
+ * Two budgets, each waited on for at most xmljson.admission.max-wait:
+ *   - conversion slots, xmljson.admission.conversions-per-core per CPU. A full
+ *     house answers 503 Service Unavailable.
+ *   - in-flight body bytes of the whole-document endpoints, which hold the body and
+ *     its tree in memory (xmljson.admission.max-in-flight-bytes, default an eighth
+ *     of the heap). Over budget answers 429 Too Many Requests. A body larger than
+ *     the whole budget can never fit and gets 413.
+ * Both rejections carry Retry-After. Streaming and batch requests only take a slot;
+ * NdjsonBatchConverter bounds a batch by xmljson.batch.max-line-size instead.
+ *
+ * Bodies without a Content-Length (chunked) are counted as xmljson.admission.unknown-size,
+ * gzip bodies as eight times their compressed length. Those are guesses, so the body is
+ * held to them: reading past the admitted bytes fails with 413, and GzipRequestFilter
+ * caps the inflated body at the same number (ADMITTED_BYTES). Runs before
+ * GzipRequestFilter so the request is judged on its headers, before anything is read.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 100)
+public class AdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    // request attribute: the body bytes admitted for a whole-document conversion, a Long
+    static final String ADMITTED_BYTES = AdmissionFilter.class.getName() + ".admittedBytes";
+
+    private static final String STREAM_PREFIX = "/api/stream/";
+    private static final String BATCH_PATH = "/api/batch";
+    // documents usually compress 5 to 10 times
+    private static final long GZIP_EXPANSION = 8;
+
+    private final boolean enabled;
+    private final int slots;
+    private final long maxKilobytes;
+    private final long unknownSize;
+    private final long maxWaitNanos;
+    private final String retryAfterSeconds;
+
+    private final Semaphore conversions;
+    // in KB, so budgets up to terabytes fit in the int permits
+    private final Semaphore kilobytes;
+
+    private final LongAdder rejectedBusy = new LongAdder();
+    private final LongAdder rejectedBytes = new LongAdder();
+    private final LongAdder rejectedTooLarge = new LongAdder();
+
+    public AdmissionFilter(@Value("${xmljson.admission.enabled:true}") boolean enabled,
+                           @Value("${xmljson.admission.conversions-per-core:2}") int conversionsPerCore,
+                           @Value("${xmljson.admission.max-in-flight-bytes:}") DataSize maxInFlight,
+                           @Value("${xmljson.admission.unknown-size:1MB}") DataSize unknownSize,
+                           @Value("${xmljson.admission.max-wait:100ms}") Duration maxWait,
+                           @Value("${xmljson.admission.retry-after:1s}") Duration retryAfter) {
+        long budget = (maxInFlight != null) ? maxInFlight.toBytes() : Runtime.getRuntime().maxMemory() / 8;
+
+        this.enabled = enabled;
+        this.slots = Math.max(1, Runtime.getRuntime().availableProcessors() * conversionsPerCore);
+        this.maxKilobytes = Math.max(1, Math.min(Integer.MAX_VALUE, budget / 1024));
+        this.unknownSize = unknownSize.toBytes();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.retryAfterSeconds = String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+        this.conversions = new Semaphore(slots, true);
+        this.kilobytes = new Semaphore((int) maxKilobytes, true);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int weight = holdsDocument(request.getRequestURI()) ? kilobytes(request) : 0;
+        if (weight > maxKilobytes) {
+            rejectedTooLarge.increment();
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "Document larger than the conversion memory budget; use the /api/stream endpoints");
+            return;
+        }
+
+        if (!acquire(conversions, 1)) {
+            rejectedBusy.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "All conversion slots are busy");
+            return;
+        }
+        if (weight > 0 && !acquire(kilobytes, weight)) {
+            conversions.release();
+            rejectedBytes.increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many bytes are being converted");
+            return;
+        }
+
+        Admission admission = new Admission(weight);
+        try {
+            chain.doFilter((weight > 0) ? new AdmittedRequest(request, weight * 1024L) : request, response);
+        } finally {
+            // streaming and batch responses are written after the handler returns
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(admission);
+            } else {
+                admission.release();
+            }
+        }
+    }
+
+    private boolean acquire(Semaphore budget, int permits) throws ServletException {
+        try {
+            return budget.tryAcquire(permits, maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for admission", e);
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.sendError(status.value(), message);
+    }
+
+    private static boolean holdsDocument(String uri) {
+        return !uri.startsWith(STREAM_PREFIX) && !uri.equals(BATCH_PATH);
+    }
+
+    private int kilobytes(HttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        long bytes;
+        if (length < 0) {
+            bytes = unknownSize;
+        } else if (request.getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+            bytes = Math.max(unknownSize, length * GZIP_EXPANSION);
+        } else {
+            bytes = length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + 1023) / 1024));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("xmljson.admission.active", this, f -> f.slots - f.conversions.availablePermits())
+                .description("Conversions admitted and not finished")
+                .register(registry);
+        Gauge.builder("xmljson.admission.in.flight", this,
+                        f -> 1024.0 * (f.maxKilobytes - f.kilobytes.availablePermits()))
+                .description("Body bytes of the admitted whole-document conversions")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        rejected(registry, "busy", rejectedBusy);
+        rejected(registry, "bytes", rejectedBytes);
+        rejected(registry, "too-large", rejectedTooLarge);
+    }
+
+    private static void rejected(MeterRegistry registry, String reason, LongAdder count) {
+        FunctionCounter.builder("xmljson.admission.rejected", count, LongAdder::sum)
+                .description("Requests turned away by admission control")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    // The body as far as it was admitted: reading more bytes than were counted fails with 413
+    private static final class AdmittedRequest extends HttpServletRequestWrapper {
+        private final long bytes;
+        private ServletInputStream body;
+
+        AdmittedRequest(HttpServletRequest request, long bytes) {
+            super(request);
+            this.bytes = bytes;
+            request.setAttribute(ADMITTED_BYTES, bytes);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                ServletInputStream raw = super.getInputStream();
+                body = new BoundedInputStream(raw, raw, bytes,
+                        "Body larger than the " + bytes + " bytes admitted for it");
+            }
+            return body;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String charset = getCharacterEncoding();
+            Charset cs = (charset == null) ? StandardCharsets.UTF_8 : Charset.forName(charset);
+            return new BufferedReader(new InputStreamReader(getInputStream(), cs));
+        }
+    }
+
+    // Gives the budgets back once, when the request is done
+    private final class Admission implements AsyncListener {
+        private final int weight;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Admission(int weight) {
+            this.weight = weight;
+        }
+
+        void release() {
+            if (!released.compareAndSet(false, true)) return;
+            if (weight > 0) kilobytes.release(weight);
+            conversions.release();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.mycompany.xmljsonapi;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * A request body that fails with 413 Payload Too Large as soon as more than limit
+ * bytes are read from it. AdmissionFilter bounds the body by the bytes it admitted,
+ * GzipRequestFilter bounds the inflated body. in is either the raw body itself or a
+ * decoder reading from it.
+ */
+final class BoundedInputStream extends ServletInputStream {
+    private final ServletInputStream raw;
+    private final InputStream in;
+    private final long limit;
+    private final String message;
+    private long count;
+    private boolean finished;
+
+    BoundedInputStream(ServletInputStream raw, InputStream in, long limit, String message) {
+        this.raw = raw;
+        this.in = in;
+        this.limit = limit;
+        this.message = message;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            finished = true;
+        } else {
+            counted(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n < 0) {
+            finished = true;
+        } else {
+            counted(n);
+        }
+        return n;
+    }
+
+    private void counted(int n) {
+        count += n;
+        if (count > limit) throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, message);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+        return raw.isReady();
+    }
+
+    @Override
+    public void setReadListener(ReadListener listener) {
+        // a decoder pulls raw bytes with blocking reads, so readiness of the raw body says nothing
+        if (in != raw) throw new IllegalStateException("Non-blocking reads are not supported for encoded bodies");
+        raw.setReadListener(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,86 +1,214 @@
 package com.mycompany.xmljsonapi;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import com.mycompany.xmljsonconverter.BinaryFormat;
+import com.mycompany.xmljsonconverter.ConversionCache;
+import com.mycompany.xmljsonconverter.NdjsonBatchConverter;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
 public class ConvertController {
 
-    private final ObjectMapper jsonMapper;
-    private final XmlMapper xmlMapper;
-
-    public ConvertController() {
-        jsonMapper = new ObjectMapper();
-        jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
-
-        xmlMapper = new XmlMapper();
-        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
+    private final DocumentConverter documents;
+    private final StreamingConverter streaming;
+    private final NdjsonBatchConverter batch;
+    private final ConversionCache cache;
+
+    public ConvertController(DocumentConverter documents, StreamingConverter streaming, NdjsonBatchConverter batch,
+                             Optional<ConversionCache> cache) {
+        this.documents = documents;
+        this.streaming = streaming;
+        this.batch = batch;
+        this.cache = cache.orElse(null);
     }
 
+    // Bodies are taken and returned as raw bytes; the documents are not decoded into Strings
     @PostMapping(value = "/xml-to-json",
             consumes = MediaType.APPLICATION_XML_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String xmlToJson(@RequestBody String xml) throws Exception {
-
-        String rootName = extractXmlRootName(xml);
-        JsonNode node = xmlMapper.readTree(xml);
-
-        ObjectNode wrapped = jsonMapper.createObjectNode();
-        wrapped.set(rootName, node);
-
-        return jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(wrapped);
+    public byte[] xmlToJson(@RequestBody byte[] xml,
+                            @RequestParam(required = false) String format,
+                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.xmlToJson(xml, outputFormat(format, accept));
     }
 
     @PostMapping(value = "/json-to-xml",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_XML_VALUE)
-    public String jsonToXml(@RequestBody String json,
-                            @RequestParam(defaultValue = "root") String root) throws Exception {
-        JsonNode node = jsonMapper.readTree(json);
-        return xmlMapper.writer().withRootName(root).writeValueAsString(node);
+    public byte[] jsonToXml(@RequestBody byte[] json,
+                            @RequestParam(defaultValue = "root") String root,
+                            @RequestParam(required = false) String format,
+                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.jsonToXml(json, root, outputFormat(format, accept));
     }
 
     @PostMapping(value = "/json-to-xml-auto",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_XML_VALUE)
-    public String jsonToXmlAuto(@RequestBody String json) throws Exception {
-        JsonNode node = jsonMapper.readTree(json);
+    public byte[] jsonToXmlAuto(@RequestBody byte[] json,
+                                @RequestParam(required = false) String format,
+                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.jsonToXmlAuto(json, outputFormat(format, accept));
+    }
+
+    /*
+     * Binary variants for service-to-service hops, {codec} is smile or cbor: e.g.
+     * XML -> /api/xml-to-smile -> /api/smile-to-xml -> XML with no JSON text in between.
+     * The literal JSON endpoints above take precedence over these patterns.
+     */
+    @PostMapping(value = "/xml-to-{codec:smile|cbor}",
+            consumes = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<byte[]> xmlToBinary(@RequestBody byte[] xml, @PathVariable String codec) throws Exception {
+        BinaryFormat binary = BinaryFormat.of(codec);
+        return binary(binary, documents.xmlToBinary(xml, binary));
+    }
+
+    @PostMapping(value = "/json-to-{codec:smile|cbor}",
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> jsonToBinary(@RequestBody byte[] json, @PathVariable String codec) throws Exception {
+        BinaryFormat binary = BinaryFormat.of(codec);
+        return binary(binary, documents.jsonToBinary(json, binary));
+    }
+
+    @PostMapping(value = "/{codec:smile|cbor}-to-xml",
+            consumes = {BinaryFormat.SMILE_MEDIA_TYPE, BinaryFormat.CBOR_MEDIA_TYPE},
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public byte[] binaryToXml(@RequestBody byte[] data,
+                              @PathVariable String codec,
+                              @RequestParam(defaultValue = "root") String root,
+                              @RequestParam(required = false) String format,
+                              @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.binaryToXml(data, BinaryFormat.of(codec), root, outputFormat(format, accept));
+    }
+
+    @PostMapping(value = "/{codec:smile|cbor}-to-xml-auto",
+            consumes = {BinaryFormat.SMILE_MEDIA_TYPE, BinaryFormat.CBOR_MEDIA_TYPE},
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public byte[] binaryToXmlAuto(@RequestBody byte[] data,
+                                  @PathVariable String codec,
+                                  @RequestParam(required = false) String format,
+                                  @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.binaryToXmlAuto(data, BinaryFormat.of(codec), outputFormat(format, accept));
+    }
+
+    @PostMapping(value = "/{codec:smile|cbor}-to-json",
+            consumes = {BinaryFormat.SMILE_MEDIA_TYPE, BinaryFormat.CBOR_MEDIA_TYPE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public byte[] binaryToJson(@RequestBody byte[] data,
+                               @PathVariable String codec,
+                               @RequestParam(required = false) String format,
+                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws Exception {
+        return documents.binaryToJson(data, BinaryFormat.of(codec), outputFormat(format, accept));
+    }
 
-        if (node.isObject() && node.size() == 1) {
-            String rootName = node.fieldNames().next();
-            JsonNode rootValue = node.get(rootName);
+    /*
+     * Picked from the "format" request parameter, or else from a "format" parameter
+     * on the Accept header (e.g. Accept: application/json; format=compact).
+     */
+    static OutputFormat outputFormat(String format, String accept) {
+        if (format == null && accept != null) {
+            try {
+                for (MediaType type : MediaType.parseMediaTypes(accept)) {
+                    format = type.getParameter("format");
+                    if (format != null) break;
+                }
+            } catch (InvalidMediaTypeException e) {
+                // content negotiation reports a broken Accept header on its own
+            }
+        }
 
-            return xmlMapper.writer()
-                    .withRootName(rootName)
-                    .writeValueAsString(rootValue);
+        try {
+            return OutputFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
+    }
 
-        return xmlMapper.writer()
-                .withRootName("root")
-                .writeValueAsString(node);
+    private static ResponseEntity<byte[]> binary(BinaryFormat binary, byte[] body) {
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(binary.mediaType())).body(body);
     }
 
-    private String extractXmlRootName(String xml) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setIgnoringComments(true);
-        factory.setNamespaceAware(false);
+    @GetMapping(value = "/cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ConversionCache.Stats cacheStats() {
+        if (cache == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The result cache is turned off");
+        return cache.stats();
+    }
 
-        Document doc = factory.newDocumentBuilder()
-                .parse(new InputSource(new StringReader(xml)));
+    // Streaming variants: the body is converted while it is read, nothing is buffered in full
+
+    @PostMapping(value = "/stream/xml-to-json",
+            consumes = MediaType.APPLICATION_XML_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> xmlToJsonStream(InputStream body,
+                                                                 @RequestParam(required = false) String format,
+                                                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        OutputFormat outputFormat = outputFormat(format, accept);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> streaming.xmlToJson(body, out, outputFormat));
+    }
+
+    @PostMapping(value = "/stream/json-to-xml",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<StreamingResponseBody> jsonToXmlStream(InputStream body,
+                                                                 @RequestParam(defaultValue = "root") String root,
+                                                                 @RequestParam(required = false) String format,
+                                                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        OutputFormat outputFormat = outputFormat(format, accept);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_XML)
+                .body(out -> streaming.jsonToXml(body, out, root, outputFormat));
+    }
+
+    @PostMapping(value = "/stream/json-to-xml-auto",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<StreamingResponseBody> jsonToXmlAutoStream(InputStream body,
+                                                                     @RequestParam(required = false) String format,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        OutputFormat outputFormat = outputFormat(format, accept);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_XML)
+                .body(out -> streaming.jsonToXmlAuto(body, out, outputFormat));
+    }
 
-        return doc.getDocumentElement().getTagName();
+    /*
+     * Many documents in one request, as NDJSON: one item per line, e.g.
+     * {"id": 7, "direction": "json-to-xml", "root": "order", "data": "{...}"}.
+     * Items are converted in parallel; the response has one line per item, in input
+     * order, with either "result" or "error".
+     */
+    @PostMapping(value = "/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batch(InputStream body,
+                                                       @RequestParam(required = false) String format,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                       HttpServletResponse response) {
+        OutputFormat outputFormat = outputFormat(format, accept);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> {
+                    try {
+                        batch.convert(body, out, outputFormat);
+                    } catch (NdjsonBatchConverter.LineTooLongException e) {
+                        // nothing sent yet (a first line over the limit): the error body is JSON, not NDJSON
+                        if (!response.isCommitted()) response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                        throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+                    }
+                });
     }
 }
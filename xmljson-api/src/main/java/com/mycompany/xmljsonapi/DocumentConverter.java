@@ -0,0 +1,191 @@
+package com.mycompany.xmljsonapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.xml.deser.FromXmlParser;
+import com.mycompany.xmljsonconverter.BinaryFormat;
+import com.mycompany.xmljsonconverter.ConversionCache;
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.ConversionMetrics;
+import com.mycompany.xmljsonconverter.NdjsonBatchConverter;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+// Whole-document conversions, used by the plain endpoints and by /api/batch. Documents
+// are UTF-8 bytes in and out: Jackson parses and writes them without a String in between.
+// The binary endpoints take and return Smile or CBOR in place of the JSON text.
+// Results go through the ConversionCache, when there is one (xmljson.cache.enabled); only
+// the misses are recorded as conversions.
+@Component
+public class DocumentConverter implements NdjsonBatchConverter.Documents {
+
+    // the ConversionMetrics mode of these conversions
+    private static final String MODE = "document";
+
+    private final ConversionContext context;
+    private final ConversionCache cache;
+    private final ConversionMetrics metrics;
+
+    public DocumentConverter(ConversionContext context, Optional<ConversionCache> cache) {
+        this.context = context;
+        this.cache = cache.orElse(null);
+        this.metrics = context.metrics();
+    }
+
+    @Override
+    public byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception {
+        return cached(xml, "xml-to-json|" + format, () -> metrics.record(ConversionMetrics.XML_TO_JSON,
+                MODE, recording -> convertXmlToJson(xml, format, recording)));
+    }
+
+    @Override
+    public byte[] jsonToXml(byte[] json, String root, OutputFormat format) throws Exception {
+        return cached(json, "json-to-xml|" + format + "|" + root, () -> metrics.record(
+                ConversionMetrics.JSON_TO_XML, MODE,
+                recording -> convertJsonToXml(json, root, format, recording)));
+    }
+
+    @Override
+    public byte[] jsonToXmlAuto(byte[] json, OutputFormat format) throws Exception {
+        return cached(json, "json-to-xml-auto|" + format, () -> metrics.record(
+                ConversionMetrics.JSON_TO_XML_AUTO, MODE,
+                recording -> convertJsonToXmlAuto(json, format, recording)));
+    }
+
+    // Smile / CBOR: the same trees as the JSON conversions, encoded in binary
+    public byte[] xmlToBinary(byte[] xml, BinaryFormat binary) throws Exception {
+        String direction = "xml-to-" + binary.id();
+        return cached(xml, direction, () -> metrics.record(direction, MODE,
+                recording -> serialized(context.binaryWriter(binary).writeValueAsBytes(readXml(xml, recording)),
+                        recording)));
+    }
+
+    public byte[] binaryToXml(byte[] data, BinaryFormat binary, String root, OutputFormat format) throws Exception {
+        String direction = binary.id() + "-to-xml";
+        return cached(data, direction + "|" + format + "|" + root, () -> metrics.record(direction,
+                MODE, recording -> xmlBytes(
+                        readTree(context.binaryReader(binary), data, recording), root, format, recording)));
+    }
+
+    public byte[] binaryToXmlAuto(byte[] data, BinaryFormat binary, OutputFormat format) throws Exception {
+        String direction = binary.id() + "-to-xml-auto";
+        return cached(data, direction + "|" + format, () -> metrics.record(direction,
+                MODE, recording -> xmlBytes(
+                        readTree(context.binaryReader(binary), data, recording), null, format, recording)));
+    }
+
+    // JSON <-> binary copies the tokens without building a tree
+    public byte[] jsonToBinary(byte[] json, BinaryFormat binary) throws Exception {
+        String direction = "json-to-" + binary.id();
+        return cached(json, direction, () -> metrics.record(direction, MODE,
+                recording -> copyTokens(context.jsonReader(), json, context.binaryWriter(binary), recording)));
+    }
+
+    public byte[] binaryToJson(byte[] data, BinaryFormat binary, OutputFormat format) throws Exception {
+        String direction = binary.id() + "-to-json";
+        return cached(data, direction + "|" + format, () -> metrics.record(direction,
+                MODE, recording -> copyTokens(context.binaryReader(binary), data,
+                        context.jsonWriter(format), recording)));
+    }
+
+    private byte[] cached(byte[] input, String options, ConversionCache.BytesConversion conversion)
+            throws Exception {
+        return (cache != null) ? cache.convert(input, options, conversion) : conversion.convert();
+    }
+
+    private byte[] convertXmlToJson(byte[] xml, OutputFormat format, ConversionMetrics.Recording recording)
+            throws IOException {
+        return serialized(context.jsonWriter(format).writeValueAsBytes(readXml(xml, recording)), recording);
+    }
+
+    private byte[] convertJsonToXml(byte[] json, String root, OutputFormat format,
+                                    ConversionMetrics.Recording recording) throws IOException {
+        return xmlBytes(readTree(context.jsonReader(), json, recording), root, format, recording);
+    }
+
+    private byte[] convertJsonToXmlAuto(byte[] json, OutputFormat format, ConversionMetrics.Recording recording)
+            throws IOException {
+        return xmlBytes(readTree(context.jsonReader(), json, recording), null, format, recording);
+    }
+
+    // The document as {rootName: content}
+    private ObjectNode readXml(byte[] xml, ConversionMetrics.Recording recording) throws IOException {
+        recording.input(xml.length);
+        String rootName;
+        JsonNode node;
+
+        try (FromXmlParser parser = (FromXmlParser) context.xmlMapper().createParser(xml)) {
+            rootName = extractXmlRootName(parser);
+            node = context.xmlMapper().readTree(parser);
+        }
+        recording.phase(ConversionMetrics.PARSE);
+
+        ObjectNode wrapped = context.jsonMapper().createObjectNode();
+        wrapped.set(rootName, node);
+        recording.phase(ConversionMetrics.TRANSFORM);
+        recording.tree(wrapped);
+        return wrapped;
+    }
+
+    // The underlying StAX reader is already on the root START_ELEMENT when the parser is created
+    private static String extractXmlRootName(FromXmlParser parser) {
+        XMLStreamReader stax = parser.getStaxReader();
+        String prefix = stax.getPrefix();
+        return (prefix == null || prefix.isEmpty())
+                ? stax.getLocalName()
+                : prefix + ":" + stax.getLocalName();
+    }
+
+    private JsonNode readTree(ObjectReader reader, byte[] data, ConversionMetrics.Recording recording)
+            throws IOException {
+        recording.input(data.length);
+        JsonNode node = reader.readTree(data);
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(node);
+        return node;
+    }
+
+    // A null root picks it like json-to-xml-auto: the single top-level field, else <root>
+    private byte[] xmlBytes(JsonNode node, String root, OutputFormat format, ConversionMetrics.Recording recording)
+            throws IOException {
+        JsonNode rootValue = node;
+        if (root == null) {
+            root = "root";
+            if (node.isObject() && node.size() == 1) {
+                root = node.fieldNames().next();
+                rootValue = node.get(root);
+            }
+            recording.phase(ConversionMetrics.TRANSFORM);
+        }
+
+        return serialized(context.xmlWriter(root, format).writeValueAsBytes(rootValue), recording);
+    }
+
+    // Reading and writing are interleaved, so only the total time and the sizes are recorded
+    private static byte[] copyTokens(ObjectReader reader, byte[] input, ObjectWriter writer,
+                                     ConversionMetrics.Recording recording) throws IOException {
+        recording.input(input.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+        try (JsonParser parser = reader.createParser(input);
+             JsonGenerator gen = writer.createGenerator(out)) {
+            if (parser.nextToken() != null) gen.copyCurrentStructure(parser);
+        }
+        recording.output(out.size());
+        return out.toByteArray();
+    }
+
+    private static byte[] serialized(byte[] result, ConversionMetrics.Recording recording) {
+        recording.phase(ConversionMetrics.SERIALIZE);
+        recording.output(result.length);
+        return result;
+    }
+}
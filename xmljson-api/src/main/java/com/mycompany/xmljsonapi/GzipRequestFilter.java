@@ -0,0 +1,109 @@
+package com.mycompany.xmljsonapi;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Accepts gzip-compressed request bodies (Content-Encoding: gzip). Tomcat only
+ * compresses responses (server.compression), so request bodies are inflated here
+ * while the controller reads them; the rest of the application sees plain text.
+ *
+ * The inflated body is capped, so a small compressed body cannot expand without
+ * bound: at the bytes AdmissionFilter admitted for a whole-document conversion,
+ * otherwise at xmljson.gzip.max-inflated-size. Past the cap the request fails with 413.
+ */
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    private final long maxInflatedSize;
+
+    public GzipRequestFilter(@Value("${xmljson.gzip.max-inflated-size:1GB}") DataSize maxInflatedSize) {
+        this.maxInflatedSize = maxInflatedSize.toBytes();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || !encoding.trim().equalsIgnoreCase("gzip")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Object admitted = request.getAttribute(AdmissionFilter.ADMITTED_BYTES);
+        long limit = (admitted instanceof Long bytes) ? Math.min(bytes, maxInflatedSize) : maxInflatedSize;
+        chain.doFilter(new GzipRequest(request, limit), response);
+    }
+
+    private static final class GzipRequest extends HttpServletRequestWrapper {
+        private final long limit;
+        private ServletInputStream body;
+
+        GzipRequest(HttpServletRequest request, long limit) {
+            super(request);
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                ServletInputStream raw = super.getInputStream();
+                body = new BoundedInputStream(raw, new GZIPInputStream(raw, 8192), limit,
+                        "Inflated body larger than " + limit + " bytes");
+            }
+            return body;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String charset = getCharacterEncoding();
+            Charset cs = (charset == null) ? StandardCharsets.UTF_8 : Charset.forName(charset);
+            return new BufferedReader(new InputStreamReader(getInputStream(), cs));
+        }
+
+        // the inflated length is unknown
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (isHidden(name)) return null;
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (isHidden(name)) return Collections.emptyEnumeration();
+            return super.getHeaders(name);
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+}
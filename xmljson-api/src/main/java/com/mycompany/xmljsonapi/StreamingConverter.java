@@ -0,0 +1,79 @@
+package com.mycompany.xmljsonapi;
+
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.ConversionMetrics;
+import com.mycompany.xmljsonconverter.JsonPullParser;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import com.mycompany.xmljsonconverter.StreamingJsonToXml;
+import com.mycompany.xmljsonconverter.StreamingXmlToJson;
+import com.mycompany.xmljsonconverter.Utf8Output;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * The /api/stream conversions: the body is read from an InputStream and written to an
+ * OutputStream by the converter library's streaming writers (StreamingXmlToJson,
+ * StreamingJsonToXml), without building a tree.
+ *
+ * These follow the library's manual rules, not Jackson's like the whole-document
+ * endpoints: attributes under "@attributes", mixed text under "#text". Repeated XML
+ * elements have to be adjacent. Auto-root holds back the first field until it knows
+ * whether there are more, and then wraps them all in <root> like /api/json-to-xml-auto.
+ * Held-back values spill to a temporary file past a size, so the heap stays bounded.
+ */
+@Component
+public class StreamingConverter {
+
+    // the ConversionMetrics mode of these conversions
+    private static final String MODE = "stream";
+
+    private final ConversionContext context;
+    private final ConversionMetrics metrics;
+
+    public StreamingConverter(ConversionContext context) {
+        this.context = context;
+        this.metrics = context.metrics();
+    }
+
+    @FunctionalInterface
+    private interface Copy {
+        void copy(InputStream in, Utf8Output out) throws Exception;
+    }
+
+    public void xmlToJson(InputStream in, OutputStream out, OutputFormat format) throws IOException {
+        record(ConversionMetrics.XML_TO_JSON, in, out, (i, o) -> {
+            XMLStreamReader reader = context.xmlInputFactory().createXMLStreamReader(i, "UTF-8");
+            new StreamingXmlToJson(o, format, context.symbols()).convert(reader);
+        });
+    }
+
+    public void jsonToXml(InputStream in, OutputStream out, String root, OutputFormat format) throws IOException {
+        record(ConversionMetrics.JSON_TO_XML, in, out, (i, o) ->
+                new StreamingJsonToXml(new JsonPullParser(i), o, format, context.symbols()).convert(root));
+    }
+
+    public void jsonToXmlAuto(InputStream in, OutputStream out, OutputFormat format) throws IOException {
+        record(ConversionMetrics.JSON_TO_XML_AUTO, in, out, (i, o) ->
+                new StreamingJsonToXml(new JsonPullParser(i), o, format, context.symbols()).convertAutoRoot());
+    }
+
+    // Reading and writing are interleaved, so only the total time and the sizes are recorded
+    private void record(String direction, InputStream in, OutputStream out, Copy copy) throws IOException {
+        try {
+            metrics.record(direction, MODE, recording -> {
+                Utf8Output utf8 = new Utf8Output(recording.count(out));
+                copy.copy(recording.count(in), utf8);
+                utf8.flush();
+                return null;
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e); // XMLStreamException
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package com.mycompany.xmljsonapi;
 
+import com.mycompany.xmljsonconverter.ConversionCache;
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.NdjsonBatchConverter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.util.unit.DataSize;
 
 @SpringBootApplication
 public class XmljsonApiApplication {
@@ -10,4 +18,25 @@ public class XmljsonApiApplication {
 		SpringApplication.run(XmljsonApiApplication.class, args);
 	}
 
+	// The library's mappers and writers, shared by all requests and recording into the application's registry
+	@Bean
+	public ConversionContext conversionContext(MeterRegistry registry) {
+		return new ConversionContext(registry);
+	}
+
+	// Results of the whole-document conversions; its meters are bound by Actuator as a MeterBinder
+	@Bean
+	@ConditionalOnProperty(name = "xmljson.cache.enabled", havingValue = "true", matchIfMissing = true)
+	public ConversionCache conversionCache(@Value("${xmljson.cache.max-size:64MB}") DataSize maxSize) {
+		return new ConversionCache(maxSize.toBytes());
+	}
+
+	// /api/batch, one worker per CPU; AdmissionFilter does not count batch bodies, so the lines are bounded instead
+	@Bean
+	public NdjsonBatchConverter batchConverter(ConversionContext context, DocumentConverter documents,
+			@Value("${xmljson.batch.max-line-size:1MB}") DataSize maxLineSize) {
+		int maxLineChars = (int) Math.min(Integer.MAX_VALUE - 8, maxLineSize.toBytes());
+		return new NdjsonBatchConverter(context, documents, Runtime.getRuntime().availableProcessors(), maxLineChars);
+	}
+
 }
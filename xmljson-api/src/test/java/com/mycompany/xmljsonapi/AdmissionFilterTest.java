@@ -0,0 +1,156 @@
+package com.mycompany.xmljsonapi;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdmissionFilterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    // Holds the request inside the filter until done is counted down
+    private final FilterChain holding = (request, response) -> {
+        entered.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    @AfterEach
+    void stop() {
+        done.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void allSlotsBusyIsServiceUnavailable() throws Exception {
+        // no conversions per core still leaves one slot
+        AdmissionFilter filter = filter(0, DataSize.ofMegabytes(1));
+        Future<MockHttpServletResponse> first = hold(filter, post("/api/stream/xml-to-json", 10));
+
+        MockHttpServletResponse busy = filter(filter, post("/api/xml-to-json", 10));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), busy.getStatus());
+        assertEquals("2", busy.getHeader("Retry-After"));
+
+        done.countDown();
+        assertEquals(HttpStatus.OK.value(), first.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(HttpStatus.OK.value(), filter(filter, post("/api/xml-to-json", 10)).getStatus());
+    }
+
+    @Test
+    void byteBudgetOverrunIsTooManyRequests() throws Exception {
+        AdmissionFilter filter = filter(64, DataSize.ofKilobytes(64));
+        Future<MockHttpServletResponse> first = hold(filter, post("/api/xml-to-json", 40 * 1024));
+
+        MockHttpServletResponse over = filter(filter, post("/api/json-to-xml", 40 * 1024));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), over.getStatus());
+        assertEquals("2", over.getHeader("Retry-After"));
+        // streaming and batch requests only take a slot
+        assertEquals(HttpStatus.OK.value(), filter(filter, post("/api/stream/json-to-xml", 40 * 1024)).getStatus());
+        assertEquals(HttpStatus.OK.value(), filter(filter, post("/api/batch", 40 * 1024)).getStatus());
+
+        done.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK.value(), filter(filter, post("/api/json-to-xml", 40 * 1024)).getStatus());
+    }
+
+    @Test
+    void bodyOverTheWholeBudgetIsTooLarge() throws Exception {
+        AdmissionFilter filter = filter(64, DataSize.ofKilobytes(64));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                filter(filter, post("/api/xml-to-json", 65 * 1024)).getStatus());
+        // gzip bodies count eight times their length
+        MockHttpServletRequest gzip = post("/api/xml-to-json", 9 * 1024);
+        gzip.addHeader("Content-Encoding", "gzip");
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(), filter(filter, gzip).getStatus());
+    }
+
+    // A body without a length is admitted as unknown-size and may not read past it
+    @Test
+    void chunkedBodyIsHeldToTheAdmittedBytes() throws Exception {
+        AdmissionFilter filter = filter(64, DataSize.ofMegabytes(1));
+        MockHttpServletRequest small = chunked(16 * 1024);
+        MockHttpServletRequest large = chunked(16 * 1024 + 1);
+
+        filter.doFilter(small, new MockHttpServletResponse(), (request, response) -> {
+            assertEquals(16 * 1024, request.getInputStream().readAllBytes().length);
+            assertEquals(16 * 1024L, request.getAttribute(AdmissionFilter.ADMITTED_BYTES));
+        });
+        filter.doFilter(large, new MockHttpServletResponse(), (request, response) -> {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                    () -> request.getInputStream().readAllBytes());
+            assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatusCode());
+        });
+    }
+
+    @Test
+    void otherRequestsAreNotFiltered() throws Exception {
+        AdmissionFilter filter = filter(0, DataSize.ofKilobytes(1));
+        hold(filter, post("/api/stream/xml-to-json", 10));
+
+        assertEquals(HttpStatus.OK.value(), filter(filter, new MockHttpServletRequest("GET", "/api/cache")).getStatus());
+        assertEquals(HttpStatus.OK.value(), filter(filter, post("/actuator/health", 10)).getStatus());
+    }
+
+    private Future<MockHttpServletResponse> hold(AdmissionFilter filter, MockHttpServletRequest request)
+            throws Exception {
+        Future<MockHttpServletResponse> result = executor.submit(() -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, holding);
+            return response;
+        });
+        entered.await(5, TimeUnit.SECONDS);
+        return result;
+    }
+
+    private static MockHttpServletResponse filter(AdmissionFilter filter, MockHttpServletRequest request)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+        });
+        return response;
+    }
+
+    private static AdmissionFilter filter(int conversionsPerCore, DataSize maxInFlight) {
+        return new AdmissionFilter(true, conversionsPerCore, maxInFlight, DataSize.ofKilobytes(16),
+                Duration.ofMillis(20), Duration.ofMillis(1500));
+    }
+
+    private static MockHttpServletRequest post(String uri, int length) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContent(new byte[length]);
+        return request;
+    }
+
+    private static MockHttpServletRequest chunked(int length) {
+        // the mock reports the content's length unless told otherwise
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/xml-to-json") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        request.setContent(new byte[length]);
+        return request;
+    }
+}
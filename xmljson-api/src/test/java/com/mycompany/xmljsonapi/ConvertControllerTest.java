@@ -0,0 +1,144 @@
+package com.mycompany.xmljsonapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mycompany.xmljsonconverter.BinaryFormat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConvertControllerTest {
+
+    private static final String XML = "<order><id>1</id><line>a</line><line>b</line></order>";
+    private static final String DECLARATION = "<?xml version='1.0' encoding='UTF-8'?>";
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void formatParameterPicksCompactOutput() throws Exception {
+        mvc.perform(post("/api/xml-to-json").param("format", "compact")
+                        .contentType(MediaType.APPLICATION_XML).content(XML))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"order\":{\"id\":\"1\",\"line\":[\"a\",\"b\"]}}"));
+
+        mvc.perform(post("/api/json-to-xml").param("root", "doc").param("format", "COMPACT")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"a\":[1,2]}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(DECLARATION + "<doc><a>1</a><a>2</a></doc>"));
+    }
+
+    @Test
+    void acceptHeaderCarriesTheFormat() throws Exception {
+        mvc.perform(post("/api/json-to-xml-auto")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"a\":{\"b\":1}}")
+                        .header("Accept", "application/xml; format=compact"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(DECLARATION + "<a><b>1</b></a>"));
+
+        // the request parameter wins over the header
+        mvc.perform(post("/api/xml-to-json").param("format", "pretty")
+                        .contentType(MediaType.APPLICATION_XML).content("<a>1</a>")
+                        .header("Accept", "application/json; format=compact"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\n")));
+    }
+
+    @Test
+    void unknownFormatIsABadRequest() throws Exception {
+        mvc.perform(post("/api/xml-to-json").param("format", "minified")
+                        .contentType(MediaType.APPLICATION_XML).content(XML))
+                .andExpect(status().isBadRequest());
+    }
+
+    // XML -> Smile / CBOR -> XML gives what XML -> JSON -> XML gives
+    @Test
+    void binaryHopsMatchTheJsonOnes() throws Exception {
+        byte[] viaJson = mvc.perform(post("/api/xml-to-json").param("format", "compact")
+                        .contentType(MediaType.APPLICATION_XML).content(XML))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        for (BinaryFormat binary : BinaryFormat.values()) {
+            byte[] encoded = mvc.perform(post("/api/xml-to-" + binary.id())
+                            .contentType(MediaType.APPLICATION_XML).content(XML))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(binary.mediaType()))
+                    .andReturn().getResponse().getContentAsByteArray();
+
+            mvc.perform(post("/api/" + binary.id() + "-to-json").param("format", "compact")
+                            .contentType(binary.mediaType()).content(encoded))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(viaJson));
+            mvc.perform(post("/api/" + binary.id() + "-to-xml-auto").param("format", "compact")
+                            .contentType(binary.mediaType()).content(encoded))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(DECLARATION + "<order><id>1</id><line>a</line><line>b</line></order>"));
+            byte[] fromJson = mvc.perform(post("/api/json-to-" + binary.id())
+                            .contentType(MediaType.APPLICATION_JSON).content(viaJson))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsByteArray();
+            mvc.perform(post("/api/" + binary.id() + "-to-xml").param("root", "doc").param("format", "compact")
+                            .contentType(binary.mediaType()).content(fromJson))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(DECLARATION
+                            + "<doc><order><id>1</id><line>a</line><line>b</line></order></doc>"));
+        }
+    }
+
+    @Test
+    void batchConvertsEachLineInOrder() throws Exception {
+        String ndjson = """
+                {"id":1,"direction":"xml-to-json","data":"<a><b>1</b></a>"}
+                {"id":2,"direction":"json-to-xml","root":"r","data":"{\\"x\\":1}"}
+                {"id":3,"direction":"json-to-xml-auto","data":"{broken"}
+                """;
+
+        String response = mvc.perform(asyncDispatch(startBatch(ndjson)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = response.split("\n");
+        assertEquals(3, lines.length);
+        JsonNode first = json.readTree(lines[0]);
+        assertEquals(0, first.get("index").asInt());
+        assertEquals(1, first.get("id").asInt());
+        assertEquals("{\"a\":{\"b\":\"1\"}}", first.get("result").asText());
+        assertEquals(DECLARATION + "<r><x>1</x></r>", json.readTree(lines[1]).get("result").asText());
+        JsonNode broken = json.readTree(lines[2]);
+        assertEquals(3, broken.get("id").asInt());
+        assertTrue(broken.has("error") && !broken.has("result"));
+    }
+
+    @Test
+    void batchLineOverTheLimitIsTooLarge() throws Exception {
+        String line = "{\"direction\":\"xml-to-json\",\"data\":\"" + "x".repeat(1_100_000) + "\"}\n";
+
+        mvc.perform(asyncDispatch(startBatch(line)))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    private MvcResult startBatch(String ndjson) throws Exception {
+        return mvc.perform(post("/api/batch").param("format", "compact")
+                        .contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+}
@@ -0,0 +1,53 @@
+package com.mycompany.xmljsonapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mycompany.xmljsonconverter.ConversionCache;
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DocumentConverterTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final DocumentConverter converter = new DocumentConverter(new ConversionContext(), Optional.empty());
+
+    // The root element names the single field, read from the parser that reads the content
+    @Test
+    void rootNameComesFromTheParser() throws Exception {
+        assertEquals(json.readTree("{\"order\":{\"id\":\"1\",\"line\":[\"a\",\"b\"]}}"),
+                xmlToJson("<?xml version=\"1.0\"?>\n<!-- c -->\n<order id=\"1\"><line>a</line><line>b</line></order>"));
+        assertEquals(json.readTree("{\"ns:order\":{\"id\":\"1\"}}"),
+                xmlToJson("<ns:order xmlns:ns=\"urn:x\"><ns:id>1</ns:id></ns:order>"));
+    }
+
+    @Test
+    void repeatedConversionsComeFromTheCache() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20);
+        DocumentConverter cached = new DocumentConverter(new ConversionContext(), Optional.of(cache));
+        byte[] xml = "<a><b>1</b></a>".getBytes(StandardCharsets.UTF_8);
+
+        byte[] first = cached.xmlToJson(xml, OutputFormat.COMPACT);
+        assertSame(first, cached.xmlToJson(xml.clone(), OutputFormat.COMPACT));
+        assertArrayEquals(converter.xmlToJson(xml, OutputFormat.PRETTY), cached.xmlToJson(xml, OutputFormat.PRETTY));
+        cached.jsonToXml(first, "r", OutputFormat.COMPACT);
+        cached.jsonToXml(first, "s", OutputFormat.COMPACT);
+
+        ConversionCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(4, stats.entries());
+    }
+
+    private JsonNode xmlToJson(String xml) throws Exception {
+        return json.readTree(converter.xmlToJson(xml.getBytes(StandardCharsets.UTF_8), OutputFormat.COMPACT));
+    }
+}
@@ -0,0 +1,93 @@
+package com.mycompany.xmljsonapi;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class GzipRequestFilterTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void gzipBodyIsConvertedLikeThePlainOne() throws Exception {
+        String xml = "<order><id>1</id><line>a</line><line>b</line></order>";
+
+        mvc.perform(post("/api/xml-to-json").param("format", "compact")
+                        .contentType(MediaType.APPLICATION_XML).header("Content-Encoding", "gzip")
+                        .content(gzip(xml)))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"order\":{\"id\":\"1\",\"line\":[\"a\",\"b\"]}}"));
+    }
+
+    // A few KB that inflate past the bytes admitted for them (unknown-size, 1MB)
+    @Test
+    void gzipBodyInflatingPastItsAdmissionIsTooLarge() throws Exception {
+        mvc.perform(post("/api/xml-to-json")
+                        .contentType(MediaType.APPLICATION_XML).header("Content-Encoding", "gzip")
+                        .content(gzip("<a>" + "x".repeat(4 << 20) + "</a>")))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void controllerSeesAPlainBody() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/stream/xml-to-json");
+        request.addHeader("Content-Encoding", "gzip");
+        request.setContent(gzip("<a>1</a>"));
+
+        new GzipRequestFilter(DataSize.ofKilobytes(1)).doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> {
+                    HttpServletRequest decoded = (HttpServletRequest) req;
+                    assertNull(decoded.getHeader("Content-Encoding"));
+                    assertEquals(-1, decoded.getContentLengthLong());
+                    assertEquals("<a>1</a>", new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+                    // the decoder reads with blocking calls
+                    assertThrows(IllegalStateException.class,
+                            () -> req.getInputStream().setReadListener(new NoReads()));
+                });
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(zipped)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return zipped.toByteArray();
+    }
+
+    private static final class NoReads implements ReadListener {
+        @Override
+        public void onDataAvailable() {
+        }
+
+        @Override
+        public void onAllDataRead() {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+    }
+}
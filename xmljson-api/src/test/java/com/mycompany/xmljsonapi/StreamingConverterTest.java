@@ -0,0 +1,165 @@
+package com.mycompany.xmljsonapi;
+
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.ManualConverterService;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class StreamingConverterTest {
+
+    private final StreamingConverter converter = new StreamingConverter(new ConversionContext());
+
+    @Test
+    void autoRootWrapsSeveralFieldsLikeTheBufferedPath() throws Exception {
+        ManualConverterService buffered = new ManualConverterService();
+        String[] documents = {
+                "{\"order\":{\"id\":1,\"line\":[\"a\",\"b\"]}}",
+                "{\"order\":{\"id\":1},\"customer\":{\"name\":\"x\"}}",
+                "{\"a\":[1,2],\"b\":null,\"c\":\"<&>\"}",
+                "{}",
+                "[1,2]"
+        };
+        for (String json : documents) {
+            for (OutputFormat format : OutputFormat.values()) {
+                assertEquals(buffered.jsonToXmlAutoRoot(json, format), autoRoot(json, format), json);
+            }
+        }
+    }
+
+    @Test
+    void wrappedDocumentStreamsInBoundedHeap() throws Exception {
+        assertEquals(0, inSmallHeap("feed/items", 500_000));
+        assertEquals(0, inSmallHeap("feed/batch/items", 500_000));
+    }
+
+    private String autoRoot(String json, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.jsonToXmlAuto(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), out, format);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Converts a generated document in a JVM with a 32 MB heap; exits with 0 if the output's CRC matches
+    private static int inSmallHeap(String wrappers, int items) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        Process process = new ProcessBuilder(java, "-Xmx32m", "-cp", classPath,
+                SmallHeap.class.getName(), wrappers, String.valueOf(items))
+                .inheritIO()
+                .start();
+        if (!process.waitFor(5, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            fail("Conversion in a small heap timed out");
+        }
+        return process.exitValue();
+    }
+
+    static final class SmallHeap {
+        public static void main(String[] args) throws Exception {
+            String[] wrappers = args[0].split("/");
+            int items = Integer.parseInt(args[1]);
+
+            StringBuilder head = new StringBuilder();
+            StringBuilder tail = new StringBuilder();
+            StringBuilder jsonHead = new StringBuilder("{");
+            StringBuilder jsonTail = new StringBuilder("]");
+            for (String w : wrappers) {
+                head.append('<').append(w).append('>');
+                tail.insert(0, "</" + w + ">");
+                jsonHead.append('"').append(w).append("\":{");
+                jsonTail.append('}');
+            }
+            jsonHead.append("\"item\":[");
+            jsonTail.append('}');
+
+            StreamingConverter converter = new StreamingConverter(new ConversionContext(new SimpleMeterRegistry()));
+            CrcOutputStream out = new CrcOutputStream();
+            converter.xmlToJson(new Generated(head.toString(), items, tail.toString()), out, OutputFormat.COMPACT);
+
+            CRC32 expected = new CRC32();
+            update(expected, jsonHead);
+            for (int i = 0; i < items; i++) {
+                if (i > 0) update(expected, ",");
+                update(expected, "{\"@attributes\":{\"id\":\"" + i + "\"},\"name\":\"Item " + i
+                        + "\",\"price\":\"" + i + ".5\"}");
+            }
+            update(expected, jsonTail);
+
+            System.exit(expected.getValue() == out.crc.getValue() ? 0 : 1);
+        }
+
+        private static void update(CRC32 crc, CharSequence ascii) {
+            for (int i = 0; i < ascii.length(); i++) crc.update(ascii.charAt(i));
+        }
+    }
+
+    // <head><item id="0">...</item>...<tail>, produced as it is read
+    private static final class Generated extends InputStream {
+        private final String tail;
+        private final int items;
+        private byte[] chunk;
+        private int next;
+        private int pos;
+        private boolean done;
+
+        Generated(String head, int items, String tail) {
+            this.items = items;
+            this.tail = tail;
+            this.chunk = head.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            if (pos == chunk.length) {
+                if (done) return -1;
+                StringBuilder sb = new StringBuilder();
+                for (int end = Math.min(items, next + 1000); next < end; next++) {
+                    sb.append("<item id=\"").append(next).append("\"><name>Item ").append(next)
+                            .append("</name><price>").append(next).append(".5</price></item>");
+                }
+                if (next == items) {
+                    sb.append(tail);
+                    done = true;
+                }
+                chunk = sb.toString().getBytes(StandardCharsets.UTF_8);
+                pos = 0;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, buf, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    private static final class CrcOutputStream extends OutputStream {
+        final CRC32 crc = new CRC32();
+
+        @Override
+        public void write(int b) {
+            crc.update(b);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+            crc.update(buf, off, len);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import com.mycompany.xmljsonapi.XmljsonApiApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Starts xmljson-api in the benchmark JVM on a random port, unless
+ * -Dxmljson.api.url points to a server that is already running.
+ */
+public final class ApiServer implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final String baseUrl;
+
+    private ApiServer(ConfigurableApplicationContext context, String baseUrl) {
+        this.context = context;
+        this.baseUrl = baseUrl;
+    }
+
+    public static ApiServer start() {
+        String external = System.getProperty("xmljson.api.url");
+        if (external != null && !external.isBlank()) {
+            return new ApiServer(null, external);
+        }
+
+        SpringApplication app = new SpringApplication(XmljsonApiApplication.class);
+        app.setBannerMode(Banner.Mode.OFF);
+        ConfigurableApplicationContext context = app.run("--server.port=0", "--logging.level.root=WARN");
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return new ApiServer(context, "http://localhost:" + port + "/api");
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public void close() {
+        if (context != null) context.close();
+    }
+}
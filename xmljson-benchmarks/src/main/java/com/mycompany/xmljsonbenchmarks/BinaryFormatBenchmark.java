@@ -0,0 +1,85 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mycompany.xmljsonconverter.BinaryFormat;
+import com.mycompany.xmljsonconverter.ConversionContext;
+import com.mycompany.xmljsonconverter.LocalConverterService;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compact text JSON vs Smile vs CBOR as the intermediate format of an XML -> ? -> XML
+ * hop, Jackson mode, on the generated corpus:
+ *   encode  XML -> intermediate
+ *   decode  intermediate -> XML (auto-root)
+ *   parse   intermediate -> JsonNode, what a downstream service pays to read it
+ * The XML and intermediate sizes are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BinaryFormatBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    public String codec;
+
+    @Param({"64KB", "1MB"})
+    public String size;
+
+    @Param({"FLAT", "DEEP", "ATTRIBUTES", "WIDE"})
+    public String shape;
+
+    private final ConversionContext context = ConversionContext.shared();
+    private final LocalConverterService service = new LocalConverterService(context);
+
+    private BinaryFormat binary;
+    private byte[] xml;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        binary = codec.equals("JSON") ? null : BinaryFormat.valueOf(codec);
+        xml = XmlCorpus.generate(XmlCorpus.parseSize(size), XmlCorpus.Shape.valueOf(shape))
+                .getBytes(StandardCharsets.UTF_8);
+        encoded = encode();
+        System.out.printf("%n%s %s %s: XML %,d bytes, intermediate %,d bytes (%.0f%%)%n", codec, size, shape,
+                xml.length, encoded.length, 100.0 * encoded.length / xml.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+        if (binary == null) {
+            service.xmlToJson(new ByteArrayInputStream(xml), out, OutputFormat.COMPACT);
+        } else {
+            service.xmlToBinary(new ByteArrayInputStream(xml), out, binary);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decode() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+        if (binary == null) {
+            service.jsonToXmlAutoRoot(new ByteArrayInputStream(encoded), out, OutputFormat.COMPACT);
+        } else {
+            service.binaryToXmlAutoRoot(new ByteArrayInputStream(encoded), out, binary, OutputFormat.COMPACT);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public JsonNode parse() throws Exception {
+        return (binary == null)
+                ? context.jsonReader().readTree(encoded)
+                : context.binaryMapper(binary).readTree(encoded);
+    }
+}
@@ -0,0 +1,69 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import com.mycompany.xmljsonconverter.ConversionPlan;
+import com.mycompany.xmljsonconverter.ManualConverterService;
+import com.mycompany.xmljsonconverter.OutputFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Manual JSON -> XML on a deep document (10 levels, 100k elements).
+ * jsonToXmlPlanned uses a ConversionPlan compiled from the same document.
+ * Run with -prof gc to see the allocation per conversion.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BuildXmlBenchmark {
+
+    private static final int DEPTH = 10;
+    private static final int ELEMENTS = 100_000;
+    private static final int BRANCHING = 4;
+
+    private ManualConverterService service;
+    private String json;
+    private ConversionPlan plan;
+
+    @Setup
+    public void setup() {
+        service = new ManualConverterService();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"tree\": ");
+        node(sb, 1, new int[] {1});
+        sb.append("}");
+        json = sb.toString();
+        plan = service.compilePlan(json);
+    }
+
+    @Benchmark
+    public String jsonToXml() throws Exception {
+        return service.jsonToXmlAutoRoot(json);
+    }
+
+    @Benchmark
+    public String jsonToXmlPlanned() throws Exception {
+        return service.jsonToXmlAutoRoot(json, OutputFormat.PRETTY, plan);
+    }
+
+    // depth-first, stops adding elements once ELEMENTS have been written
+    private static void node(StringBuilder sb, int level, int[] count) {
+        sb.append("{\"@attributes\": {\"level\": ").append(level).append("}, ")
+                .append("\"name\": \"node ").append(count[0]).append("\"");
+        count[0]++;
+
+        if (level < DEPTH && count[0] < ELEMENTS) {
+            sb.append(", \"node\": [");
+            for (int i = 0; i < BRANCHING && count[0] < ELEMENTS; i++) {
+                if (i > 0) sb.append(", ");
+                node(sb, level + 1, count);
+            }
+            sb.append("]");
+        }
+        sb.append("}");
+    }
+}
@@ -0,0 +1,83 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import com.mycompany.xmljsonconverter.ApiConverterService;
+import com.mycompany.xmljsonconverter.LocalConverterService;
+import com.mycompany.xmljsonconverter.ManualConverterService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the three conversion modes in both directions on a generated corpus.
+ * The JSON input of each mode is its own XML -> JSON output, so jsonToXml measures
+ * the round trip a user of that mode would see.
+ *
+ * Allocation rate: java -jar target/benchmarks.jar Conversion -prof gc
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ConversionBenchmark {
+
+    @Param({"MANUAL", "JACKSON", "API"})
+    public String mode;
+
+    @Param({"1KB", "64KB", "1MB"})
+    public String size;
+
+    @Param({"FLAT", "DEEP", "ATTRIBUTES", "WIDE"})
+    public String shape;
+
+    private Converter converter;
+    private ApiServer server;
+    private String xml;
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        switch (mode) {
+            case "MANUAL" -> {
+                ManualConverterService service = new ManualConverterService();
+                converter = new Converter(service::xmlToJson, service::jsonToXmlAutoRoot);
+            }
+            case "JACKSON" -> {
+                LocalConverterService service = new LocalConverterService();
+                converter = new Converter(service::xmlToJson, service::jsonToXmlAutoRoot);
+            }
+            case "API" -> {
+                server = ApiServer.start();
+                ApiConverterService service = new ApiConverterService(server.baseUrl());
+                converter = new Converter(service::xmlToJson, service::jsonToXmlAutoRoot);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        xml = XmlCorpus.generate(XmlCorpus.parseSize(size), XmlCorpus.Shape.valueOf(shape));
+        json = converter.xmlToJson.convert(xml);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (server != null) server.close();
+    }
+
+    @Benchmark
+    public String xmlToJson() throws Exception {
+        return converter.xmlToJson.convert(xml);
+    }
+
+    @Benchmark
+    public String jsonToXml() throws Exception {
+        return converter.jsonToXml.convert(json);
+    }
+
+    interface Conversion {
+        String convert(String input) throws Exception;
+    }
+
+    record Converter(Conversion xmlToJson, Conversion jsonToXml) {
+    }
+}
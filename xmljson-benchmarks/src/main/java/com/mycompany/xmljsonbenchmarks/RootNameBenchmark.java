@@ -0,0 +1,86 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.deser.FromXmlParser;
+import com.mycompany.xmljsonconverter.LocalConverterService;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Regression benchmark for the root name lookup in XML -> JSON (Jackson mode).
+ * The "dom" variants are the previous implementation: a full DOM parse to read
+ * the root tag, then a second parse with readTree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RootNameBenchmark {
+
+    @Param({"1KB", "1MB", "100MB"})
+    public String size;
+
+    private String xml;
+    private LocalConverterService localService;
+    private ObjectMapper jsonMapper;
+    private XmlMapper xmlMapper;
+
+    @Setup
+    public void setup() {
+        xml = XmlCorpus.library(XmlCorpus.parseSize(size));
+        localService = new LocalConverterService();
+
+        jsonMapper = new ObjectMapper();
+        jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        xmlMapper = new XmlMapper();
+    }
+
+    @Benchmark
+    public String rootNameDom() throws Exception {
+        return domRootName(xml);
+    }
+
+    @Benchmark
+    public String rootNameStax() throws Exception {
+        try (FromXmlParser parser = (FromXmlParser) xmlMapper.createParser(xml)) {
+            return parser.getStaxReader().getLocalName();
+        }
+    }
+
+    @Benchmark
+    public String xmlToJsonDomThenReadTree() throws Exception {
+        String rootName = domRootName(xml);
+        JsonNode node = xmlMapper.readTree(xml);
+
+        ObjectNode wrapped = jsonMapper.createObjectNode();
+        wrapped.set(rootName, node);
+        return jsonMapper.writeValueAsString(wrapped);
+    }
+
+    @Benchmark
+    public String xmlToJsonSingleParse() throws Exception {
+        return localService.xmlToJson(xml);
+    }
+
+    private static String domRootName(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setIgnoringComments(true);
+        factory.setNamespaceAware(false);
+
+        Document doc = factory.newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml)));
+
+        return doc.getDocumentElement().getTagName();
+    }
+}
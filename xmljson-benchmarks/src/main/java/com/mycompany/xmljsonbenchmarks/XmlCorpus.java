@@ -0,0 +1,105 @@
+package com.mycompany.xmljsonbenchmarks;
+
+import java.util.Random;
+
+public final class XmlCorpus {
+
+    // depth, share of elements carrying attributes, repetitions of the "item" child
+    public enum Shape {
+        FLAT(1, 0.0, 1),
+        DEEP(12, 0.1, 1),
+        ATTRIBUTES(3, 1.0, 3),
+        WIDE(2, 0.0, 40);
+
+        final int depth;
+        final double attributeDensity;
+        final int arrayWidth;
+
+        Shape(int depth, double attributeDensity, int arrayWidth) {
+            this.depth = depth;
+            this.attributeDensity = attributeDensity;
+            this.arrayWidth = arrayWidth;
+        }
+    }
+
+    private XmlCorpus() {
+    }
+
+    // "1KB", "1MB", "100MB" -> number of bytes
+    public static int parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        if (s.endsWith("KB")) return Integer.parseInt(s.substring(0, s.length() - 2)) * 1024;
+        if (s.endsWith("MB")) return Integer.parseInt(s.substring(0, s.length() - 2)) * 1024 * 1024;
+        return Integer.parseInt(s);
+    }
+
+    // A library.xml-like document of roughly the given size
+    public static String library(int targetBytes) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(targetBytes + 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<library>\n");
+
+        int i = 0;
+        while (sb.length() < targetBytes) {
+            sb.append("  <book id=\"").append(i).append("\">\n")
+                    .append("    <title>Title ").append(random.nextInt(100_000)).append("</title>\n")
+                    .append("    <author>Author ").append(random.nextInt(1_000)).append("</author>\n")
+                    .append("    <edition year=\"").append(1950 + random.nextInt(75))
+                    .append("\" language=\"English\">Edition ").append(i % 10).append("</edition>\n")
+                    .append("  </book>\n");
+            i++;
+        }
+
+        sb.append("</library>\n");
+        return sb.toString();
+    }
+
+    // <records> with repeated <record> subtrees of the given shape until the target size is reached
+    public static String generate(int targetBytes, Shape shape) {
+        return generate(targetBytes, shape.depth, shape.attributeDensity, shape.arrayWidth, 42);
+    }
+
+    public static String generate(int targetBytes, int depth, double attributeDensity, int arrayWidth, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(targetBytes + 1024);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n");
+
+        int i = 0;
+        while (sb.length() < targetBytes) {
+            element(sb, "record", i++, depth, attributeDensity, arrayWidth, random, 1);
+        }
+
+        sb.append("</records>\n");
+        return sb.toString();
+    }
+
+    private static void element(StringBuilder sb, String name, int id, int depth, double attributeDensity,
+                                int arrayWidth, Random random, int indent) {
+        String pad = "  ".repeat(indent);
+        sb.append(pad).append('<').append(name);
+        if (random.nextDouble() < attributeDensity) {
+            sb.append(" id=\"").append(id).append("\" kind=\"k").append(random.nextInt(5)).append('"');
+        }
+        sb.append(">\n");
+
+        leaf(sb, "name", "Name " + random.nextInt(10_000), attributeDensity, random, indent + 1);
+        leaf(sb, "value", Integer.toString(random.nextInt(1_000_000)), attributeDensity, random, indent + 1);
+
+        if (depth > 0) {
+            for (int k = 0; k < arrayWidth; k++) {
+                element(sb, "item", k, depth - 1, attributeDensity, arrayWidth, random, indent + 1);
+            }
+        }
+
+        sb.append(pad).append("</").append(name).append(">\n");
+    }
+
+    private static void leaf(StringBuilder sb, String name, String text, double attributeDensity,
+                             Random random, int indent) {
+        sb.append("  ".repeat(indent)).append('<').append(name);
+        if (random.nextDouble() < attributeDensity) {
+            sb.append(" lang=\"en\"");
+        }
+        sb.append('>').append(text).append("</").append(name).append(">\n");
+    }
+}
@@ -1,74 +1,474 @@
 package com.mycompany.xmljsonconverter;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Client of the xmljson-api REST API. Every conversion is an asynchronous request
+ * (sendAsync), the blocking methods just wait for it. One HttpClient is shared, so
+ * connections are reused. Over https the client negotiates HTTP/2 and concurrent
+ * requests are multiplexed; plain http stays on keep-alive HTTP/1.1, because the
+ * h2c upgrade is done on a request and Tomcat rejects upgrade requests with bodies
+ * over 4 KB.
+ *
+ * With compression on, request bodies are sent gzip-compressed (small strings
+ * excepted) and gzip responses are accepted. At most maxInFlight requests run at
+ * once; further requests are queued and sent as earlier ones finish, so the *Async
+ * methods never block the caller.
+ */
+public class ApiConverterService implements ConverterService {
 
-public class ApiConverterService {
+    private static final String MODE = "api";
+    private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    private static final int MIN_COMPRESSED_SIZE = 1024;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+    private static final ObjectMapper BATCH_MAPPER = new ObjectMapper();
 
-    private final HttpClient client = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(5))
-            .build();
+    private final HttpClient client;
 
     private final String baseUrl; // ex: http://localhost:8080/api
+    private final boolean compression;
+    private final int maxInFlight;
+    // requests waiting for one of the maxInFlight slots; guards running too
+    private final ArrayDeque<BooleanSupplier> waiting = new ArrayDeque<>();
+    private int running;
+    private final ConversionMetrics metrics;
 
     public ApiConverterService(String baseUrl) {
-        this.baseUrl = baseUrl;
+        this(baseUrl, DEFAULT_MAX_IN_FLIGHT, true);
+    }
+
+    public ApiConverterService(String baseUrl, int maxInFlight, boolean compression) {
+        this(baseUrl, maxInFlight, compression, ConversionMetrics.NONE);
     }
 
-    public String xmlToJson(String xml) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/xml-to-json"))
-                .timeout(Duration.ofSeconds(20))
-                .header("Content-Type", "application/xml; charset=utf-8")
-                .header("Accept", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(xml))
+    public ApiConverterService(String baseUrl, int maxInFlight, boolean compression, ConversionMetrics metrics) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.baseUrl = baseUrl;
+        this.compression = compression;
+        this.metrics = metrics;
+        this.client = HttpClient.newBuilder()
+                .version(baseUrl.startsWith("https:") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
                 .build();
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public String xmlToJson(String xml, OutputFormat format) throws Exception {
+        return await(xmlToJsonAsync(xml, format));
+    }
+
+    // The body is streamed to the server as it is read
+    @Override
+    public String xmlToJson(InputStream xml, OutputFormat format) throws Exception {
+        return await(xmlToJsonAsync(xml, format));
+    }
+
+    @Override
+    public String jsonToXml(String json, String root, OutputFormat format) throws Exception {
+        return await(jsonToXmlAsync(json, root, format));
+    }
+
+    @Override
+    public String jsonToXml(InputStream json, String root, OutputFormat format) throws Exception {
+        return await(jsonToXmlAsync(json, root, format));
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(String json, OutputFormat format) throws Exception {
+        return await(jsonToXmlAutoRootAsync(json, format));
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(InputStream json, OutputFormat format) throws Exception {
+        return await(jsonToXmlAutoRootAsync(json, format));
+    }
+
+    // Byte-level variants: the bytes are sent as they are and the response body is
+    // returned (or copied to out) without being decoded
+    @Override
+    public void xmlToJson(InputStream xml, OutputStream out, OutputFormat format) throws Exception {
+        out.write(await(send(xmlToJsonRequest(body(xml), format), HttpResponse::body)));
+    }
+
+    @Override
+    public void jsonToXml(InputStream json, OutputStream out, String root, OutputFormat format) throws Exception {
+        out.write(await(send(jsonToXmlRequest(body(json), root, format), HttpResponse::body)));
+    }
+
+    @Override
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format) throws Exception {
+        out.write(await(send(jsonToXmlAutoRootRequest(body(json), format), HttpResponse::body)));
+    }
+
+    @Override
+    public byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception {
+        return await(send(xmlToJsonRequest(body(xml), format), HttpResponse::body));
+    }
+
+    @Override
+    public byte[] jsonToXml(byte[] json, String root, OutputFormat format) throws Exception {
+        return await(send(jsonToXmlRequest(body(json), root, format), HttpResponse::body));
+    }
+
+    @Override
+    public byte[] jsonToXmlAutoRoot(byte[] json, OutputFormat format) throws Exception {
+        return await(send(jsonToXmlAutoRootRequest(body(json), format), HttpResponse::body));
+    }
 
-        HttpResponse<String> resp = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (resp.statusCode() >= 400) {
-            throw new RuntimeException("API error " + resp.statusCode() + ": " + resp.body());
+    public CompletableFuture<String> xmlToJsonAsync(String xml, OutputFormat format) {
+        return xmlToJsonAsync(body(xml), format);
+    }
+
+    public CompletableFuture<String> xmlToJsonAsync(InputStream xml, OutputFormat format) {
+        return xmlToJsonAsync(body(xml), format);
+    }
+
+    public CompletableFuture<String> xmlToJsonAsync(Path xml, OutputFormat format) {
+        return xmlToJsonAsync(body(xml), format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAsync(String json, String root, OutputFormat format) {
+        return jsonToXmlAsync(body(json), root, format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAsync(InputStream json, String root, OutputFormat format) {
+        return jsonToXmlAsync(body(json), root, format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAsync(Path json, String root, OutputFormat format) {
+        return jsonToXmlAsync(body(json), root, format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAutoRootAsync(String json, OutputFormat format) {
+        return jsonToXmlAutoRootAsync(body(json), format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAutoRootAsync(InputStream json, OutputFormat format) {
+        return jsonToXmlAutoRootAsync(body(json), format);
+    }
+
+    public CompletableFuture<String> jsonToXmlAutoRootAsync(Path json, OutputFormat format) {
+        return jsonToXmlAutoRootAsync(body(json), format);
+    }
+
+    // Converts many small documents in one /batch request, the results keep the order of the items
+    public List<BatchResult> batch(List<BatchItem> items, OutputFormat format) throws Exception {
+        return await(batchAsync(items, format));
+    }
+
+    public CompletableFuture<List<BatchResult>> batchAsync(List<BatchItem> items, OutputFormat format) {
+        StringBuilder ndjson = new StringBuilder();
+        for (BatchItem item : items) {
+            ObjectNode line = BATCH_MAPPER.createObjectNode();
+            line.put("direction", item.direction());
+            if (item.root() != null) line.put("root", item.root());
+            line.put("data", item.data());
+            ndjson.append(line).append('\n');
         }
-        return resp.body();
+
+        return send(request("/batch" + formatQuery("?", format),
+                "application/x-ndjson", "application/x-ndjson", body(ndjson.toString())),
+                response -> readBatchResults(text(response), items.size()));
     }
 
-    public String jsonToXml(String json, String root) throws Exception {
+    private static List<BatchResult> readBatchResults(String ndjson, int count) {
+        BatchResult[] results = new BatchResult[count];
+        try {
+            for (String line : ndjson.split("\n")) {
+                if (line.isBlank()) continue;
+                JsonNode node = BATCH_MAPPER.readTree(line);
+                int index = node.path("index").asInt(-1);
+                if (index < 0 || index >= count) {
+                    throw new IllegalStateException("Batch response has an unexpected item index " + index);
+                }
+                results[index] = new BatchResult(node.path("result").textValue(), node.path("error").textValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (results[i] == null) throw new IllegalStateException("Batch response is missing item " + i);
+        }
+        return Arrays.asList(results);
+    }
+
+    private CompletableFuture<String> xmlToJsonAsync(Body xml, OutputFormat format) {
+        return send(xmlToJsonRequest(xml, format), ApiConverterService::text);
+    }
+
+    private CompletableFuture<String> jsonToXmlAsync(Body json, String root, OutputFormat format) {
+        return send(jsonToXmlRequest(json, root, format), ApiConverterService::text);
+    }
+
+    private CompletableFuture<String> jsonToXmlAutoRootAsync(Body json, OutputFormat format) {
+        return send(jsonToXmlAutoRootRequest(json, format), ApiConverterService::text);
+    }
+
+    private HttpRequest xmlToJsonRequest(Body xml, OutputFormat format) {
+        return request("/xml-to-json" + formatQuery("?", format), "application/xml", "application/json", xml);
+    }
+
+    private HttpRequest jsonToXmlRequest(Body json, String root, OutputFormat format) {
         String r = (root == null || root.isBlank()) ? "root" : root.trim();
         String encoded = URLEncoder.encode(r, StandardCharsets.UTF_8);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/json-to-xml?root=" + encoded))
-                .timeout(Duration.ofSeconds(20))
-                .header("Content-Type", "application/json; charset=utf-8")
-                .header("Accept", "application/xml")
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
+        return request("/json-to-xml?root=" + encoded + formatQuery("&", format),
+                "application/json", "application/xml", json);
+    }
+
+    private HttpRequest jsonToXmlAutoRootRequest(Body json, OutputFormat format) {
+        return request("/json-to-xml-auto" + formatQuery("?", format), "application/json", "application/xml", json);
+    }
+
+    private HttpRequest request(String pathAndQuery, String contentType, String accept, Body body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + pathAndQuery))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", contentType + "; charset=utf-8")
+                .header("Accept", accept)
+                .POST(body.publisher());
 
-        HttpResponse<String> resp = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (resp.statusCode() >= 400) {
-            throw new RuntimeException("API error " + resp.statusCode() + ": " + resp.body());
+        if (compression) builder.header("Accept-Encoding", "gzip");
+        if (body.gzip()) builder.header("Content-Encoding", "gzip");
+        return builder.build();
+    }
+
+    // result maps the successful response, whose body is already gunzipped.
+    // The round trip is recorded under the endpoint name (xml-to-json, ..., batch), with the
+    // request size when it is sent uncompressed and the decoded response size
+    private <T> CompletableFuture<T> send(HttpRequest request, Function<HttpResponse<byte[]>, T> result) {
+        CompletableFuture<T> converted = new CompletableFuture<>();
+        admit(() -> exchange(request, result, converted));
+        return converted;
+    }
+
+    // Starts the request now if a slot is free, otherwise when one is released
+    private void admit(BooleanSupplier start) {
+        synchronized (waiting) {
+            if (running == maxInFlight) {
+                waiting.add(start);
+                return;
+            }
+            running++;
         }
-        return resp.body();
+        if (!start.getAsBoolean()) release();
     }
-    
-    public String jsonToXmlAutoRoot(String json) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/json-to-xml-auto"))
-                .timeout(Duration.ofSeconds(20))
-                .header("Content-Type", "application/json; charset=utf-8")
-                .header("Accept", "application/xml")
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
 
-        HttpResponse<String> resp = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (resp.statusCode() >= 400) {
-            throw new RuntimeException("API error " + resp.statusCode() + ": " + resp.body());
+    // Hands the slot to the next waiting request that still wants it
+    private void release() {
+        while (true) {
+            BooleanSupplier next;
+            synchronized (waiting) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            if (next.getAsBoolean()) return;
         }
-        return resp.body();
+    }
+
+    // false when no exchange was started, so the slot is free again
+    private <T> boolean exchange(HttpRequest request, Function<HttpResponse<byte[]>, T> result,
+                                 CompletableFuture<T> converted) {
+        // cancelled while it waited
+        if (converted.isDone()) return false;
+
+        String path = request.uri().getPath();
+        ConversionMetrics.Recording recording = metrics.start(path.substring(path.lastIndexOf('/') + 1), MODE);
+        if (request.headers().firstValue("Content-Encoding").isEmpty()) {
+            request.bodyPublisher().ifPresent(body -> {
+                if (body.contentLength() >= 0) recording.input(body.contentLength());
+            });
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> exchange;
+        try {
+            exchange = client.sendAsync(request, this::decodedBody);
+        } catch (RuntimeException e) {
+            recording.failure(e);
+            converted.completeExceptionally(e);
+            return false;
+        }
+
+        exchange
+                .whenComplete((resp, error) -> release())
+                .thenApply(resp -> {
+                    if (resp.statusCode() >= 400) {
+                        throw new RuntimeException("API error " + resp.statusCode() + ": " + text(resp));
+                    }
+                    recording.output(resp.body().length);
+                    return result.apply(resp);
+                })
+                .whenComplete((body, error) -> {
+                    if (error == null) converted.complete(body);
+                    else converted.completeExceptionally(error);
+                });
+
+        converted.whenComplete((body, error) -> {
+            if (error == null) {
+                recording.success();
+            } else {
+                recording.failure(error);
+                // cancelling the returned future aborts the HTTP exchange as well
+                if (error instanceof CancellationException) exchange.cancel(true);
+            }
+        });
+        return true;
+    }
+
+    private HttpResponse.BodySubscriber<byte[]> decodedBody(HttpResponse.ResponseInfo info) {
+        boolean gzip = info.headers().firstValue("Content-Encoding")
+                .map(v -> v.trim().equalsIgnoreCase("gzip"))
+                .orElse(false);
+
+        if (!gzip) return HttpResponse.BodySubscribers.ofByteArray();
+
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static String text(HttpResponse<byte[]> response) {
+        return new String(response.body(), charset(response.headers()));
+    }
+
+    // like BodyHandlers.ofString(): the charset of the Content-Type, UTF-8 when there is none
+    private static Charset charset(HttpHeaders headers) {
+        String type = headers.firstValue("Content-Type").orElse("");
+        for (String param : type.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                try {
+                    return Charset.forName(p.substring(8).replace("\"", "").trim());
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private Body body(String text) {
+        return body(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Body body(byte[] bytes) {
+        if (!compression || bytes.length < MIN_COMPRESSED_SIZE) {
+            return new Body(HttpRequest.BodyPublishers.ofByteArray(bytes), false);
+        }
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Body(HttpRequest.BodyPublishers.ofByteArray(gzipped.toByteArray()), true);
+    }
+
+    private Body body(InputStream in) {
+        if (!compression) return new Body(HttpRequest.BodyPublishers.ofInputStream(() -> in), false);
+        return new Body(HttpRequest.BodyPublishers.ofInputStream(() -> new GzipCompressingInputStream(in)), true);
+    }
+
+    private Body body(Path file) {
+        if (!compression) {
+            try {
+                return new Body(HttpRequest.BodyPublishers.ofFile(file), false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Body(HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return new GzipCompressingInputStream(Files.newInputStream(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), true);
+    }
+
+    // Waits for a conversion, rethrowing what made it fail
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    // pretty is the API default, so only compact needs to be asked for
+    private static String formatQuery(String separator, OutputFormat format) {
+        return format == OutputFormat.COMPACT ? separator + "format=compact" : "";
+    }
+
+    // direction is xml-to-json, json-to-xml or json-to-xml-auto; root is only used by json-to-xml
+    public record BatchItem(String direction, String root, String data) {
+
+        public static BatchItem xmlToJson(String xml) {
+            return new BatchItem("xml-to-json", null, xml);
+        }
+
+        public static BatchItem jsonToXml(String json, String root) {
+            return new BatchItem("json-to-xml", (root == null || root.isBlank()) ? "root" : root.trim(), json);
+        }
+
+        public static BatchItem jsonToXmlAutoRoot(String json) {
+            return new BatchItem("json-to-xml-auto", null, json);
+        }
+    }
+
+    // Exactly one of result and error is set
+    public record BatchResult(String result, String error) {
+
+        public boolean ok() {
+            return error == null;
+        }
+    }
+
+    private record Body(HttpRequest.BodyPublisher publisher, boolean gzip) {
     }
 
 }
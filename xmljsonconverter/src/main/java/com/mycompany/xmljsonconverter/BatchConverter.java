@@ -0,0 +1,182 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+ * Converts every .xml (or .json) file under a directory on a pool of threads.
+ * Outputs go next to the inputs, or into a mirror tree when an output directory
+ * is given. A failing file is recorded in the report and does not stop the run.
+ *
+ * Only one direction is converted per run, so an output never becomes an input
+ * of the same run.
+ */
+public class BatchConverter {
+
+    // files from this size on are converted file to file (not cached)
+    private static final long LARGE_FILE = 64L * 1024 * 1024;
+
+    public enum Direction {
+        XML_TO_JSON(".xml", ".json"),
+        JSON_TO_XML(".json", ".xml");
+
+        final String inputExtension;
+        final String outputExtension;
+
+        Direction(String inputExtension, String outputExtension) {
+            this.inputExtension = inputExtension;
+            this.outputExtension = outputExtension;
+        }
+    }
+
+    private final ConverterService service;
+    private final Direction direction;
+    private final OutputFormat format;
+    private final int threads;
+    private final boolean virtualThreads;
+
+    public BatchConverter(ConverterService service, Direction direction, OutputFormat format,
+                          int threads, boolean virtualThreads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        this.service = service;
+        this.direction = direction;
+        this.format = format;
+        this.threads = threads;
+        this.virtualThreads = virtualThreads;
+    }
+
+    // outputRoot == null writes each output next to its input
+    public Report run(Path inputRoot, Path outputRoot) throws IOException, InterruptedException {
+        Path in = inputRoot.toAbsolutePath().normalize();
+        Path out = (outputRoot == null) ? null : outputRoot.toAbsolutePath().normalize();
+
+        LongAdder files = new LongAdder();
+        LongAdder bytesIn = new LongAdder();
+        LongAdder bytesOut = new LongAdder();
+        Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+        // bounds the number of queued files, so walking 200k entries does not queue 200k tasks
+        Semaphore inFlight = new Semaphore(threads * 4);
+        long start = System.nanoTime();
+
+        ExecutorService executor = virtualThreads ? virtualThreadExecutor() : null;
+        boolean virtual = executor != null;
+        if (executor == null) executor = Executors.newFixedThreadPool(threads);
+        try (Stream<Path> walk = Files.walk(in)) {
+            Iterable<Path> inputs = walk
+                    .filter(p -> out == null || !p.startsWith(out))
+                    .filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT)
+                            .endsWith(direction.inputExtension))
+                    .filter(Files::isRegularFile)::iterator;
+
+            for (Path file : inputs) {
+                inFlight.acquire();
+                Path target = outputFile(in, out, file);
+                executor.execute(() -> {
+                    try {
+                        long size = Files.size(file);
+                        if (target.getParent() != null) Files.createDirectories(target.getParent());
+
+                        long written;
+                        if (size < LARGE_FILE) {
+                            byte[] result = convert(Files.readAllBytes(file));
+                            Files.write(target, result);
+                            written = result.length;
+                        } else {
+                            convert(file, target);
+                            written = Files.size(target);
+                        }
+
+                        files.increment();
+                        bytesIn.add(size);
+                        bytesOut.add(written);
+                    } catch (Exception e) {
+                        failures.add(new Failure(file, String.valueOf(e.getMessage())));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        List<Failure> failed = new ArrayList<>(failures);
+        failed.sort(Comparator.comparing(Failure::file));
+
+        return new Report(files.sum(), bytesIn.sum(), bytesOut.sum(), System.nanoTime() - start, failed, virtual);
+    }
+
+    private byte[] convert(byte[] input) throws Exception {
+        return direction == Direction.XML_TO_JSON
+                ? service.xmlToJson(input, format)
+                : service.jsonToXmlAutoRoot(input, format);
+    }
+
+    // Large files are mapped and written through a channel instead of being read into arrays
+    private void convert(Path input, Path output) throws Exception {
+        if (direction == Direction.XML_TO_JSON) {
+            service.xmlToJson(input, output, format);
+        } else {
+            service.jsonToXmlAutoRoot(input, output, format);
+        }
+    }
+
+    private Path outputFile(Path inputRoot, Path outputRoot, Path file) {
+        String name = file.getFileName().toString();
+        String base = name.substring(0, name.length() - direction.inputExtension.length());
+        String outName = base + direction.outputExtension;
+
+        if (outputRoot == null) return file.resolveSibling(outName);
+
+        Path relative = inputRoot.relativize(file);
+        Path parent = relative.getParent();
+        return (parent == null) ? outputRoot.resolve(outName) : outputRoot.resolve(parent).resolve(outName);
+    }
+
+    // Virtual threads only exist from Java 21 on; the project targets 17, so look them up
+    // reflectively. null when they are not there, the run then uses the platform thread pool
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public record Failure(Path file, String message) {
+    }
+
+    // virtualThreads: whether the run got virtual threads (asked for and available)
+    public record Report(long files, long bytesIn, long bytesOut, long elapsedNanos, List<Failure> failures,
+                         boolean virtualThreads) {
+
+        public double seconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        public double filesPerSecond() {
+            return files / Math.max(seconds(), 1e-9);
+        }
+
+        public double megabytesPerSecond() {
+            return bytesIn / (1024.0 * 1024.0) / Math.max(seconds(), 1e-9);
+        }
+    }
+}
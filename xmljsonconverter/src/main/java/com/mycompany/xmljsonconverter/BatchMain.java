@@ -0,0 +1,122 @@
+package com.mycompany.xmljsonconverter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Headless entry point for BatchConverter:
+ *
+ *   BatchMain <input-dir> [--out <dir>] [--mode manual|jackson|api]
+ *             [--direction xml-to-json|json-to-xml] [--format pretty|compact]
+ *             [--threads <n>] [--virtual] [--api-url <url>] [--cache <MB>]
+ *             [--split-arrays]
+ *
+ * --split-arrays lets the manual mode write the large arrays of a document on all
+ * cores, for runs over a few very large files.
+ */
+public class BatchMain {
+
+    private static final String USAGE = "Usage: BatchMain <input-dir> [--out <dir>] [--mode manual|jackson|api]\n"
+            + "                 [--direction xml-to-json|json-to-xml] [--format pretty|compact]\n"
+            + "                 [--threads <n>] [--virtual] [--api-url <url>] [--cache <MB>]\n"
+            + "                 [--split-arrays]";
+
+    public static void main(String[] args) throws Exception {
+        Path input = null;
+        Path output = null;
+        String mode = "jackson";
+        BatchConverter.Direction direction = BatchConverter.Direction.XML_TO_JSON;
+        OutputFormat format = OutputFormat.PRETTY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        String apiUrl = "http://localhost:8080/api";
+        long cacheMegabytes = 0;
+        boolean splitArrays = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> output = Path.of(value(args, ++i));
+                    case "--mode" -> mode = value(args, ++i).toLowerCase(Locale.ROOT);
+                    case "--direction" -> direction = BatchConverter.Direction.valueOf(enumName(value(args, ++i)));
+                    case "--format" -> format = OutputFormat.valueOf(enumName(value(args, ++i)));
+                    case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                    case "--virtual" -> virtual = true;
+                    case "--api-url" -> apiUrl = value(args, ++i);
+                    case "--cache" -> cacheMegabytes = Long.parseLong(value(args, ++i));
+                    case "--split-arrays" -> splitArrays = true;
+                    default -> {
+                        if (args[i].startsWith("--") || input != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        input = Path.of(args[i]);
+                    }
+                }
+            }
+            if (input == null) throw new IllegalArgumentException("Missing input directory");
+            if (!Files.isDirectory(input)) throw new IllegalArgumentException("Not a directory: " + input);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        ConverterService service = switch (mode) {
+            case "manual" -> splitArrays
+                    ? new ManualConverterService(ConversionContext.shared(), ForkJoinPool.commonPool())
+                    : new ManualConverterService();
+            case "jackson" -> new LocalConverterService();
+            case "api" -> new ApiConverterService(apiUrl);
+            default -> {
+                System.err.println("Unknown mode: " + mode);
+                System.err.println(USAGE);
+                System.exit(2);
+                yield null;
+            }
+        };
+
+        // trees with many identical files (shared reference data) convert each distinct one once
+        ConversionCache cache = null;
+        if (cacheMegabytes > 0) {
+            cache = new ConversionCache(cacheMegabytes * 1024 * 1024);
+            service = new CachingConverterService(service, cache);
+        }
+
+        BatchConverter.Report report = new BatchConverter(service, direction, format, threads, virtual)
+                .run(input, output);
+
+        if (virtual && !report.virtualThreads()) {
+            System.err.println("Virtual threads need Java 21+, used " + threads + " platform threads");
+        }
+
+        for (BatchConverter.Failure f : report.failures()) {
+            System.err.println("FAILED " + f.file() + ": " + f.message());
+        }
+
+        System.out.printf(Locale.ROOT, "Converted %d files (%d failed) in %.2f s: %.1f files/s, %.2f MB/s%n",
+                report.files(), report.failures().size(), report.seconds(),
+                report.filesPerSecond(), report.megabytesPerSecond());
+
+        if (cache != null) {
+            ConversionCache.Stats stats = cache.stats();
+            System.out.printf(Locale.ROOT, "Cache: %d hits, %d misses (%.1f%%), %d evictions, %.1f MB used%n",
+                    stats.hits(), stats.misses(), stats.hitRate() * 100, stats.evictions(),
+                    stats.bytes() / (1024.0 * 1024.0));
+        }
+
+        if (!report.failures().isEmpty()) System.exit(1);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        return args[i];
+    }
+
+    // "xml-to-json" -> "XML_TO_JSON"
+    private static String enumName(String s) {
+        return s.trim().replace('-', '_').toUpperCase(Locale.ROOT);
+    }
+}
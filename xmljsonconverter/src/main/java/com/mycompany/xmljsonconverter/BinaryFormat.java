@@ -0,0 +1,36 @@
+package com.mycompany.xmljsonconverter;
+
+import java.util.Locale;
+
+// Binary encodings of the JSON data model, for hops between services that would
+// otherwise write text JSON only to parse it again
+public enum BinaryFormat {
+    SMILE(BinaryFormat.SMILE_MEDIA_TYPE),
+    CBOR(BinaryFormat.CBOR_MEDIA_TYPE);
+
+    // constants, so the API can name them in its consumes lists
+    public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+    public static final String CBOR_MEDIA_TYPE = "application/cbor";
+
+    private final String mediaType;
+
+    BinaryFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    // "smile" / "cbor", as used in the metric directions and the API paths
+    public String id() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static BinaryFormat of(String id) {
+        for (BinaryFormat format : values()) {
+            if (format.id().equalsIgnoreCase(id)) return format;
+        }
+        throw new IllegalArgumentException("Unknown binary format '" + id + "', expected smile or cbor");
+    }
+}
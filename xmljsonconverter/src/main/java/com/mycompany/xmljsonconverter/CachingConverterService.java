@@ -0,0 +1,87 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * Puts a ConversionCache in front of another ConverterService. The String and
+ * byte[] methods are cached; streams are passed through, they are meant for inputs
+ * too large to keep or to hash up front.
+ */
+public class CachingConverterService implements ConverterService {
+
+    private final ConverterService delegate;
+    private final ConversionCache cache;
+
+    public CachingConverterService(ConverterService delegate, ConversionCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    public ConversionCache cache() {
+        return cache;
+    }
+
+    @Override
+    public String xmlToJson(String xml, OutputFormat format) throws Exception {
+        return cache.convert(xml, "xml-to-json|" + format, () -> delegate.xmlToJson(xml, format));
+    }
+
+    @Override
+    public String jsonToXml(String json, String rootName, OutputFormat format) throws Exception {
+        return cache.convert(json, "json-to-xml|" + format + "|" + rootName,
+                () -> delegate.jsonToXml(json, rootName, format));
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(String json, OutputFormat format) throws Exception {
+        return cache.convert(json, "json-to-xml-auto|" + format, () -> delegate.jsonToXmlAutoRoot(json, format));
+    }
+
+    @Override
+    public byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception {
+        return cache.convert(xml, "xml-to-json|" + format, () -> delegate.xmlToJson(xml, format));
+    }
+
+    @Override
+    public byte[] jsonToXml(byte[] json, String rootName, OutputFormat format) throws Exception {
+        return cache.convert(json, "json-to-xml|" + format + "|" + rootName,
+                () -> delegate.jsonToXml(json, rootName, format));
+    }
+
+    @Override
+    public byte[] jsonToXmlAutoRoot(byte[] json, OutputFormat format) throws Exception {
+        return cache.convert(json, "json-to-xml-auto|" + format, () -> delegate.jsonToXmlAutoRoot(json, format));
+    }
+
+    @Override
+    public String xmlToJson(InputStream xml, OutputFormat format) throws Exception {
+        return delegate.xmlToJson(xml, format);
+    }
+
+    @Override
+    public String jsonToXml(InputStream json, String rootName, OutputFormat format) throws Exception {
+        return delegate.jsonToXml(json, rootName, format);
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(InputStream json, OutputFormat format) throws Exception {
+        return delegate.jsonToXmlAutoRoot(json, format);
+    }
+
+    @Override
+    public void xmlToJson(InputStream xml, OutputStream out, OutputFormat format) throws Exception {
+        delegate.xmlToJson(xml, out, format);
+    }
+
+    @Override
+    public void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format)
+            throws Exception {
+        delegate.jsonToXml(json, out, rootName, format);
+    }
+
+    @Override
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format) throws Exception {
+        delegate.jsonToXmlAutoRoot(json, out, format);
+    }
+}
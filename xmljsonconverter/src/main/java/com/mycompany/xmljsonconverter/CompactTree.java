@@ -0,0 +1,453 @@
+package com.mycompany.xmljsonconverter;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/*
+ * Array-backed document tree used by the manual converter instead of nested
+ * LinkedHashMap / ArrayList / boxed numbers. A node is an index into parallel
+ * primitive arrays: its kind, its member name (an interned symbol, for members
+ * of objects), its parent, first child and next sibling.
+ *
+ * Strings are (offset, length) ranges, either into the source text the tree was
+ * parsed from or, for text that had to be decoded, into the tree's own char
+ * buffer. Numbers are stored as primitives in the same two ints. Names are
+ * numbered per document and resolved through a shared SymbolTable, so known names
+ * are not allocated again.
+ *
+ * Objects have map semantics like the LinkedHashMap they replace: put() on an
+ * existing name replaces the value in place, group() turns it into an array
+ * (XML repeated elements).
+ */
+public final class CompactTree {
+
+    public static final byte OBJECT = 1;
+    public static final byte ARRAY = 2;
+    public static final byte STRING = 3;
+    public static final byte LONG = 4;
+    public static final byte DOUBLE = 5;
+    public static final byte TRUE = 6;
+    public static final byte FALSE = 7;
+    public static final byte NULL = 8;
+
+    public static final int NONE = -1;
+
+    private final CharSequence source;
+    private final SymbolTable symbolTable;
+
+    private byte[] kinds = new byte[64];
+    private int[] names = new int[64];
+    private int[] parents = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] lastChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] childCounts = new int[64];
+    // STRING: offset (negative: ~offset into chars) and length; LONG / DOUBLE: high and low 32 bits
+    private int[] values1 = new int[64];
+    private int[] values2 = new int[64];
+    private int size;
+
+    private char[] chars = new char[256];
+    private int charCount;
+
+    private SymbolTable.Symbol[] symbols = new SymbolTable.Symbol[16];
+    private int symbolCount;
+    private int[] symbolSlots = new int[32]; // symbol id + 1, 0 = empty
+
+    // (object << 32 | symbol) -> member node, only while the tree is being built
+    private long[] memberKeys = new long[64];
+    private int[] memberNodes = new int[64];
+    private int memberCount;
+
+    private int root = NONE;
+
+    public CompactTree(SymbolTable symbolTable) {
+        this(null, symbolTable);
+    }
+
+    // source: the text STRING ranges with a non-negative offset point into
+    public CompactTree(CharSequence source, SymbolTable symbolTable) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+        Arrays.fill(memberNodes, NONE);
+    }
+
+    // ---- reading
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    public int name(int node) {
+        return names[node];
+    }
+
+    public String nameText(int node) {
+        return symbols[names[node]].name;
+    }
+
+    public SymbolTable.Symbol nameSymbol(int node) {
+        return symbols[names[node]];
+    }
+
+    public SymbolTable.Symbol symbol(int id) {
+        return symbols[id];
+    }
+
+    // Id of a name in this document, NONE if no node uses it
+    public int findSymbol(String name) {
+        int h = name.hashCode();
+        int mask = symbolSlots.length - 1;
+        for (int slot = mix(h) & mask; symbolSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = symbolSlots[slot] - 1;
+            if (symbols[id].name.equals(name)) return id;
+        }
+        return NONE;
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int childCount(int node) {
+        return childCounts[node];
+    }
+
+    // Levels from node down to its deepest descendant, node included; walked without recursion
+    public int depth(int node) {
+        int max = 1;
+        int level = 1;
+        int n = node;
+        while (true) {
+            if (firstChildren[n] != NONE) {
+                n = firstChildren[n];
+                if (++level > max) max = level;
+                continue;
+            }
+            while (n != node && nextSiblings[n] == NONE) {
+                n = parents[n];
+                level--;
+            }
+            if (n == node) return max;
+            n = nextSiblings[n];
+        }
+    }
+
+    // Member of an object by symbol, NONE if absent
+    public int member(int object, int symbol) {
+        for (int c = firstChildren[object]; c != NONE; c = nextSiblings[c]) {
+            if (names[c] == symbol) return c;
+        }
+        return NONE;
+    }
+
+    // View of a STRING value, nothing is copied
+    public CharSequence text(int node) {
+        int offset = values1[node];
+        return (offset >= 0)
+                ? CharBuffer.wrap(source, offset, offset + values2[node])
+                : CharBuffer.wrap(chars, ~offset, values2[node]);
+    }
+
+    public long longValue(int node) {
+        return ((long) values1[node] << 32) | (values2[node] & 0xFFFFFFFFL);
+    }
+
+    public double doubleValue(int node) {
+        return Double.longBitsToDouble(longValue(node));
+    }
+
+    // String.valueOf of the value the Map/List tree would have held at this node
+    public void appendValueString(StringBuilder out, int node) {
+        switch (kinds[node]) {
+            case STRING -> out.append(text(node));
+            case LONG -> out.append(longValue(node));
+            case DOUBLE -> out.append(doubleValue(node));
+            case TRUE -> out.append("true");
+            case FALSE -> out.append("false");
+            case NULL -> out.append("null");
+            case OBJECT -> {
+                // AbstractMap.toString
+                out.append('{');
+                for (int c = firstChildren[node]; c != NONE; c = nextSiblings[c]) {
+                    if (c != firstChildren[node]) out.append(", ");
+                    out.append(symbols[names[c]].name).append('=');
+                    appendValueString(out, c);
+                }
+                out.append('}');
+            }
+            default -> {
+                // AbstractCollection.toString
+                out.append('[');
+                for (int c = firstChildren[node]; c != NONE; c = nextSiblings[c]) {
+                    if (c != firstChildren[node]) out.append(", ");
+                    appendValueString(out, c);
+                }
+                out.append(']');
+            }
+        }
+    }
+
+    public String valueString(int node) {
+        if (kinds[node] == STRING) return text(node).toString();
+        StringBuilder sb = new StringBuilder();
+        appendValueString(sb, node);
+        return sb.toString();
+    }
+
+    // ---- building (package-private, used by the parsers)
+
+    int symbol(String s) {
+        int h = s.hashCode();
+        int id = findSymbol(s);
+        return (id != NONE) ? id : addSymbol(symbolTable.intern(s), h);
+    }
+
+    // Id of s[start, end); nothing is allocated when the name is already known
+    int symbol(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);
+
+        int mask = symbolSlots.length - 1;
+        for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+            int entry = symbolSlots[slot];
+            if (entry == 0) break;
+            if (contentEquals(symbols[entry - 1].name, s, start, end)) return entry - 1;
+        }
+
+        return addSymbol(symbolTable.intern(s, start, end), h);
+    }
+
+    private int addSymbol(SymbolTable.Symbol symbol, int h) {
+        if (symbolCount == symbols.length) symbols = Arrays.copyOf(symbols, symbolCount * 2);
+        int id = symbolCount++;
+        symbols[id] = symbol;
+
+        if (symbolCount * 2 > symbolSlots.length) {
+            rehashSymbols();
+        } else {
+            insertSymbol(id, h);
+        }
+        return id;
+    }
+
+    int newNode(byte kind, int name) {
+        if (size == kinds.length) grow();
+        int n = size++;
+        kinds[n] = kind;
+        names[n] = name;
+        parents[n] = NONE;
+        firstChildren[n] = NONE;
+        lastChildren[n] = NONE;
+        nextSiblings[n] = NONE;
+        childCounts[n] = 0;
+        values1[n] = 0;
+        values2[n] = 0;
+        return n;
+    }
+
+    // string whose text is source[start, end)
+    int newSourceString(int name, int start, int end) {
+        int n = newNode(STRING, name);
+        values1[n] = start;
+        values2[n] = end - start;
+        return n;
+    }
+
+    // string whose text is copied into the tree
+    int newString(int name, CharSequence text) {
+        int len = text.length();
+        if (charCount + len > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + len));
+        }
+        for (int i = 0; i < len; i++) chars[charCount + i] = text.charAt(i);
+
+        int n = newNode(STRING, name);
+        values1[n] = ~charCount;
+        values2[n] = len;
+        charCount += len;
+        return n;
+    }
+
+    int newLong(int name, long value) {
+        int n = newNode(LONG, name);
+        values1[n] = (int) (value >>> 32);
+        values2[n] = (int) value;
+        return n;
+    }
+
+    int newDouble(int name, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int n = newNode(DOUBLE, name);
+        values1[n] = (int) (bits >>> 32);
+        values2[n] = (int) bits;
+        return n;
+    }
+
+    void setRoot(int node) {
+        root = node;
+    }
+
+    // Adds child at the end of parent
+    void append(int parent, int child) {
+        parents[child] = parent;
+        if (lastChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        } else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
+        childCounts[parent]++;
+    }
+
+    // Map.put: a member with the same name is replaced where it is
+    void put(int object, int child) {
+        int existing = findMember(object, names[child]);
+        if (existing == NONE) {
+            append(object, child);
+            addMember(object, names[child], child);
+        } else {
+            replace(object, existing, child);
+            addMember(object, names[child], child);
+        }
+    }
+
+    // Repeated names become one array member, in the position of the first occurrence
+    void group(int object, int child) {
+        int name = names[child];
+        int existing = findMember(object, name);
+
+        if (existing == NONE) {
+            append(object, child);
+            addMember(object, name, child);
+        } else if (kinds[existing] == ARRAY) {
+            append(existing, child);
+        } else {
+            int array = newNode(ARRAY, name);
+            replace(object, existing, array);
+            addMember(object, name, array);
+            append(array, existing);
+            append(array, child);
+        }
+    }
+
+    // Drops what is only needed while building: the member index and the last-child links
+    void finish() {
+        lastChildren = null;
+        memberKeys = null;
+        memberNodes = null;
+        memberCount = 0;
+    }
+
+    private void replace(int parent, int old, int node) {
+        parents[node] = parent;
+        nextSiblings[node] = nextSiblings[old];
+        if (firstChildren[parent] == old) {
+            firstChildren[parent] = node;
+        } else {
+            int prev = firstChildren[parent];
+            while (nextSiblings[prev] != old) prev = nextSiblings[prev];
+            nextSiblings[prev] = node;
+        }
+        if (lastChildren[parent] == old) lastChildren[parent] = node;
+
+        parents[old] = NONE;
+        nextSiblings[old] = NONE;
+    }
+
+    private int findMember(int object, int name) {
+        long key = ((long) object << 32) | name;
+        int mask = memberKeys.length - 1;
+        for (int slot = mix(Long.hashCode(key)) & mask; memberNodes[slot] != NONE; slot = (slot + 1) & mask) {
+            if (memberKeys[slot] == key) return memberNodes[slot];
+        }
+        return NONE;
+    }
+
+    private void addMember(int object, int name, int node) {
+        long key = ((long) object << 32) | name;
+        int mask = memberKeys.length - 1;
+        int slot = mix(Long.hashCode(key)) & mask;
+        while (memberNodes[slot] != NONE) {
+            if (memberKeys[slot] == key) {
+                memberNodes[slot] = node;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        memberKeys[slot] = key;
+        memberNodes[slot] = node;
+
+        if (++memberCount * 2 > memberKeys.length) rehashMembers();
+    }
+
+    private void rehashMembers() {
+        long[] oldKeys = memberKeys;
+        int[] oldNodes = memberNodes;
+        memberKeys = new long[oldKeys.length * 2];
+        memberNodes = new int[oldKeys.length * 2];
+        Arrays.fill(memberNodes, NONE);
+
+        int mask = memberKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldNodes[i] == NONE) continue;
+            int slot = mix(Long.hashCode(oldKeys[i])) & mask;
+            while (memberNodes[slot] != NONE) slot = (slot + 1) & mask;
+            memberKeys[slot] = oldKeys[i];
+            memberNodes[slot] = oldNodes[i];
+        }
+    }
+
+    private void insertSymbol(int id, int hash) {
+        int mask = symbolSlots.length - 1;
+        int slot = mix(hash) & mask;
+        while (symbolSlots[slot] != 0) slot = (slot + 1) & mask;
+        symbolSlots[slot] = id + 1;
+    }
+
+    private void rehashSymbols() {
+        symbolSlots = new int[symbolSlots.length * 2];
+        for (int id = 0; id < symbolCount; id++) insertSymbol(id, symbols[id].hash);
+    }
+
+    private void grow() {
+        int n = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, n);
+        names = Arrays.copyOf(names, n);
+        parents = Arrays.copyOf(parents, n);
+        firstChildren = Arrays.copyOf(firstChildren, n);
+        lastChildren = Arrays.copyOf(lastChildren, n);
+        nextSiblings = Arrays.copyOf(nextSiblings, n);
+        childCounts = Arrays.copyOf(childCounts, n);
+        values1 = Arrays.copyOf(values1, n);
+        values2 = Arrays.copyOf(values2, n);
+    }
+
+    private static boolean contentEquals(String symbol, CharSequence s, int start, int end) {
+        if (symbol.length() != end - start) return false;
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != s.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,176 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Conversion results keyed by the content of the input: an XXH64 hash of its UTF-8
+ * bytes, its length and the conversion options (direction, root, format). Identical
+ * documents sent again are answered without parsing them. XXH64 is fast, not
+ * collision-resistant, so each entry keeps its input and a hit is only served when
+ * the bytes are equal; a crafted colliding document is a miss.
+ *
+ * Results are kept as they were produced, Strings or UTF-8 byte arrays; a document
+ * cached one way is converted again when asked for the other way.
+ *
+ * The cache holds at most maxBytes of inputs and results (two bytes per char for
+ * result Strings) and
+ * evicts the least recently used entries first. Results larger than a quarter of the
+ * cache are not stored, so one huge document cannot flush everything else.
+ * Two threads missing on the same key at once both convert; the last one stores.
+ *
+ * Bound to a MeterRegistry, hits, misses, evictions, entries and size are published
+ * as xmljson.cache.* meters.
+ */
+public final class ConversionCache implements MeterBinder {
+
+    // rough size of the map entry, the key, the input array and the result header
+    private static final long ENTRY_OVERHEAD = 128;
+    private static final long SEED = 0x584D4C4A534F4EL;
+
+    @FunctionalInterface
+    public interface Conversion {
+        String convert() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BytesConversion {
+        byte[] convert() throws Exception;
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ConversionCache(long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    // options must identify everything besides the input that changes the result
+    public String convert(String input, String options, Conversion conversion) throws Exception {
+        byte[] utf8 = input.getBytes(StandardCharsets.UTF_8);
+        Key key = new Key(XxHash64.hash(utf8, SEED), utf8.length, options, false);
+
+        String cached = (String) lookup(key, utf8);
+        if (cached != null) return cached;
+
+        String result = conversion.convert();
+        put(key, new Entry(utf8, result));
+        return result;
+    }
+
+    // UTF-8 input and result; the input bytes are hashed as they are. A cached array is
+    // handed to every caller asking for it, so it must not be modified
+    public byte[] convert(byte[] input, String options, BytesConversion conversion) throws Exception {
+        Key key = new Key(XxHash64.hash(input, SEED), input.length, options, true);
+
+        byte[] cached = (byte[]) lookup(key, input);
+        if (cached != null) return cached;
+
+        byte[] result = conversion.convert();
+        // the caller keeps its array and may change it
+        put(key, new Entry(input.clone(), result));
+        return result;
+    }
+
+    private Object lookup(Key key, byte[] input) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        // compared outside the lock; entries are never modified
+        if (entry != null && Arrays.equals(entry.input, input)) {
+            hits.increment();
+            return entry.result;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes, maxBytes);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("xmljson.cache.hits", hits, LongAdder::sum)
+                .description("Conversions answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("xmljson.cache.misses", misses, LongAdder::sum)
+                .description("Conversions not found in the cache")
+                .register(registry);
+        FunctionCounter.builder("xmljson.cache.evictions", evictions, LongAdder::sum)
+                .description("Results evicted to stay under the size limit")
+                .register(registry);
+        Gauge.builder("xmljson.cache.entries", this, cache -> cache.stats().entries())
+                .description("Cached results")
+                .register(registry);
+        Gauge.builder("xmljson.cache.size", this, cache -> cache.stats().bytes())
+                .description("Memory held by the cached inputs and results")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    // a colliding input replaces the entry it collides with
+    private synchronized void put(Key key, Entry entry) {
+        long size = entry.weight();
+        if (size > maxBytes / 4) return;
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.weight();
+        bytes += size;
+
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().weight();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private record Key(long hash, int length, String options, boolean utf8) {
+    }
+
+    // input is the UTF-8 bytes the key was computed from
+    private record Entry(byte[] input, Object result) {
+
+        long weight() {
+            return (result instanceof byte[] utf8)
+                    ? ENTRY_OVERHEAD + input.length + utf8.length
+                    : ENTRY_OVERHEAD + input.length + 2L * ((String) result).length();
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+
+        // also in the JSON of the API's GET /api/cache
+        @JsonProperty
+        public double hitRate() {
+            long total = hits + misses;
+            return (total == 0) ? 0 : (double) hits / total;
+        }
+    }
+}
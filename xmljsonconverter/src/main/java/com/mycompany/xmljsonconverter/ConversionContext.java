@@ -0,0 +1,195 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Parser factories, mappers and reader/writer instances shared by the converter
+ * services. Everything here is built once: creating factories (service loader
+ * lookups) and writers on every call dominates the cost of small documents.
+ *
+ * Mappers, ObjectReader/ObjectWriter and XMLInputFactory are thread-safe once
+ * configured. DocumentBuilder is not, so each thread gets its own.
+ *
+ * A context built with a MeterRegistry makes the services using it record
+ * ConversionMetrics; the shared one records nothing.
+ */
+public final class ConversionContext {
+
+    private static final ConversionContext SHARED = new ConversionContext();
+
+    private static final int MAX_CACHED_ROOT_WRITERS = 256;
+
+    // DefaultHandler ignores warnings and recoverable errors and rethrows fatal ones
+    private static final DefaultHandler SILENT_ERRORS = new DefaultHandler();
+
+    private final ObjectMapper jsonMapper;
+    private final XmlMapper xmlMapper;
+    private final SmileMapper smileMapper;
+    private final CBORMapper cborMapper;
+
+    private final ObjectReader jsonReader;
+    private final ObjectWriter jsonWriter;
+    private final ObjectWriter compactJsonWriter;
+    private final ObjectWriter xmlWriter;
+    private final ObjectWriter compactXmlWriter;
+    private final ObjectReader smileReader;
+    private final ObjectReader cborReader;
+    private final ObjectWriter smileWriter;
+    private final ObjectWriter cborWriter;
+    private final Map<String, ObjectWriter> xmlRootWriters = new ConcurrentHashMap<>();
+    private final Map<String, ObjectWriter> compactXmlRootWriters = new ConcurrentHashMap<>();
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final ConversionMetrics metrics;
+
+    private final XMLInputFactory xmlInputFactory;
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final ThreadLocal<DocumentBuilder> documentBuilders;
+
+    public ConversionContext() {
+        this(ConversionMetrics.NONE);
+    }
+
+    public ConversionContext(MeterRegistry registry) {
+        this(ConversionMetrics.of(registry));
+    }
+
+    private ConversionContext(ConversionMetrics metrics) {
+        this.metrics = metrics;
+
+        jsonMapper = new ObjectMapper();
+        jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+        xmlMapper = new XmlMapper();
+        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
+
+        smileMapper = new SmileMapper();
+        cborMapper = new CBORMapper();
+
+        jsonReader = jsonMapper.reader();
+        jsonWriter = jsonMapper.writer();
+        compactJsonWriter = jsonWriter.without(SerializationFeature.INDENT_OUTPUT);
+        xmlWriter = xmlMapper.writer();
+        compactXmlWriter = xmlWriter.without(SerializationFeature.INDENT_OUTPUT);
+        smileReader = smileMapper.reader();
+        cborReader = cborMapper.reader();
+        smileWriter = smileMapper.writer();
+        cborWriter = cborMapper.writer();
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setIgnoringComments(true);
+        documentBuilderFactory.setNamespaceAware(false);
+        documentBuilders = ThreadLocal.withInitial(this::newDocumentBuilder);
+    }
+
+    public static ConversionContext shared() {
+        return SHARED;
+    }
+
+    public ObjectMapper jsonMapper() {
+        return jsonMapper;
+    }
+
+    public XmlMapper xmlMapper() {
+        return xmlMapper;
+    }
+
+    public ObjectMapper binaryMapper(BinaryFormat format) {
+        return format == BinaryFormat.CBOR ? cborMapper : smileMapper;
+    }
+
+    public ObjectReader jsonReader() {
+        return jsonReader;
+    }
+
+    public ObjectWriter jsonWriter() {
+        return jsonWriter;
+    }
+
+    public ObjectWriter jsonWriter(OutputFormat format) {
+        return format == OutputFormat.COMPACT ? compactJsonWriter : jsonWriter;
+    }
+
+    public ObjectReader binaryReader(BinaryFormat format) {
+        return format == BinaryFormat.CBOR ? cborReader : smileReader;
+    }
+
+    public ObjectWriter binaryWriter(BinaryFormat format) {
+        return format == BinaryFormat.CBOR ? cborWriter : smileWriter;
+    }
+
+    public ObjectWriter xmlWriter(OutputFormat format) {
+        return format == OutputFormat.COMPACT ? compactXmlWriter : xmlWriter;
+    }
+
+    public ObjectWriter xmlWriter(String rootName) {
+        return xmlWriter(rootName, OutputFormat.PRETTY);
+    }
+
+    // Root names repeat a lot (auto-root uses the document's own root), so keep a few writers around
+    public ObjectWriter xmlWriter(String rootName, OutputFormat format) {
+        Map<String, ObjectWriter> cache = format == OutputFormat.COMPACT ? compactXmlRootWriters : xmlRootWriters;
+
+        ObjectWriter writer = cache.get(rootName);
+        if (writer != null) return writer;
+
+        writer = xmlWriter(format).withRootName(rootName);
+        if (cache.size() < MAX_CACHED_ROOT_WRITERS) {
+            cache.putIfAbsent(rootName, writer);
+        }
+        return writer;
+    }
+
+    // Element and field names, shared by the manual conversions of this context
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public ConversionMetrics metrics() {
+        return metrics;
+    }
+
+    public XMLInputFactory xmlInputFactory() {
+        return xmlInputFactory;
+    }
+
+    // Per-thread builder, reset before being handed out. Parse errors are reported through
+    // the thrown exception only, the default handler would also print them to stderr
+    public DocumentBuilder documentBuilder() {
+        DocumentBuilder builder = documentBuilders.get();
+        builder.reset();
+        builder.setErrorHandler(SILENT_ERRORS);
+        return builder;
+    }
+
+    private DocumentBuilder newDocumentBuilder() {
+        try {
+            synchronized (documentBuilderFactory) {
+                return documentBuilderFactory.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot create DocumentBuilder", e);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Micrometer instrumentation of the conversions. Each conversion records, tagged with
+ * its direction (xml-to-json, json-to-xml, json-to-xml-auto, and the Smile/CBOR ones
+ * like xml-to-smile or cbor-to-xml) and mode (manual, jackson, api; the API server
+ * records document and stream):
+ *
+ *   xmljson.conversion            total time (with a histogram)
+ *   xmljson.conversion.phase      time per phase: parse, transform, serialize
+ *   xmljson.conversion.input      input size in bytes, when known
+ *   xmljson.conversion.output     output size in bytes
+ *   xmljson.conversion.nodes      nodes of the parsed tree
+ *   xmljson.conversion.depth      nesting depth of the parsed tree
+ *   xmljson.conversion.allocated  bytes allocated by the converting thread
+ *   xmljson.conversion.errors     failed conversions, also tagged with the exception
+ *
+ * Sizes, node counts and depths cost an extra pass, so they are only taken when a
+ * registry is set. NONE records nothing; its conversions get a no-op Recording.
+ */
+public final class ConversionMetrics {
+
+    public static final String XML_TO_JSON = "xml-to-json";
+    public static final String JSON_TO_XML = "json-to-xml";
+    public static final String JSON_TO_XML_AUTO = "json-to-xml-auto";
+
+    public static final String PARSE = "parse";
+    public static final String TRANSFORM = "transform";
+    public static final String SERIALIZE = "serialize";
+
+    public static final ConversionMetrics NONE = new ConversionMetrics(null);
+
+    private static final double[] SIZE_BUCKETS = {1 << 10, 1 << 14, 1 << 18, 1 << 20, 1 << 24, 1 << 28};
+    private static final double[] NODE_BUCKETS = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final double[] DEPTH_BUCKETS = {2, 4, 8, 16, 32, 64, 128};
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    @FunctionalInterface
+    public interface Instrumented<T> {
+        T convert(Recording recording) throws Exception;
+    }
+
+    private final MeterRegistry registry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private ConversionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static ConversionMetrics of(MeterRegistry registry) {
+        return new ConversionMetrics(Objects.requireNonNull(registry, "registry"));
+    }
+
+    public boolean enabled() {
+        return registry != null;
+    }
+
+    // Runs one conversion, recording it as a success unless it throws
+    public <T> T record(String direction, String mode, Instrumented<T> conversion) throws Exception {
+        Recording recording = start(direction, mode);
+        try {
+            T result = conversion.convert(recording);
+            recording.success();
+            return result;
+        } catch (Exception | Error e) {
+            recording.failure(e);
+            throw e;
+        }
+    }
+
+    // For conversions that finish elsewhere (asynchronous ones): call success or failure once
+    public Recording start(String direction, String mode) {
+        if (registry == null) return Recording.NONE;
+        return new Recording(meters.computeIfAbsent(direction + "|" + mode, k -> new Meters(direction, mode)));
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // not a HotSpot-style JVM, allocation is not recorded
+        }
+        return null;
+    }
+
+    // The meters of one direction and mode, looked up once
+    private final class Meters {
+        final String direction;
+        final String mode;
+        final Timer total;
+        final Timer parse;
+        final Timer transform;
+        final Timer serialize;
+        final DistributionSummary input;
+        final DistributionSummary output;
+        final DistributionSummary nodes;
+        final DistributionSummary depth;
+        final DistributionSummary allocated;
+
+        Meters(String direction, String mode) {
+            this.direction = direction;
+            this.mode = mode;
+            this.total = Timer.builder("xmljson.conversion")
+                    .description("Conversion time")
+                    .tags("direction", direction, "mode", mode)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.parse = phaseTimer(PARSE);
+            this.transform = phaseTimer(TRANSFORM);
+            this.serialize = phaseTimer(SERIALIZE);
+            this.input = summary("xmljson.conversion.input", "Input size", BaseUnits.BYTES, SIZE_BUCKETS);
+            this.output = summary("xmljson.conversion.output", "Output size", BaseUnits.BYTES, SIZE_BUCKETS);
+            this.nodes = summary("xmljson.conversion.nodes", "Nodes of the parsed tree", null, NODE_BUCKETS);
+            this.depth = summary("xmljson.conversion.depth", "Nesting depth of the parsed tree", null,
+                    DEPTH_BUCKETS);
+            this.allocated = summary("xmljson.conversion.allocated", "Bytes allocated by the converting thread",
+                    BaseUnits.BYTES, SIZE_BUCKETS);
+        }
+
+        private Timer phaseTimer(String phase) {
+            return Timer.builder("xmljson.conversion.phase")
+                    .description("Conversion time per phase")
+                    .tags("direction", direction, "mode", mode, "phase", phase)
+                    .register(registry);
+        }
+
+        private DistributionSummary summary(String name, String description, String unit, double[] buckets) {
+            return DistributionSummary.builder(name)
+                    .description(description)
+                    .baseUnit(unit)
+                    .tags("direction", direction, "mode", mode)
+                    .serviceLevelObjectives(buckets)
+                    .register(registry);
+        }
+
+        Timer phase(String phase) {
+            return switch (phase) {
+                case PARSE -> parse;
+                case TRANSFORM -> transform;
+                case SERIALIZE -> serialize;
+                default -> throw new IllegalArgumentException("Unknown phase: " + phase);
+            };
+        }
+
+        Counter errors(Throwable error) {
+            return Counter.builder("xmljson.conversion.errors")
+                    .description("Failed conversions")
+                    .tags("direction", direction, "mode", mode, "exception", error.getClass().getSimpleName())
+                    .register(registry);
+        }
+    }
+
+    /*
+     * One conversion in progress. phase(name) closes the phase that started at the
+     * previous mark; sizes are given directly or counted through the wrapped streams.
+     * Not thread-safe: a conversion is recorded by one thread at a time.
+     */
+    public static final class Recording {
+
+        static final Recording NONE = new Recording(null);
+
+        private final Meters meters;
+        private final long start;
+        private final Thread thread;
+        private final long allocatedAtStart;
+        private long mark;
+
+        private long input = -1;
+        private long output = -1;
+        private long nodes = -1;
+        private int depth = -1;
+        private ProgressInputStream countedInput;
+        private CountingOutputStream countedOutput;
+
+        private Recording(Meters meters) {
+            this.meters = meters;
+            if (meters == null) {
+                this.start = 0;
+                this.thread = null;
+                this.allocatedAtStart = -1;
+                return;
+            }
+            this.thread = Thread.currentThread();
+            this.allocatedAtStart = (THREADS != null) ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+            this.start = System.nanoTime();
+            this.mark = start;
+        }
+
+        public boolean enabled() {
+            return meters != null;
+        }
+
+        // Ends the current phase
+        public void phase(String phase) {
+            if (meters == null) return;
+            long now = System.nanoTime();
+            meters.phase(phase).record(now - mark, TimeUnit.NANOSECONDS);
+            mark = now;
+        }
+
+        public void input(long bytes) {
+            input = bytes;
+        }
+
+        public void input(CharSequence text) {
+            if (meters != null) input = utf8Length(text);
+        }
+
+        public void output(long bytes) {
+            output = bytes;
+        }
+
+        public void output(CharSequence text) {
+            if (meters != null) output = utf8Length(text);
+        }
+
+        // The bytes read through the returned stream are recorded as the input size
+        public InputStream count(InputStream in) {
+            if (meters == null) return in;
+            countedInput = new ProgressInputStream(in, read -> { }, () -> false);
+            return countedInput;
+        }
+
+        // The bytes written through the returned stream are recorded as the output size
+        public OutputStream count(OutputStream out) {
+            if (meters == null) return out;
+            countedOutput = new CountingOutputStream(out);
+            return countedOutput;
+        }
+
+        void tree(CompactTree tree) {
+            if (meters == null) return;
+            nodes = tree.size();
+            depth = tree.depth(tree.root());
+        }
+
+        public void tree(JsonNode node) {
+            if (meters == null) return;
+            int count = 0;
+            int maxDepth = 0;
+            ArrayDeque<JsonNode> pending = new ArrayDeque<>();
+            ArrayDeque<Integer> levels = new ArrayDeque<>();
+            pending.push(node);
+            levels.push(1);
+            while (!pending.isEmpty()) {
+                JsonNode n = pending.pop();
+                int level = levels.pop();
+                count++;
+                maxDepth = Math.max(maxDepth, level);
+                for (JsonNode child : n) {
+                    pending.push(child);
+                    levels.push(level + 1);
+                }
+            }
+            nodes = count;
+            depth = maxDepth;
+        }
+
+        public void success() {
+            if (meters == null) return;
+            meters.total.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (countedInput != null) input = countedInput.count();
+            if (countedOutput != null) output = countedOutput.count;
+            if (input >= 0) meters.input.record(input);
+            if (output >= 0) meters.output.record(output);
+            if (nodes >= 0) meters.nodes.record(nodes);
+            if (depth >= 0) meters.depth.record(depth);
+
+            // the thread's counter only means something if the conversion stayed on it
+            if (allocatedAtStart >= 0 && Thread.currentThread() == thread) {
+                meters.allocated.record(THREADS.getCurrentThreadAllocatedBytes() - allocatedAtStart);
+            }
+        }
+
+        public void failure(Throwable error) {
+            if (meters == null) return;
+            Throwable cause = error;
+            while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                    && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            meters.errors(cause).increment();
+        }
+    }
+
+    static long utf8Length(CharSequence s) {
+        long bytes = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                bytes++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 2; // 4 bytes for the two chars
+                i++;
+            }
+            // an unpaired surrogate is encoded as '?'
+        }
+        return bytes;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
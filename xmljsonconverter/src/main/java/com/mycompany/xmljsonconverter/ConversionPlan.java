@@ -0,0 +1,327 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * JSON -> XML conversion plan for feeds whose documents share a shape, compiled once
+ * from sample documents (ManualConverterService.compilePlan) and reused for every
+ * document of the feed.
+ *
+ * For each position of the sample (the root, a field of an object, the items of an
+ * array) the plan keeps the object shapes seen there: the field names in order, which
+ * field is "@attributes" with its attribute names, and which is "#text". A node is
+ * checked against its shapes by symbol identity in one pass; when it matches, the
+ * special keys are already known, attributes are written with ready-made ` name="`
+ * prefixes and each element's indentation and tags come as one string per position.
+ *
+ * A node that matches none of its shapes (a missing or extra field, another order, a
+ * position the samples never had) is written by the generic buildXml, together with
+ * everything below it, so the output is always the same as without a plan.
+ */
+public final class ConversionPlan {
+
+    // object shapes kept per position; more variants than this go the generic way
+    private static final int MAX_SHAPES = 4;
+
+    private static final ObjectShape[] NO_SHAPES = new ObjectShape[0];
+
+    private final Position root;
+
+    private ConversionPlan(Position root) {
+        this.root = root;
+    }
+
+    // Merges the shapes of the samples, all taken as whole documents
+    static ConversionPlan compile(CompactTree... samples) {
+        Position root = new Position();
+        for (CompactTree sample : samples) {
+            root.merge(sample, sample.root());
+        }
+        return new ConversionPlan(root);
+    }
+
+    // Position of the document value itself
+    Position document() {
+        return root;
+    }
+
+    // Position of the single top-level field that auto-root writes as the root, or null
+    Position autoRoot(CompactTree tree, int document) {
+        int field = tree.firstChild(document);
+        for (ObjectShape shape : root.shapes) {
+            if (shape.fields.length == 1 && same(shape.fields[0], tree.nameSymbol(field))) {
+                return shape.children[0];
+            }
+        }
+        return null;
+    }
+
+    // Same output as ManualConverterService.buildXml(out, tree, name, value, indent, layout, pool)
+    static void write(Appendable out, CompactTree tree, Position position, SymbolTable.Symbol name, int value,
+                      int indent, Layout layout, ForkJoinPool pool) throws IOException {
+        byte kind = tree.kind(value);
+
+        if (kind == CompactTree.ARRAY) {
+            Position items = position.items;
+            if (items == null) {
+                ManualConverterService.buildXml(out, tree, name, value, indent, layout, pool);
+            } else if (pool != null && tree.childCount(value) >= ManualConverterService.PARALLEL_MIN_ITEMS) {
+                ManualConverterService.writeChunked(pool, tree, value, out,
+                        (chunk, item, first) -> write(chunk, tree, items, name, item, indent, layout, null));
+            } else {
+                for (int item = tree.firstChild(value); item != CompactTree.NONE; item = tree.nextSibling(item)) {
+                    write(out, tree, items, name, item, indent, layout, pool);
+                }
+            }
+            return;
+        }
+
+        Markup markup = position.markup(name, indent, layout);
+
+        if (kind == CompactTree.NULL) {
+            out.append(markup.empty);
+            return;
+        }
+
+        if (kind != CompactTree.OBJECT) {
+            out.append(markup.open);
+            Escaping.appendXml(out, ManualConverterService.valueText(tree, value));
+            out.append(markup.close);
+            return;
+        }
+
+        // find the shape, remembering where the special keys are
+        int count = tree.childCount(value);
+        ObjectShape shape = null;
+        int attrObj = CompactTree.NONE;
+        int textObj = CompactTree.NONE;
+
+        shapes:
+        for (ObjectShape candidate : position.shapes) {
+            if (candidate.fields.length != count) continue;
+            attrObj = CompactTree.NONE;
+            textObj = CompactTree.NONE;
+
+            int i = 0;
+            for (int c = tree.firstChild(value); c != CompactTree.NONE; c = tree.nextSibling(c), i++) {
+                if (!same(candidate.fields[i], tree.nameSymbol(c))) continue shapes;
+                if (i == candidate.attributes) attrObj = c;
+                else if (i == candidate.text) textObj = c;
+            }
+            if (attrObj != CompactTree.NONE && !candidate.attributesMatch(tree, attrObj)) continue;
+
+            shape = candidate;
+            break;
+        }
+
+        if (shape == null) {
+            ManualConverterService.buildXml(out, tree, name, value, indent, layout, pool);
+            return;
+        }
+
+        out.append(markup.start);
+
+        if (attrObj != CompactTree.NONE) {
+            int k = 0;
+            for (int a = tree.firstChild(attrObj); a != CompactTree.NONE; a = tree.nextSibling(a), k++) {
+                out.append(shape.attributePrefixes[k]);
+                Escaping.appendXml(out, ManualConverterService.valueText(tree, a));
+                out.append('"');
+            }
+        }
+
+        CharSequence text = (textObj == CompactTree.NONE || tree.kind(textObj) == CompactTree.NULL)
+                ? null
+                : ManualConverterService.valueText(tree, textObj);
+
+        if (text != null && ManualConverterService.isBlank(text)) {
+            text = null;
+        }
+
+        if (count == shape.special) {
+            if (text == null) {
+                out.append(markup.selfClose);
+                return;
+            }
+            out.append('>');
+            Escaping.appendXml(out, text);
+            out.append(markup.close);
+            return;
+        }
+
+        out.append('>');
+        if (text != null) Escaping.appendXml(out, text);
+        layout.newline(out);
+
+        int i = 0;
+        for (int c = tree.firstChild(value); c != CompactTree.NONE; c = tree.nextSibling(c), i++) {
+            if (i == shape.attributes || i == shape.text) continue;
+            write(out, tree, shape.children[i], shape.fields[i], c, indent + 1, layout, pool);
+        }
+
+        out.append(markup.end);
+    }
+
+    private static boolean same(SymbolTable.Symbol a, SymbolTable.Symbol b) {
+        return a == b || (a.hash == b.hash && a.name.equals(b.name));
+    }
+
+    // One place values can be at; the root and array items get their names from the caller
+    static final class Position {
+        private ObjectShape[] shapes = NO_SHAPES;
+        private Position items;
+        // the tags of the last name, indent and layout written here, usually the only ones.
+        // Plans are shared between threads; Markup is immutable, so a reader sees a whole one
+        private volatile Markup markup;
+
+        private void merge(CompactTree tree, int node) {
+            byte kind = tree.kind(node);
+
+            if (kind == CompactTree.ARRAY) {
+                if (items == null) items = new Position();
+                for (int item = tree.firstChild(node); item != CompactTree.NONE; item = tree.nextSibling(item)) {
+                    items.merge(tree, item);
+                }
+                return;
+            }
+            if (kind != CompactTree.OBJECT) return;
+
+            ObjectShape shape = find(tree, node);
+            if (shape == null) {
+                if (shapes.length == MAX_SHAPES) return;
+                shape = ObjectShape.of(tree, node);
+                if (shape == null) return;
+                shapes = Arrays.copyOf(shapes, shapes.length + 1);
+                shapes[shapes.length - 1] = shape;
+            }
+
+            int i = 0;
+            for (int c = tree.firstChild(node); c != CompactTree.NONE; c = tree.nextSibling(c), i++) {
+                if (shape.children[i] != null) shape.children[i].merge(tree, c);
+            }
+        }
+
+        private ObjectShape find(CompactTree tree, int node) {
+            shapes:
+            for (ObjectShape shape : shapes) {
+                if (shape.fields.length != tree.childCount(node)) continue;
+                int i = 0;
+                int attrObj = CompactTree.NONE;
+                for (int c = tree.firstChild(node); c != CompactTree.NONE; c = tree.nextSibling(c), i++) {
+                    if (!same(shape.fields[i], tree.nameSymbol(c))) continue shapes;
+                    if (i == shape.attributes) attrObj = c;
+                }
+                if (attrObj != CompactTree.NONE && !shape.attributesMatch(tree, attrObj)) continue;
+                return shape;
+            }
+            return null;
+        }
+
+        private Markup markup(SymbolTable.Symbol name, int indent, Layout layout) {
+            Markup m = markup;
+            if (m == null || m.name != name || m.indent != indent || m.layout != layout) {
+                m = new Markup(name, indent, layout);
+                markup = m;
+            }
+            return m;
+        }
+    }
+
+    private static final class ObjectShape {
+        final SymbolTable.Symbol[] fields;
+        // index of the "@attributes" / "#text" field, -1 when there is none
+        final int attributes;
+        final int text;
+        final int special;
+        final SymbolTable.Symbol[] attributeNames;
+        // ` name="` per attribute
+        final String[] attributePrefixes;
+        // null at the special fields
+        final Position[] children;
+
+        private ObjectShape(SymbolTable.Symbol[] fields, int attributes, int text,
+                            SymbolTable.Symbol[] attributeNames) {
+            this.fields = fields;
+            this.attributes = attributes;
+            this.text = text;
+            this.special = (attributes >= 0 ? 1 : 0) + (text >= 0 ? 1 : 0);
+            this.attributeNames = attributeNames;
+            this.attributePrefixes = new String[attributeNames.length];
+            for (int k = 0; k < attributeNames.length; k++) {
+                attributePrefixes[k] = " " + attributeNames[k].name + "=\"";
+            }
+            this.children = new Position[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                if (i != attributes && i != text) children[i] = new Position();
+            }
+        }
+
+        // null when "@attributes" is not an object: those nodes stay on the generic path
+        static ObjectShape of(CompactTree tree, int node) {
+            SymbolTable.Symbol[] fields = new SymbolTable.Symbol[tree.childCount(node)];
+            int attributes = -1;
+            int text = -1;
+            SymbolTable.Symbol[] attributeNames = new SymbolTable.Symbol[0];
+
+            int i = 0;
+            for (int c = tree.firstChild(node); c != CompactTree.NONE; c = tree.nextSibling(c), i++) {
+                fields[i] = tree.nameSymbol(c);
+                String key = fields[i].name;
+                if (key.equals("@attributes")) {
+                    if (tree.kind(c) != CompactTree.OBJECT) return null;
+                    attributes = i;
+                    attributeNames = new SymbolTable.Symbol[tree.childCount(c)];
+                    int k = 0;
+                    for (int a = tree.firstChild(c); a != CompactTree.NONE; a = tree.nextSibling(a)) {
+                        attributeNames[k++] = tree.nameSymbol(a);
+                    }
+                } else if (key.equals("#text")) {
+                    text = i;
+                }
+            }
+            return new ObjectShape(fields, attributes, text, attributeNames);
+        }
+
+        boolean attributesMatch(CompactTree tree, int attrObj) {
+            if (tree.kind(attrObj) != CompactTree.OBJECT || tree.childCount(attrObj) != attributeNames.length) {
+                return false;
+            }
+            int k = 0;
+            for (int a = tree.firstChild(attrObj); a != CompactTree.NONE; a = tree.nextSibling(a), k++) {
+                if (!same(attributeNames[k], tree.nameSymbol(a))) return false;
+            }
+            return true;
+        }
+    }
+
+    // The markup of one element name at one indentation, with the layout's whitespace folded in
+    private static final class Markup {
+        final SymbolTable.Symbol name;
+        final int indent;
+        final Layout layout;
+        // "  <name", "  <name>", "</name>\n", "  </name>\n", "  <name/>\n", "/>\n"
+        final String start;
+        final String open;
+        final String close;
+        final String end;
+        final String empty;
+        final String selfClose;
+
+        Markup(SymbolTable.Symbol name, int indent, Layout layout) {
+            this.name = name;
+            this.indent = indent;
+            this.layout = layout;
+
+            String pad = layout.pretty ? "  ".repeat(indent) : "";
+            String newline = layout.pretty ? "\n" : "";
+            this.start = pad + name.startTag;
+            this.open = pad + name.openTag;
+            this.close = name.closeTag + newline;
+            this.end = pad + name.closeTag + newline;
+            this.empty = pad + name.emptyTag + newline;
+            this.selfClose = "/>" + newline;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// Common shape of the three conversion modes (Manual, Jackson, API)
+public interface ConverterService {
+
+    String xmlToJson(String xml, OutputFormat format) throws Exception;
+
+    String jsonToXml(String json, String rootName, OutputFormat format) throws Exception;
+
+    String jsonToXmlAutoRoot(String json, OutputFormat format) throws Exception;
+
+    // Same conversions reading UTF-8 text from a stream, so callers can track or cancel the read
+    String xmlToJson(InputStream xml, OutputFormat format) throws Exception;
+
+    String jsonToXml(InputStream json, String rootName, OutputFormat format) throws Exception;
+
+    String jsonToXmlAutoRoot(InputStream json, OutputFormat format) throws Exception;
+
+    // Byte-level variants: UTF-8 in, UTF-8 out. These defaults go through the String
+    // methods; the local services override them to skip decoding and encoding the documents
+    default void xmlToJson(InputStream xml, OutputStream out, OutputFormat format) throws Exception {
+        out.write(xmlToJson(xml, format).getBytes(StandardCharsets.UTF_8));
+    }
+
+    default void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format)
+            throws Exception {
+        out.write(jsonToXml(json, rootName, format).getBytes(StandardCharsets.UTF_8));
+    }
+
+    default void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format) throws Exception {
+        out.write(jsonToXmlAutoRoot(json, format).getBytes(StandardCharsets.UTF_8));
+    }
+
+    default byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length + 256);
+        xmlToJson(new ByteArrayInputStream(xml), out, format);
+        return out.toByteArray();
+    }
+
+    default byte[] jsonToXml(byte[] json, String rootName, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length + 256);
+        jsonToXml(new ByteArrayInputStream(json), out, rootName, format);
+        return out.toByteArray();
+    }
+
+    default byte[] jsonToXmlAutoRoot(byte[] json, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length + 256);
+        jsonToXmlAutoRoot(new ByteArrayInputStream(json), out, format);
+        return out.toByteArray();
+    }
+
+    // The remaining bytes of the buffer are converted, its position is left alone
+    default byte[] xmlToJson(ByteBuffer xml, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.remaining() + 256);
+        xmlToJson(ByteBufferInputStream.of(xml), out, format);
+        return out.toByteArray();
+    }
+
+    default byte[] jsonToXml(ByteBuffer json, String rootName, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.remaining() + 256);
+        jsonToXml(ByteBufferInputStream.of(json), out, rootName, format);
+        return out.toByteArray();
+    }
+
+    default byte[] jsonToXmlAutoRoot(ByteBuffer json, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.remaining() + 256);
+        jsonToXmlAutoRoot(ByteBufferInputStream.of(json), out, format);
+        return out.toByteArray();
+    }
+
+    // File to file: the input is read through a memory mapping (MappedTextFile) and the
+    // result written through a FileChannel, so neither file is copied onto the heap whole.
+    // The parsed tree still is; ManualConverterService.streamXmlToJson and friends avoid it
+    default void xmlToJson(Path xml, Path out, OutputFormat format) throws Exception {
+        try (OutputStream target = FileChannelOutputStream.open(out)) {
+            xmlToJson(MappedTextFile.open(xml).openStream(), target, format);
+        }
+    }
+
+    default void jsonToXml(Path json, Path out, String rootName, OutputFormat format) throws Exception {
+        try (OutputStream target = FileChannelOutputStream.open(out)) {
+            jsonToXml(MappedTextFile.open(json).openStream(), target, rootName, format);
+        }
+    }
+
+    default void jsonToXmlAutoRoot(Path json, Path out, OutputFormat format) throws Exception {
+        try (OutputStream target = FileChannelOutputStream.open(out)) {
+            jsonToXmlAutoRoot(MappedTextFile.open(json).openStream(), target, format);
+        }
+    }
+
+    default String xmlToJson(String xml) throws Exception {
+        return xmlToJson(xml, OutputFormat.PRETTY);
+    }
+
+    default String jsonToXml(String json, String rootName) throws Exception {
+        return jsonToXml(json, rootName, OutputFormat.PRETTY);
+    }
+
+    default String jsonToXmlAutoRoot(String json) throws Exception {
+        return jsonToXmlAutoRoot(json, OutputFormat.PRETTY);
+    }
+}
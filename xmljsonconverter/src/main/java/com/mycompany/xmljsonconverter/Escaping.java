@@ -0,0 +1,75 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/*
+ * Single-pass XML and JSON escaping. Runs of characters that need no escaping are
+ * appended in bulk, and nothing is allocated when the text has nothing to escape.
+ */
+final class Escaping {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Escaping() {
+    }
+
+    static void appendXml(Appendable out, CharSequence s) throws IOException {
+        int start = 0;
+        int len = s.length();
+
+        for (int i = 0; i < len; i++) {
+            String entity = switch (s.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&apos;";
+                default -> null;
+            };
+            if (entity == null) continue;
+
+            if (i > start) out.append(s, start, i);
+            out.append(entity);
+            start = i + 1;
+        }
+
+        if (start == 0) out.append(s);
+        else if (start < len) out.append(s, start, len);
+    }
+
+    // Escapes the content of a JSON string (without the quotes), including control characters
+    static void appendJson(Appendable out, CharSequence s) throws IOException {
+        int start = 0;
+        int len = s.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+
+            if (i > start) out.append(s, start, i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+
+        if (start == 0) out.append(s);
+        else if (start < len) out.append(s, start, len);
+    }
+
+    static void appendJson(StringBuilder out, CharSequence s) {
+        try {
+            appendJson((Appendable) out, s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
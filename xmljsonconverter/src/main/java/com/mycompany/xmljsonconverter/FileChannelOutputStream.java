@@ -0,0 +1,76 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes a file through a FileChannel and a direct buffer. Bytes are copied once,
+ * into the buffer, which the channel writes without the temporary direct buffer it
+ * uses for heap arrays. Writes larger than the buffer go straight to the channel.
+ */
+final class FileChannelOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean closed;
+
+    private FileChannelOutputStream(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Creates the file, or truncates it
+    static FileChannelOutputStream open(Path file) throws IOException {
+        return new FileChannelOutputStream(FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buf.hasRemaining()) drain();
+        buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buf.remaining()) {
+            drain();
+            if (len >= BUFFER_SIZE) {
+                writeFully(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+        }
+        buf.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try (channel) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        writeFully(buf);
+        buf.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
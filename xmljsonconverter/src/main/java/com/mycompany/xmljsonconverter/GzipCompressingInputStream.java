@@ -0,0 +1,109 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * Reads the gzip-compressed form of another stream. GZIPOutputStream only pushes,
+ * while a request body publisher pulls, so the deflating is done on read here and
+ * a large body is compressed as it is sent instead of up front.
+ */
+final class GzipCompressingInputStream extends InputStream {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int HEADER_STAGE = 0;
+    private static final int BODY_STAGE = 1;
+    private static final int TRAILER_STAGE = 2;
+    private static final int DONE_STAGE = 3;
+
+    private final InputStream in;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[8192];
+    private final byte[] output = new byte[8192];
+
+    private int stage = HEADER_STAGE;
+    private boolean inputDone;
+    private long inputSize;
+    private int outPos;
+    private int outLen;
+
+    GzipCompressingInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        while (outPos == outLen) {
+            if (!fill()) return -1;
+        }
+
+        int n = Math.min(len, outLen - outPos);
+        System.arraycopy(output, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        in.close();
+    }
+
+    // Produces the next piece of output; false once everything has been read
+    private boolean fill() throws IOException {
+        outPos = 0;
+        outLen = 0;
+
+        switch (stage) {
+            case HEADER_STAGE -> {
+                System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+                outLen = HEADER.length;
+                stage = BODY_STAGE;
+            }
+            case BODY_STAGE -> {
+                if (deflater.needsInput() && !inputDone) {
+                    int n = in.read(input);
+                    if (n < 0) {
+                        inputDone = true;
+                        deflater.finish();
+                    } else {
+                        crc.update(input, 0, n);
+                        inputSize += n;
+                        deflater.setInput(input, 0, n);
+                    }
+                }
+                outLen = deflater.deflate(output);
+                if (deflater.finished()) stage = TRAILER_STAGE;
+            }
+            case TRAILER_STAGE -> {
+                writeIntLE((int) crc.getValue(), 0);
+                writeIntLE((int) inputSize, 4);
+                outLen = 8;
+                stage = DONE_STAGE;
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeIntLE(int v, int at) {
+        output[at] = (byte) v;
+        output[at + 1] = (byte) (v >> 8);
+        output[at + 2] = (byte) (v >> 16);
+        output[at + 3] = (byte) (v >> 24);
+    }
+}
@@ -0,0 +1,462 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/*
+ * Token-level JSON reader. Unlike SimpleJsonParser it never holds the whole
+ * input: characters are pulled from the Reader through a fixed-size buffer
+ * and only the current token is kept.
+ *
+ * From an InputStream the UTF-8 bytes are decoded here, into the same buffer,
+ * instead of going through an InputStreamReader. Malformed bytes read as U+FFFD.
+ */
+public class JsonPullParser implements Closeable {
+
+    public enum Token {
+        START_OBJECT, END_OBJECT,
+        START_ARRAY, END_ARRAY,
+        FIELD_NAME,
+        VALUE_STRING, VALUE_NUMBER,
+        VALUE_TRUE, VALUE_FALSE, VALUE_NULL
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int ROOT_START = 0;
+    private static final int ROOT_DONE = 1;
+    private static final int OBJ_START = 2;
+    private static final int OBJ_AFTER_KEY = 3;
+    private static final int OBJ_AFTER_VALUE = 4;
+    private static final int ARR_START = 5;
+    private static final int ARR_AFTER_VALUE = 6;
+
+    private final Reader in;
+    private final InputStream bytes;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private byte[] raw;
+    private int rawPos = 0;
+    private int rawLimit = 0;
+    private boolean rawEof;
+    private int pos = 0;
+    private int limit = 0;
+    private long offset = 0;
+
+    private int[] states = new int[32];
+    private int depth = 0;
+
+    private final StringBuilder text = new StringBuilder();
+    private Token current;
+    private boolean isFloat;
+
+    public JsonPullParser(Reader in) {
+        this.in = in;
+        this.bytes = null;
+        states[0] = ROOT_START;
+    }
+
+    public JsonPullParser(InputStream in) {
+        this.in = null;
+        this.bytes = in;
+        this.raw = new byte[BUFFER_SIZE];
+        states[0] = ROOT_START;
+    }
+
+    // Returns the next token, or null once the top-level value is complete
+    public Token nextToken() throws IOException {
+        skipWs();
+        int c = peek();
+
+        switch (states[depth]) {
+            case ROOT_DONE -> {
+                if (c != -1) throw new IllegalArgumentException("Extra characters at position " + position());
+                return current = null;
+            }
+            case ROOT_START -> {
+                if (c == -1) throw new IllegalArgumentException("Unexpected end of JSON");
+                states[depth] = ROOT_DONE;
+                return readValue(c);
+            }
+            case OBJ_START -> {
+                if (c == '}') { pos++; return close(Token.END_OBJECT); }
+                return readKey(c);
+            }
+            case OBJ_AFTER_KEY -> {
+                expectChar(':');
+                skipWs();
+                states[depth] = OBJ_AFTER_VALUE;
+                return readValue(peek());
+            }
+            case OBJ_AFTER_VALUE -> {
+                if (c == '}') { pos++; return close(Token.END_OBJECT); }
+                expectChar(',');
+                skipWs();
+                return readKey(peek());
+            }
+            case ARR_START -> {
+                if (c == ']') { pos++; return close(Token.END_ARRAY); }
+                states[depth] = ARR_AFTER_VALUE;
+                return readValue(c);
+            }
+            case ARR_AFTER_VALUE -> {
+                if (c == ']') { pos++; return close(Token.END_ARRAY); }
+                expectChar(',');
+                skipWs();
+                return readValue(peek());
+            }
+            default -> throw new IllegalStateException("Bad parser state");
+        }
+    }
+
+    public Token currentToken() {
+        return current;
+    }
+
+    // Field name for FIELD_NAME, decoded value for VALUE_STRING, raw text for other scalars
+    public String getText() {
+        return switch (current) {
+            case START_OBJECT -> "{";
+            case END_OBJECT -> "}";
+            case START_ARRAY -> "[";
+            case END_ARRAY -> "]";
+            case VALUE_TRUE -> "true";
+            case VALUE_FALSE -> "false";
+            case VALUE_NULL -> "null";
+            default -> text.toString();
+        };
+    }
+
+    // Same number types as SimpleJsonParser: Integer, Long or Double
+    public Number getNumber() {
+        if (current != Token.VALUE_NUMBER) {
+            throw new IllegalStateException("Current token is not a number: " + current);
+        }
+        String num = text.toString();
+        try {
+            if (isFloat) return Double.parseDouble(num);
+            long L = Long.parseLong(num);
+            if (L >= Integer.MIN_VALUE && L <= Integer.MAX_VALUE) return (int) L;
+            return L;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number: " + num);
+        }
+    }
+
+    // Skips to the matching end token when positioned on START_OBJECT / START_ARRAY
+    public void skipChildren() throws IOException {
+        if (current != Token.START_OBJECT && current != Token.START_ARRAY) return;
+
+        int open = 1;
+        while (open > 0) {
+            Token t = nextToken();
+            if (t == Token.START_OBJECT || t == Token.START_ARRAY) open++;
+            else if (t == Token.END_OBJECT || t == Token.END_ARRAY) open--;
+        }
+    }
+
+    // Reads the value the parser is positioned on into a CompactTree: strings are copied into
+    // the tree, names interned
+    public CompactTree readCompactTree(SymbolTable symbols) throws IOException {
+        CompactTree tree = new CompactTree(symbols);
+        tree.setRoot(readInto(tree, CompactTree.NONE));
+        tree.finish();
+        return tree;
+    }
+
+    private int readInto(CompactTree tree, int name) throws IOException {
+        return switch (current) {
+            case START_OBJECT -> {
+                int object = tree.newNode(CompactTree.OBJECT, name);
+                while (nextToken() != Token.END_OBJECT) {
+                    int key = tree.symbol(text, 0, text.length());
+                    nextToken();
+                    tree.put(object, readInto(tree, key));
+                }
+                yield object;
+            }
+            case START_ARRAY -> {
+                int array = tree.newNode(CompactTree.ARRAY, name);
+                while (nextToken() != Token.END_ARRAY) {
+                    tree.append(array, readInto(tree, CompactTree.NONE));
+                }
+                yield array;
+            }
+            case VALUE_STRING -> tree.newString(name, text);
+            case VALUE_NUMBER -> readNumberInto(tree, name);
+            case VALUE_TRUE -> tree.newNode(CompactTree.TRUE, name);
+            case VALUE_FALSE -> tree.newNode(CompactTree.FALSE, name);
+            case VALUE_NULL -> tree.newNode(CompactTree.NULL, name);
+            default -> throw new IllegalStateException("Not positioned on a value: " + current);
+        };
+    }
+
+    private int readNumberInto(CompactTree tree, int name) {
+        try {
+            if (isFloat) return tree.newDouble(name, Double.parseDouble(text.toString()));
+            return tree.newLong(name, Long.parseLong(text, 0, text.length(), 10));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number: " + text);
+        }
+    }
+
+    // Name of the current FIELD_NAME, without allocating a String for names already known
+    SymbolTable.Symbol nameSymbol(SymbolTable symbols) {
+        return symbols.intern(text, 0, text.length());
+    }
+
+    public long position() {
+        return offset + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+        else bytes.close();
+    }
+
+    private Token readValue(int c) throws IOException {
+        if (c == -1) throw new IllegalArgumentException("Unexpected end of JSON");
+
+        if (c == '{') { pos++; push(OBJ_START); return current = Token.START_OBJECT; }
+        if (c == '[') { pos++; push(ARR_START); return current = Token.START_ARRAY; }
+        if (c == '"') { readString(); return current = Token.VALUE_STRING; }
+        if (c == 't') { expect("true"); return current = Token.VALUE_TRUE; }
+        if (c == 'f') { expect("false"); return current = Token.VALUE_FALSE; }
+        if (c == 'n') { expect("null"); return current = Token.VALUE_NULL; }
+
+        if (c == '-' || Character.isDigit(c)) { readNumber(); return current = Token.VALUE_NUMBER; }
+
+        throw new IllegalArgumentException("Unexpected char '" + (char) c + "' at position " + position());
+    }
+
+    private Token readKey(int c) throws IOException {
+        if (c != '"') throw new IllegalArgumentException("Expected string key at position " + position());
+        readString();
+        states[depth] = OBJ_AFTER_KEY;
+        return current = Token.FIELD_NAME;
+    }
+
+    private Token close(Token token) {
+        depth--;
+        return current = token;
+    }
+
+    private void push(int state) {
+        if (++depth == states.length) {
+            int[] grown = new int[states.length * 2];
+            System.arraycopy(states, 0, grown, 0, states.length);
+            states = grown;
+        }
+        states[depth] = state;
+    }
+
+    private void readString() throws IOException {
+        pos++;
+        text.setLength(0);
+
+        while (true) {
+            if (pos >= limit && !fill()) throw new IllegalArgumentException("Unterminated string");
+
+            // copy the run of plain characters in one go
+            int start = pos;
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c == '"' || c == '\\') break;
+                pos++;
+            }
+            text.append(buf, start, pos - start);
+            if (pos >= limit) continue;
+
+            char c = buf[pos++];
+            if (c == '"') return;
+
+            int e = read();
+            if (e == -1) throw new IllegalArgumentException("Bad escape at end");
+            switch (e) {
+                case '"', '\\', '/' -> text.append((char) e);
+                case 'n' -> text.append('\n');
+                case 'r' -> text.append('\r');
+                case 't' -> text.append('\t');
+                case 'b' -> text.append('\b');
+                case 'f' -> text.append('\f');
+                case 'u' -> {
+                    int code = 0;
+                    for (int k = 0; k < 4; k++) {
+                        int h = Character.digit(read(), 16);
+                        if (h < 0) throw new IllegalArgumentException("Bad unicode escape");
+                        code = (code << 4) | h;
+                    }
+                    text.append((char) code);
+                }
+                default -> throw new IllegalArgumentException("Bad escape: \\" + (char) e);
+            }
+        }
+    }
+
+    private void readNumber() throws IOException {
+        long start = position();
+        text.setLength(0);
+        isFloat = false;
+
+        if (peek() == '-') text.append((char) read());
+        int digitsStart = text.length();
+
+        readDigits();
+        if (text.length() == digitsStart) {
+            throw new IllegalArgumentException("Invalid number at position " + start);
+        }
+
+        if (peek() == '.') {
+            isFloat = true;
+            text.append((char) read());
+            readDigits();
+        }
+
+        // optional exponent
+        if (peek() == 'e' || peek() == 'E') {
+            isFloat = true;
+            text.append((char) read());
+            if (peek() == '+' || peek() == '-') text.append((char) read());
+            readDigits();
+        }
+    }
+
+    private void readDigits() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && Character.isDigit(c)) {
+            text.append((char) c);
+            pos++;
+        }
+    }
+
+    private void skipWs() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) return;
+            if (!Character.isWhitespace(buf[pos])) return;
+            pos++;
+        }
+    }
+
+    private void expect(String token) throws IOException {
+        long start = position();
+        for (int k = 0; k < token.length(); k++) {
+            if (read() != token.charAt(k)) {
+                throw new IllegalArgumentException("Expected '" + token + "' at position " + start);
+            }
+        }
+    }
+
+    private void expectChar(char c) throws IOException {
+        if (peek() != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at position " + position());
+        }
+        pos++;
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        do {
+            n = (in != null) ? in.read(buf, 0, buf.length) : decode();
+        } while (n == 0);
+        if (n < 0) return false;
+        limit = n;
+        return true;
+    }
+
+    // Decodes the pending UTF-8 bytes into buf, reading more when they run out; -1 at the end
+    private int decode() throws IOException {
+        if (rawLimit - rawPos < 4 && !rawEof) readRaw();
+        if (rawPos == rawLimit) return -1;
+
+        int n = 0;
+        // leave room for a surrogate pair
+        while (rawPos < rawLimit && n < buf.length - 1) {
+            int b = raw[rawPos];
+            if (b >= 0) {
+                buf[n++] = (char) b;
+                rawPos++;
+                continue;
+            }
+
+            int length = (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 0;
+            if (length > rawLimit - rawPos && !rawEof) break; // the rest comes with the next read
+
+            int cp = decodeSequence(length);
+            if (cp < 0x10000) {
+                buf[n++] = (char) cp;
+            } else {
+                buf[n++] = Character.highSurrogate(cp);
+                buf[n++] = Character.lowSurrogate(cp);
+            }
+        }
+        return n;
+    }
+
+    // Code point of the sequence at rawPos, or U+FFFD for a malformed one. The bytes
+    // replaced are the ones the JDK decoder would replace, so a document reads the
+    // same as new String(bytes, UTF_8)
+    private int decodeSequence(int length) {
+        int b1 = raw[rawPos] & 0xFF;
+        if (length == 0 || b1 == 0xC0 || b1 == 0xC1 || b1 > 0xF4) {
+            rawPos++;
+            return 0xFFFD;
+        }
+
+        int available = rawLimit - rawPos;
+        int cp = b1 & (0x7F >> length);
+        for (int k = 1; k < length; k++) {
+            if (k == available) {
+                // cut short by the end of the input
+                rawPos = rawLimit;
+                return 0xFFFD;
+            }
+            int next = raw[rawPos + k] & 0xFF;
+            boolean bad = (next & 0xC0) != 0x80;
+            if (k == 1) {
+                // overlong forms and values past U+10FFFF show in the second byte
+                bad |= (b1 == 0xE0 && next < 0xA0) || (b1 == 0xF0 && next < 0x90) || (b1 == 0xF4 && next > 0x8F);
+            }
+            if (bad) {
+                rawPos += k;
+                return 0xFFFD;
+            }
+            cp = (cp << 6) | (next & 0x3F);
+        }
+        rawPos += length;
+
+        return (cp >= 0xD800 && cp <= 0xDFFF) ? 0xFFFD : cp;
+    }
+
+    // Moves the undecoded tail to the front of raw and reads after it
+    private void readRaw() throws IOException {
+        int left = rawLimit - rawPos;
+        System.arraycopy(raw, rawPos, raw, 0, left);
+        rawPos = 0;
+        rawLimit = left;
+
+        while (rawLimit < raw.length) {
+            int n = bytes.read(raw, rawLimit, raw.length - rawLimit);
+            if (n < 0) {
+                rawEof = true;
+                return;
+            }
+            rawLimit += n;
+            if (n > 0 && rawLimit - rawPos >= 4) return;
+        }
+    }
+}
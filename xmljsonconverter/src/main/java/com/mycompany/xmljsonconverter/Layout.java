@@ -0,0 +1,54 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+
+/*
+ * Whitespace policy shared by the manual writers: two-space indentation and one
+ * element/member per line for PRETTY, nothing at all for COMPACT.
+ */
+final class Layout {
+
+    static final Layout PRETTY = new Layout(true);
+    static final Layout COMPACT = new Layout(false);
+
+    private static final String[] INDENTS = new String[32];
+
+    static {
+        for (int i = 0; i < INDENTS.length; i++) INDENTS[i] = "  ".repeat(i);
+    }
+
+    final boolean pretty;
+
+    private Layout(boolean pretty) {
+        this.pretty = pretty;
+    }
+
+    static Layout of(OutputFormat format) {
+        return format == OutputFormat.COMPACT ? COMPACT : PRETTY;
+    }
+
+    void indent(Appendable out, int level) throws IOException {
+        if (!pretty) return;
+
+        if (level < INDENTS.length) {
+            out.append(INDENTS[level]);
+        } else {
+            for (int i = 0; i < level; i++) out.append("  ");
+        }
+    }
+
+    void newline(Appendable out) throws IOException {
+        if (pretty) out.append('\n');
+    }
+
+    void newline(Appendable out, int level) throws IOException {
+        if (!pretty) return;
+        out.append('\n');
+        indent(out, level);
+    }
+
+    // between a JSON member name and its value
+    String colon() {
+        return pretty ? ": " : ":";
+    }
+}
@@ -1,75 +1,368 @@
 package com.mycompany.xmljsonconverter;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
+import com.fasterxml.jackson.dataformat.xml.deser.FromXmlParser;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.StringReader;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
-public class LocalConverterService {
+public class LocalConverterService implements ConverterService {
 
+    private static final String MODE = "jackson";
+
+    private final ConversionContext context;
     private final ObjectMapper jsonMapper;
     private final XmlMapper xmlMapper;
 
     public LocalConverterService() {
-        jsonMapper = new ObjectMapper();
-        jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        this(ConversionContext.shared());
+    }
+
+    public LocalConverterService(ConversionContext context) {
+        this.context = context;
+        this.jsonMapper = context.jsonMapper();
+        this.xmlMapper = context.xmlMapper();
+    }
+
+    @Override
+    public String xmlToJson(String xml, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+            recording.input(xml);
+            return jsonFromXml((FromXmlParser) xmlMapper.createParser(xml), format, recording);
+        });
+    }
+
+    // Decoded as UTF-8 text, like the String variant, whatever the XML declaration says
+    @Override
+    public String xmlToJson(InputStream xml, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> jsonFromXml(
+                (FromXmlParser) xmlMapper.createParser(
+                        new InputStreamReader(recording.count(xml), StandardCharsets.UTF_8)), format, recording));
+    }
 
-        xmlMapper = new XmlMapper();
-        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
+    // Byte-level variant: the StAX reader decodes the bytes as UTF-8 and Jackson writes UTF-8 into out
+    @Override
+    public void xmlToJson(InputStream xml, OutputStream out, OutputFormat format) throws Exception {
+        xmlToJson(xml, out, format, null);
     }
 
-    public String xmlToJson(String xml) throws Exception {
-        String rootName = extractXmlRootName(xml);
+    // Only the parts selected by projection (null for all); the paths address the JSON this
+    // service writes, where attributes are plain members and text next to them is ""
+    public void xmlToJson(InputStream xml, OutputStream out, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+            XMLStreamReader stax = xmlMapper.getFactory().getXMLInputFactory()
+                    .createXMLStreamReader(recording.count(xml), "UTF-8");
+            JsonNode json = readXml(xmlMapper.getFactory().createParser(stax), projection, recording);
+            writeTo(recording.count(out), context.jsonWriter(format), json);
+            recording.phase(ConversionMetrics.SERIALIZE);
+            return null;
+        });
+    }
+
+    private String jsonFromXml(FromXmlParser xmlParser, OutputFormat format, ConversionMetrics.Recording recording)
+            throws IOException {
+        String json = context.jsonWriter(format).writeValueAsString(readXml(xmlParser, null, recording));
+        recording.phase(ConversionMetrics.SERIALIZE);
+        recording.output(json);
+        return json;
+    }
+
+    // The document as {rootName: content}, or {} when the projection has no path through the root
+    private ObjectNode readXml(FromXmlParser xmlParser, Projection projection, ConversionMetrics.Recording recording)
+            throws IOException {
+        String rootName;
+        JsonNode node;
 
-        JsonNode node = xmlMapper.readTree(xml);
+        try (FromXmlParser parser = xmlParser) {
+            rootName = extractXmlRootName(parser);
+            Projection.Step step = (projection != null) ? projection.root().child(rootName) : Projection.ALL;
+            if (step == null) {
+                node = null;
+            } else if (step.selected()) {
+                node = xmlMapper.readTree(parser);
+            } else {
+                parser.nextToken();
+                node = readProjected(parser, step, xmlMapper, true);
+            }
+        }
+        if (node == null) {
+            ObjectNode empty = jsonMapper.createObjectNode();
+            recording.phase(ConversionMetrics.PARSE);
+            recording.tree(empty);
+            return empty;
+        }
+        recording.phase(ConversionMetrics.PARSE);
 
         ObjectNode wrapped = jsonMapper.createObjectNode();
         wrapped.set(rootName, node);
+        recording.phase(ConversionMetrics.TRANSFORM);
+        recording.tree(wrapped);
+        return wrapped;
+    }
+
+    @Override
+    public String jsonToXml(String json, String rootName, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            recording.input(json);
+            return xmlString(readJson(json, recording), rootName, format, recording);
+        });
+    }
+
+    @Override
+    public String jsonToXml(InputStream json, String rootName, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording ->
+                xmlString(readJson(recording.count(json), recording), rootName, format, recording));
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(String json, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            recording.input(json);
+            return xmlFromJsonAutoRoot(readJson(json, recording), format, recording);
+        });
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(InputStream json, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording ->
+                xmlFromJsonAutoRoot(readJson(recording.count(json), recording), format, recording));
+    }
+
+    @Override
+    public void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format)
+            throws Exception {
+        jsonToXml(json, out, rootName, format, null);
+    }
+
+    @Override
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format) throws Exception {
+        jsonToXmlAutoRoot(json, out, format, null);
+    }
+
+    // Only the parts of the JSON selected by projection (null for all) are read and converted
+    public void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format,
+                          Projection projection) throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            JsonNode node = readJson(recording.count(json), projection, recording);
+            xmlTo(recording.count(out), node, rootName, format, recording);
+            return null;
+        });
+    }
 
-        return jsonMapper.writeValueAsString(wrapped);
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            JsonNode node = readJson(recording.count(json), projection, recording);
+            xmlTo(recording.count(out), node, null, format, recording);
+            return null;
+        });
     }
 
-    public String jsonToXml(String json, String rootName) throws Exception {
-        JsonNode node = jsonMapper.readTree(json);
+    // Smile / CBOR variants: the same tree as the JSON conversions, encoded in binary.
+    // XML and JSON are UTF-8, like in the other byte-level methods
+    public void xmlToBinary(InputStream xml, OutputStream out, BinaryFormat binary) throws Exception {
+        context.metrics().record("xml-to-" + binary.id(), MODE, recording -> {
+            XMLStreamReader stax = xmlMapper.getFactory().getXMLInputFactory()
+                    .createXMLStreamReader(recording.count(xml), "UTF-8");
+            JsonNode node = readXml(xmlMapper.getFactory().createParser(stax), null, recording);
+            writeTo(recording.count(out), context.binaryWriter(binary), node);
+            recording.phase(ConversionMetrics.SERIALIZE);
+            return null;
+        });
+    }
 
-        return xmlMapper.writer()
-                .withRootName(rootName)
-                .writeValueAsString(node);
+    public void binaryToXml(InputStream data, OutputStream out, BinaryFormat binary, String rootName,
+                            OutputFormat format) throws Exception {
+        context.metrics().record(binary.id() + "-to-xml", MODE, recording -> {
+            JsonNode node = readBinary(recording.count(data), binary, recording);
+            xmlTo(recording.count(out), node, rootName, format, recording);
+            return null;
+        });
     }
 
-    public String jsonToXmlAutoRoot(String json) throws Exception {
-        JsonNode node = jsonMapper.readTree(json);
+    public void binaryToXmlAutoRoot(InputStream data, OutputStream out, BinaryFormat binary, OutputFormat format)
+            throws Exception {
+        context.metrics().record(binary.id() + "-to-xml-auto", MODE, recording -> {
+            JsonNode node = readBinary(recording.count(data), binary, recording);
+            xmlTo(recording.count(out), node, null, format, recording);
+            return null;
+        });
+    }
 
-        if (node.isObject() && node.size() == 1) {
-            String rootName = node.fieldNames().next();
-            JsonNode rootValue = node.get(rootName);
+    // JSON <-> binary copies the tokens without building a tree, so only the total is recorded
+    public void jsonToBinary(InputStream json, OutputStream out, BinaryFormat binary) throws Exception {
+        context.metrics().record("json-to-" + binary.id(), MODE, recording -> {
+            copyTokens(jsonMapper.createParser(recording.count(json)),
+                    context.binaryWriter(binary).createGenerator(recording.count(out)));
+            return null;
+        });
+    }
 
-            return xmlMapper.writer()
-                    .withRootName(rootName)
-                    .writeValueAsString(rootValue);
+    public void binaryToJson(InputStream data, OutputStream out, BinaryFormat binary, OutputFormat format)
+            throws Exception {
+        context.metrics().record(binary.id() + "-to-json", MODE, recording -> {
+            copyTokens(context.binaryMapper(binary).createParser(recording.count(data)),
+                    context.jsonWriter(format).createGenerator(recording.count(out)));
+            return null;
+        });
+    }
+
+    private JsonNode readJson(String json, ConversionMetrics.Recording recording) throws IOException {
+        JsonNode node = context.jsonReader().readTree(json);
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(node);
+        return node;
+    }
+
+    private JsonNode readJson(InputStream json, ConversionMetrics.Recording recording) throws IOException {
+        JsonNode node = context.jsonReader().readTree(json);
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(node);
+        return node;
+    }
+
+    private JsonNode readJson(InputStream json, Projection projection, ConversionMetrics.Recording recording)
+            throws IOException {
+        if (projection == null) return readJson(json, recording);
+
+        JsonNode node;
+        try (JsonParser parser = jsonMapper.createParser(json)) {
+            parser.nextToken();
+            node = readProjected(parser, projection.root(), jsonMapper, false);
+        }
+        // nothing left of a document that is a scalar
+        if (node == null) node = jsonMapper.createObjectNode();
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(node);
+        return node;
+    }
+
+    /*
+     * The tree of the value the parser is on, with what is off the projection's paths
+     * skipped by the parser: selected values are read whole, the objects and arrays
+     * leading to one keep only their selected members and scalars on the way are
+     * dropped (null). For XML, repeated elements come as repeated names and are gathered
+     * into arrays like Jackson's own tree reading does.
+     */
+    private static JsonNode readProjected(JsonParser parser, Projection.Step step, ObjectMapper mapper,
+                                          boolean repeatedNames) throws IOException {
+        if (step.selected()) return mapper.readTree(parser);
+
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            ArrayNode array = mapper.createArrayNode();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode item = readProjected(parser, step, mapper, repeatedNames);
+                if (item != null) array.add(item);
+            }
+            return array;
         }
+        if (token != JsonToken.START_OBJECT) return null;
+
+        ObjectNode object = mapper.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
 
-        return xmlMapper.writer()
-                .withRootName("root")
-                .writeValueAsString(node);
+            Projection.Step member = step.child(name);
+            if (member == null) {
+                parser.skipChildren();
+                continue;
+            }
+            JsonNode value = readProjected(parser, member, mapper, repeatedNames);
+            if (value == null) continue;
+
+            JsonNode previous = object.get(name);
+            if (!repeatedNames || previous == null) {
+                object.set(name, value);
+            } else if (previous.isArray()) {
+                ((ArrayNode) previous).add(value);
+            } else {
+                object.set(name, mapper.createArrayNode().add(previous).add(value));
+            }
+        }
+        return object;
     }
 
-    private String extractXmlRootName(String xml) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setIgnoringComments(true);
-        factory.setNamespaceAware(false);
+    private JsonNode readBinary(InputStream data, BinaryFormat binary, ConversionMetrics.Recording recording)
+            throws IOException {
+        JsonNode node = context.binaryMapper(binary).readTree(data);
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(node);
+        return node;
+    }
 
-        Document doc = factory.newDocumentBuilder()
-                .parse(new InputSource(new StringReader(xml)));
+    // rootName null picks the root like jsonToXmlAutoRoot
+    private void xmlTo(OutputStream out, JsonNode node, String rootName, OutputFormat format,
+                       ConversionMetrics.Recording recording) throws IOException {
+        JsonNode value = node;
+        if (rootName == null) {
+            value = autoRootValue(node);
+            rootName = (value == node) ? "root" : node.fieldNames().next();
+            recording.phase(ConversionMetrics.TRANSFORM);
+        }
+
+        writeTo(out, context.xmlWriter(rootName, format), value);
+        recording.phase(ConversionMetrics.SERIALIZE);
+    }
+
+    private String xmlString(JsonNode node, String rootName, OutputFormat format,
+                             ConversionMetrics.Recording recording) throws IOException {
+        String xml = context.xmlWriter(rootName, format).writeValueAsString(node);
+        recording.phase(ConversionMetrics.SERIALIZE);
+        recording.output(xml);
+        return xml;
+    }
+
+    private String xmlFromJsonAutoRoot(JsonNode node, OutputFormat format, ConversionMetrics.Recording recording)
+            throws IOException {
+        JsonNode rootValue = autoRootValue(node);
+        String rootName = (rootValue == node) ? "root" : node.fieldNames().next();
+        recording.phase(ConversionMetrics.TRANSFORM);
+
+        return xmlString(rootValue, rootName, format, recording);
+    }
+
+    // The value of the single top-level field, or the node itself when it has to go under <root>
+    private static JsonNode autoRootValue(JsonNode node) {
+        return (node.isObject() && node.size() == 1) ? node.elements().next() : node;
+    }
+
+    // Like writeValue(OutputStream), but leaves out open for the caller
+    private static void writeTo(OutputStream out, ObjectWriter writer, JsonNode value) throws IOException {
+        try (JsonGenerator gen = writer.createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writer.writeValue(gen, value);
+        }
+    }
+
+    // One value from parser to generator; out is left open like in writeTo
+    private static void copyTokens(JsonParser parser, JsonGenerator generator) throws IOException {
+        try (JsonParser in = parser; JsonGenerator gen = generator) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (in.nextToken() != null) gen.copyCurrentStructure(in);
+        }
+    }
 
-        return doc.getDocumentElement().getTagName();
+    // The underlying StAX reader is already on the root START_ELEMENT when the parser is created
+    private String extractXmlRootName(FromXmlParser parser) {
+        XMLStreamReader stax = parser.getStaxReader();
+        String prefix = stax.getPrefix();
+        return (prefix == null || prefix.isEmpty())
+                ? stax.getLocalName()
+                : prefix + ":" + stax.getLocalName();
     }
 }
@@ -1,32 +1,79 @@
 package com.mycompany.xmljsonconverter;
 
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.stage.FileChooser;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class MainController {
 
+    // Above this size, files and results are shown in the mapped viewer instead of a TextArea
+    private static final long VIEWER_THRESHOLD = 1 << 20;
+
     // Services for the three conversion modes
     private final LocalConverterService localService = new LocalConverterService();
-    private final ManualConverterService manualService = new ManualConverterService();
+    // a single large document is the common case here, so big arrays are written on all cores
+    private final ManualConverterService manualService =
+            new ManualConverterService(ConversionContext.shared(), ForkJoinPool.commonPool());
     private final ApiConverterService apiService =
             new ApiConverterService("http://localhost:8080/api");
 
+    // Loading and converting run here so the FX thread stays responsive
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "converter-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Row indexes of the mapped documents are built here, next to a running conversion
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "line-indexer");
+        t.setDaemon(true);
+        return t;
+    });
+
     private File currentInputFile;
     private File currentOutputFile;
+    private Task<?> currentTask;
 
     @FXML private ComboBox<String> modeCombo;
     @FXML private ComboBox<String> conversionCombo;
     @FXML private TextArea inputArea;
     @FXML private TextArea outputArea;
+    @FXML private ListView<String> inputViewer;
+    @FXML private ListView<String> outputViewer;
+    @FXML private Button loadButton;
+    @FXML private Button convertButton;
+    @FXML private Button cancelButton;
+    @FXML private ProgressBar progressBar;
+
+    private DocumentPane inputPane;
+    private DocumentPane outputPane;
 
     @FXML
     public void initialize() {
+        inputPane = new DocumentPane(inputArea, inputViewer, indexer);
+        outputPane = new DocumentPane(outputArea, outputViewer, indexer);
+
         modeCombo.getItems().addAll(
                 "LOCAL (Jackson)",
                 "LOCAL (Manual)",
@@ -60,46 +107,83 @@ public class MainController {
             File file = chooser.showOpenDialog(null);
             if (file == null) return;
 
-            currentInputFile = file;
-            currentOutputFile = null;
+            Path path = file.toPath();
+            long size = Files.size(path);
+
+            if (size > VIEWER_THRESHOLD) {
+                // mapping is cheap, the row index is built afterwards while the viewer is already usable
+                Task<MappedTextFile> task = new Task<>() {
+                    @Override
+                    protected MappedTextFile call() throws Exception {
+                        return MappedTextFile.open(path);
+                    }
+                };
+                runInBackground(task, "Load error: ", document -> {
+                    inputPane.showDocument(document);
+                    loaded(file);
+                });
+                return;
+            }
 
-            String content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
-            inputArea.setText(content);
-            outputArea.clear();
+            Task<String> task = new Task<>() {
+                @Override
+                protected String call() throws Exception {
+                    try (InputStream in = new ProgressInputStream(Files.newInputStream(path),
+                            read -> updateProgress(read, size), this::isCancelled)) {
+                        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                }
+            };
 
-            String name = file.getName().toLowerCase();
-            if (name.endsWith(".xml")) conversionCombo.setValue("XML To JSON");
-            if (name.endsWith(".json")) conversionCombo.setValue("JSON To XML");
+            runInBackground(task, "Load error: ", content -> {
+                inputPane.showText(content);
+                loaded(file);
+            });
 
         } catch (Exception e) {
-            outputArea.setText("Load error: " + e.getMessage());
+            outputPane.showText("Load error: " + e.getMessage());
         }
     }
 
+    private void loaded(File file) {
+        currentInputFile = file;
+        currentOutputFile = null;
+        outputPane.clear();
+
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".xml")) conversionCombo.setValue("XML To JSON");
+        if (name.endsWith(".json")) conversionCombo.setValue("JSON To XML");
+    }
+
     @FXML
     private void saveFile() {
         try {
-            String output = outputArea.getText();
-            if (output == null || output.isBlank()) {
-                outputArea.setText("Nothing to save (output is empty).");
+            MappedTextFile document = outputPane.document();
+            String output = (document == null) ? outputArea.getText() : null;
+            char first = (document == null) ? firstNonBlank(output) : firstNonBlank(document);
+
+            if (first == 0) {
+                outputPane.showText("Nothing to save (output is empty).");
                 return;
             }
 
             if (currentOutputFile != null) {
-                Files.writeString(currentOutputFile.toPath(), output, StandardCharsets.UTF_8);
-                outputArea.appendText("\n\n(Saved: " + currentOutputFile.getAbsolutePath() + ")");
+                writeOutput(currentOutputFile, document, output);
+                if (document == null) {
+                    outputArea.appendText("\n\n(Saved: " + currentOutputFile.getAbsolutePath() + ")");
+                }
                 return;
             }
 
             FileChooser chooser = new FileChooser();
             chooser.setTitle("Save result");
 
-            if (looksLikeXml(output)) {
+            if (first == '<') {
                 chooser.getExtensionFilters().add(
                         new FileChooser.ExtensionFilter("XML files (*.xml)", "*.xml")
                 );
                 chooser.setInitialFileName("result.xml");
-            } else if (looksLikeJson(output)) {
+            } else if (first == '{' || first == '[') {
                 chooser.getExtensionFilters().add(
                         new FileChooser.ExtensionFilter("JSON files (*.json)", "*.json")
                 );
@@ -115,80 +199,189 @@ public class MainController {
             if (file == null) return;
 
             currentOutputFile = file;
-            Files.writeString(file.toPath(), output, StandardCharsets.UTF_8);
+            writeOutput(file, document, output);
             
         } catch (Exception e) {
-            outputArea.setText("Save error: " + e.getMessage());
+            outputPane.showText("Save error: " + e.getMessage());
+        }
+    }
+
+    // A result shown in the viewer already sits in a temporary file, which is copied as is
+    private void writeOutput(File target, MappedTextFile document, String output) throws IOException {
+        if (document != null) {
+            Files.copy(document.path(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.writeString(target.toPath(), output, StandardCharsets.UTF_8);
         }
     }
 
     @FXML
     private void convert() {
         try {
-            String input = inputArea.getText();
-            if (input == null || input.isBlank()) {
-                outputArea.setText("Error: input field is empty.");
+            // a large loaded file is read straight from its mapping, never from a String
+            MappedTextFile document = inputPane.document();
+            String input = (document == null) ? inputArea.getText() : null;
+            char first = (document == null) ? firstNonBlank(input) : firstNonBlank(document);
+
+            if (first == 0) {
+                outputPane.showText("Error: input field is empty.");
                 return;
             }
 
             boolean xmlToJson =
                     "XML To JSON".equals(conversionCombo.getValue());
 
-            if (xmlToJson && !looksLikeXml(input)) {
-                outputArea.setText("Input does not look like XML (must start with '<').");
+            if (xmlToJson && first != '<') {
+                outputPane.showText("Input does not look like XML (must start with '<').");
                 return;
             }
 
-            if (!xmlToJson && !looksLikeJson(input)) {
-                outputArea.setText("Input does not look like JSON (must start with '{' or '[').");
+            if (!xmlToJson && first != '{' && first != '[') {
+                outputPane.showText("Input does not look like JSON (must start with '{' or '[').");
                 return;
             }
 
             String mode = modeCombo.getValue();
-            String result;
-            boolean outputIsJson;
-
-            if (xmlToJson) {
-                switch (mode) {
-                    case "LOCAL (Manual)" ->
-                            result = manualService.xmlToJson(input);
-                    case "LOCAL (Jackson)" ->
-                            result = localService.xmlToJson(input);
-                    case "API" ->
-                            result = apiService.xmlToJson(input);
-                    default ->
-                            throw new IllegalStateException("Unknown mode: " + mode);
+            ConverterService service = switch (mode) {
+                case "LOCAL (Manual)" -> manualService;
+                case "LOCAL (Jackson)" -> localService;
+                case "API" -> apiService;
+                default -> throw new IllegalStateException("Unknown mode: " + mode);
+            };
+
+            // progress is the share of the (UTF-8) input the parser has consumed
+            Task<ConversionResult> task = new Task<>() {
+                @Override
+                protected ConversionResult call() throws Exception {
+                    InputStream source;
+                    long total;
+                    if (document != null) {
+                        source = document.openStream();
+                        total = document.size();
+                    } else {
+                        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+                        source = new ByteArrayInputStream(bytes);
+                        total = bytes.length;
+                    }
+                    InputStream in = new ProgressInputStream(source,
+                            read -> updateProgress(read, total), this::isCancelled);
+
+                    if (document != null) {
+                        // a mapped input is converted straight into a temporary file through a FileChannel
+                        Path temp = tempOutput(xmlToJson);
+                        try (OutputStream out = FileChannelOutputStream.open(temp)) {
+                            convertStream(service, xmlToJson, in, out);
+                        }
+                        if (Files.size(temp) <= VIEWER_THRESHOLD) {
+                            return new ConversionResult(new String(Files.readAllBytes(temp), StandardCharsets.UTF_8),
+                                    null);
+                        }
+                        return new ConversionResult(null, MappedTextFile.open(temp));
+                    }
+
+                    ByteArrayOutputStream result = new ByteArrayOutputStream();
+                    convertStream(service, xmlToJson, in, result);
+
+                    if (result.size() <= VIEWER_THRESHOLD) {
+                        return new ConversionResult(result.toString(StandardCharsets.UTF_8), null);
+                    }
+
+                    // too large for the TextArea: hand the UTF-8 bytes to the viewer through a temporary file
+                    Path temp = tempOutput(xmlToJson);
+                    try (OutputStream file = Files.newOutputStream(temp)) {
+                        result.writeTo(file);
+                    }
+                    return new ConversionResult(null, MappedTextFile.open(temp));
                 }
-                outputIsJson = true;
-            } else {
-                switch (mode) {
-                    case "LOCAL (Manual)" ->
-                            result = manualService.jsonToXmlAutoRoot(input);
-                    case "LOCAL (Jackson)" ->
-                            result = localService.jsonToXmlAutoRoot(input);
-                    case "API" ->
-                            result = apiService.jsonToXmlAutoRoot(input);
-                    default ->
-                            throw new IllegalStateException("Unknown mode: " + mode);
-                }
-                outputIsJson = false;
-            }
+            };
 
-            outputArea.setText(result);
-            currentOutputFile = defaultOutputFile(outputIsJson);
+            runInBackground(task, "Conversion error: ", result -> {
+                if (result.document() != null) {
+                    outputPane.showDocument(result.document());
+                } else {
+                    outputPane.showText(result.text());
+                }
+                currentOutputFile = defaultOutputFile(xmlToJson);
+            });
 
         } catch (Exception e) {
-            outputArea.setText("Conversion error: " + e.getMessage());
+            outputPane.showText("Conversion error: " + e.getMessage());
         }
     }
 
-    private boolean looksLikeXml(String s) {
-        return s != null && s.stripLeading().startsWith("<");
+    @FXML
+    private void cancel() {
+        if (currentTask != null) currentTask.cancel();
+    }
+
+    // Runs the task on the worker thread; the handlers are called back on the FX thread
+    private <T> void runInBackground(Task<T> task, String errorPrefix, Consumer<T> onSuccess) {
+        currentTask = task;
+        progressBar.progressProperty().bind(task.progressProperty());
+        setBusy(true);
+
+        task.setOnSucceeded(e -> {
+            finished();
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finished();
+            outputPane.showText(errorPrefix + task.getException().getMessage());
+        });
+        task.setOnCancelled(e -> {
+            finished();
+            outputPane.showText("Cancelled.");
+        });
+
+        worker.execute(task);
     }
 
-    private boolean looksLikeJson(String s) {
-        String t = (s == null) ? "" : s.stripLeading();
-        return t.startsWith("{") || t.startsWith("[");
+    private void finished() {
+        currentTask = null;
+        progressBar.progressProperty().unbind();
+        progressBar.setProgress(0);
+        setBusy(false);
+    }
+
+    private void setBusy(boolean busy) {
+        loadButton.setDisable(busy);
+        convertButton.setDisable(busy);
+        cancelButton.setDisable(!busy);
+    }
+
+    // Input and output are recognized by their first non-blank character, 0 when there is none
+    private char firstNonBlank(String s) {
+        if (s == null) return 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isWhitespace(c)) return c;
+        }
+        return 0;
+    }
+
+    private static void convertStream(ConverterService service, boolean xmlToJson, InputStream in, OutputStream out)
+            throws Exception {
+        if (xmlToJson) {
+            service.xmlToJson(in, out, OutputFormat.PRETTY);
+        } else {
+            service.jsonToXmlAutoRoot(in, out, OutputFormat.PRETTY);
+        }
+    }
+
+    private static Path tempOutput(boolean xmlToJson) throws IOException {
+        Path temp = Files.createTempFile("xmljson-", xmlToJson ? ".json" : ".xml");
+        temp.toFile().deleteOnExit();
+        return temp;
+    }
+
+    private char firstNonBlank(MappedTextFile document) throws IOException {
+        try (InputStream in = document.openStream()) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (!Character.isWhitespace(b)) return (char) b;
+            }
+        }
+        return 0;
     }
 
     private File defaultOutputFile(boolean outputIsJson) {
@@ -225,11 +418,77 @@ public class MainController {
 
     @FXML
     private void clearAll() {
-        inputArea.clear();
-        outputArea.clear();
+        cancel();
+        inputPane.clear();
+        outputPane.clear();
         currentInputFile = null;
         currentOutputFile = null;
         conversionCombo.setValue("XML To JSON");
         modeCombo.setValue("LOCAL (Jackson)");
     }
+
+    private record ConversionResult(String text, MappedTextFile document) {
+    }
+
+    /*
+     * Input or output area: a TextArea for ordinary text, or a ListView over a
+     * MappedTextFile that only renders the visible rows. The row index is built
+     * on the indexer thread and the list grows as it progresses.
+     */
+    private static final class DocumentPane {
+        private final TextArea area;
+        private final ListView<String> viewer;
+        private final ExecutorService indexer;
+
+        private MappedTextFile document;
+        private Task<Void> indexTask;
+
+        DocumentPane(TextArea area, ListView<String> viewer, ExecutorService indexer) {
+            this.area = area;
+            this.viewer = viewer;
+            this.indexer = indexer;
+        }
+
+        MappedTextFile document() {
+            return document;
+        }
+
+        void showText(String text) {
+            clear();
+            area.setText(text);
+        }
+
+        void showDocument(MappedTextFile file) {
+            clear();
+            document = file;
+
+            MappedLineList rows = new MappedLineList(file);
+            Task<Void> task = new Task<>() {
+                @Override
+                protected Void call() {
+                    file.indexLines(read -> updateProgress(read, file.size()), this::isCancelled);
+                    return null;
+                }
+            };
+            task.progressProperty().addListener((obs, old, progress) -> rows.refresh());
+            task.setOnSucceeded(e -> rows.refresh());
+            indexTask = task;
+
+            viewer.setItems(rows);
+            area.setVisible(false);
+            viewer.setVisible(true);
+            indexer.execute(task);
+        }
+
+        void clear() {
+            if (indexTask != null) indexTask.cancel();
+            indexTask = null;
+            document = null;
+
+            viewer.setItems(null);
+            viewer.setVisible(false);
+            area.setVisible(true);
+            area.clear();
+        }
+    }
 }
@@ -3,278 +3,649 @@ package com.mycompany.xmljsonconverter;
 import org.w3c.dom.*;
 import org.xml.sax.InputSource;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.StringReader;
-import java.util.*;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-public class ManualConverterService {
+public class ManualConverterService implements ConverterService {
 
-    public String xmlToJson(String xml) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setIgnoringComments(true);
-        factory.setNamespaceAware(false);
+    private static final String MODE = "manual";
 
-        Document doc = factory.newDocumentBuilder()
-                .parse(new InputSource(new StringReader(xml)));
+    // arrays with fewer items are always written on the calling thread
+    static final int PARALLEL_MIN_ITEMS = 4096;
+    private static final int MIN_CHUNK_ITEMS = 512;
+
+    private final ConversionContext context;
+    private final ForkJoinPool pool;
+
+    public ManualConverterService() {
+        this(ConversionContext.shared());
+    }
+
+    public ManualConverterService(ConversionContext context) {
+        this(context, null);
+    }
+
+    // With a pool, the items of large arrays (runs of repeated elements, big JSON arrays)
+    // are written in chunks on it and stitched back in order. Parsing and building the
+    // tree stay on the calling thread
+    public ManualConverterService(ConversionContext context, ForkJoinPool pool) {
+        this.context = context;
+        this.pool = pool;
+    }
+
+    @Override
+    public String xmlToJson(String xml, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+            recording.input(xml);
+            return jsonFromXml(new InputSource(new StringReader(xml)), format, recording);
+        });
+    }
+
+    // Decoded as UTF-8 text, like the String variant, whatever the XML declaration says
+    @Override
+    public String xmlToJson(InputStream xml, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> jsonFromXml(
+                new InputSource(new InputStreamReader(recording.count(xml), StandardCharsets.UTF_8)), format,
+                recording));
+    }
+
+    // Byte-level variant: the parser decodes the UTF-8 bytes itself and the JSON is encoded
+    // straight into out. Same output as xmlToJson(String)
+    @Override
+    public void xmlToJson(InputStream xml, OutputStream out, OutputFormat format) throws Exception {
+        context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+            InputSource source = new InputSource(recording.count(xml));
+            source.setEncoding("UTF-8");
+
+            Utf8Output utf8 = new Utf8Output(recording.count(out));
+            writeJson(source, utf8, format, recording);
+            utf8.flush();
+            return null;
+        });
+    }
+
+    private String jsonFromXml(InputSource source, OutputFormat format, ConversionMetrics.Recording recording)
+            throws Exception {
+        StringBuilder json = new StringBuilder();
+        writeJson(source, json, format, recording);
+        recording.output(json);
+        return json.toString();
+    }
+
+    private void writeJson(InputSource source, Appendable out, OutputFormat format,
+                           ConversionMetrics.Recording recording) throws Exception {
+        Document doc = context.documentBuilder().parse(source);
+        recording.phase(ConversionMetrics.PARSE);
 
         Element root = doc.getDocumentElement();
 
-        Map<String, Object> json = new LinkedHashMap<>();
-        json.put(root.getTagName(), elementToValue(root));
+        CompactTree tree = new CompactTree(context.symbols());
+        int json = tree.newNode(CompactTree.OBJECT, CompactTree.NONE);
+        tree.append(json, new ElementReader(tree).elementToValue(root, tree.symbol(root.getTagName())));
+        tree.setRoot(json);
+        tree.finish();
+        recording.phase(ConversionMetrics.TRANSFORM);
+        recording.tree(tree);
 
-        return JsonWriter.pretty(json);
+        new JsonWriter(tree, Layout.of(format), pool).write(json, out);
+        recording.phase(ConversionMetrics.SERIALIZE);
     }
 
-    private Object elementToValue(Element element) {
-        Map<String, Object> map = new LinkedHashMap<>();
+    // Streaming variant: same output as xmlToJson(String), without building the DOM or the map tree.
+    // Repeated elements have to be adjacent: <a/><b/><a/> fails with
+    // StreamingXmlToJson.RepeatedElementException after part of the JSON is written to out
+    public void xmlToJson(Reader xml, Writer out) throws Exception {
+        xmlToJson(xml, out, OutputFormat.PRETTY);
+    }
 
-        NamedNodeMap attrs = element.getAttributes();
-        if (attrs != null && attrs.getLength() > 0) {
-            Map<String, Object> attrMap = new LinkedHashMap<>();
-            for (int i = 0; i < attrs.getLength(); i++) {
-                Node a = attrs.item(i);
-                attrMap.put(a.getNodeName(), a.getNodeValue());
-            }
-            map.put("@attributes", attrMap);
+    // Parsing and writing are interleaved here, so only the total time is recorded
+    public void xmlToJson(Reader xml, Writer out, OutputFormat format) throws Exception {
+        xmlToJson(xml, out, format, null);
+    }
+
+    // Projected streaming variants: only what the paths select is converted, the rest of the
+    // input is skipped by the parser (see Projection). A null projection converts everything
+    public void xmlToJson(Reader xml, Writer out, OutputFormat format, Projection projection) throws Exception {
+        context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+            XMLStreamReader reader = context.xmlInputFactory().createXMLStreamReader(xml);
+            new StreamingXmlToJson(out, format, context.symbols(), projection).convert(reader);
+            out.flush();
+            return null;
+        });
+    }
+
+    // Turns DOM elements into CompactTree nodes: attributes under "@attributes", repeated
+    // child elements grouped into an array, direct text under "#text"
+    private static final class ElementReader {
+        private final CompactTree tree;
+        private final int attributesName;
+        private final int textName;
+
+        ElementReader(CompactTree tree) {
+            this.tree = tree;
+            this.attributesName = tree.symbol("@attributes");
+            this.textName = tree.symbol("#text");
         }
 
-        NodeList children = element.getChildNodes();
-        boolean hasElementChild = false;
+        int elementToValue(Element element, int name) {
+            int map = CompactTree.NONE;
 
-        for (int i = 0; i < children.getLength(); i++) {
-            Node n = children.item(i);
-            if (n.getNodeType() == Node.ELEMENT_NODE) {
-                hasElementChild = true;
-                Element child = (Element) n;
+            NamedNodeMap attrs = element.getAttributes();
+            if (attrs != null && attrs.getLength() > 0) {
+                map = tree.newNode(CompactTree.OBJECT, name);
+                int attrMap = tree.newNode(CompactTree.OBJECT, attributesName);
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node a = attrs.item(i);
+                    tree.put(attrMap, tree.newString(tree.symbol(a.getNodeName()), a.getNodeValue()));
+                }
+                tree.append(map, attrMap);
+            }
 
-                String tag = child.getTagName();
-                Object value = elementToValue(child);
+            NodeList children = element.getChildNodes();
 
-                if (map.containsKey(tag)) {
-                    Object existing = map.get(tag);
+            for (int i = 0; i < children.getLength(); i++) {
+                Node n = children.item(i);
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    Element child = (Element) n;
 
-                    if (existing instanceof List<?> list) {
-                        @SuppressWarnings("unchecked")
-                        List<Object> l = (List<Object>) list;
-                        l.add(value);
-                    } else {
-                        List<Object> list = new ArrayList<>();
-                        list.add(existing);
-                        list.add(value);
-                        map.put(tag, list);
-                    }
-                } else {
-                    map.put(tag, value);
+                    if (map == CompactTree.NONE) map = tree.newNode(CompactTree.OBJECT, name);
+                    tree.group(map, elementToValue(child, tree.symbol(child.getTagName())));
                 }
             }
-        }
 
-        String directText = getDirectText(element).trim();
+            String directText = getDirectText(element).trim();
+
+            if (map == CompactTree.NONE) return tree.newString(name, directText);
+
+            if (!directText.isEmpty()) {
+                tree.append(map, tree.newString(textName, directText));
+            }
+            return map;
+        }
 
-        if (!hasElementChild) {
-           
-            if (map.containsKey("@attributes")) {
-                if (!directText.isEmpty()) map.put("#text", directText);
-                return map;
+        private static String getDirectText(Element element) {
+            StringBuilder sb = new StringBuilder();
+            NodeList children = element.getChildNodes();
+
+            for (int i = 0; i < children.getLength(); i++) {
+                Node n = children.item(i);
+                // CDATA sections are text as well, as in the streaming variant
+                if (n.getNodeType() == Node.TEXT_NODE || n.getNodeType() == Node.CDATA_SECTION_NODE) {
+                    String t = n.getTextContent();
+                    if (t != null && !t.isBlank()) {
+                        sb.append(t);
+                    }
+                }
             }
-  
-            return directText;
+            return sb.toString();
         }
+    }
+
+    @Override
+    public String jsonToXml(String json, String rootName, OutputFormat format) throws Exception {
+        return jsonToXml(json, rootName, format, null);
+    }
+
+    @Override
+    public String jsonToXml(InputStream json, String rootName, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> xmlString(
+                readJsonTree(recording.count(json), recording), context.symbols().intern(rootName), format, null,
+                recording));
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(String json, OutputFormat format) throws Exception {
+        return jsonToXmlAutoRoot(json, format, null);
+    }
+
+    @Override
+    public String jsonToXmlAutoRoot(InputStream json, OutputFormat format) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording ->
+                xmlString(readJsonTree(recording.count(json), recording), null, format, null, recording));
+    }
 
-        if (!directText.isEmpty()) {
-            map.put("#text", directText);
+    // Byte-level variants: JsonPullParser decodes the UTF-8 input and the XML is encoded straight into out
+    @Override
+    public void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format)
+            throws Exception {
+        jsonToXml(json, out, rootName, format, null);
+    }
+
+    @Override
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format) throws Exception {
+        jsonToXmlAutoRoot(json, out, format, null);
+    }
+
+    // Plan for a feed of same-shaped JSON documents, compiled from one or more samples of it.
+    // Documents converted with the plan give the same XML as without it, faster when they
+    // have the shape of the samples
+    public ConversionPlan compilePlan(String... samples) {
+        CompactTree[] trees = new CompactTree[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            trees[i] = new SimpleJsonParser(samples[i]).parseTree(context.symbols());
         }
+        return ConversionPlan.compile(trees);
+    }
+
+    // Planned variants; a null plan is the same as the methods without one
+    public String jsonToXml(String json, String rootName, OutputFormat format, ConversionPlan plan)
+            throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            recording.input(json);
+            return xmlString(parseJsonTree(json, recording), context.symbols().intern(rootName), format, plan,
+                    recording);
+        });
+    }
 
-        return map;
+    public String jsonToXmlAutoRoot(String json, OutputFormat format, ConversionPlan plan) throws Exception {
+        return context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            recording.input(json);
+            return xmlString(parseJsonTree(json, recording), null, format, plan, recording);
+        });
     }
 
-    private String getDirectText(Element element) {
-        StringBuilder sb = new StringBuilder();
-        NodeList children = element.getChildNodes();
+    public void jsonToXml(InputStream json, OutputStream out, String rootName, OutputFormat format,
+                          ConversionPlan plan) throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            CompactTree tree = readJsonTree(recording.count(json), recording);
+            xmlBytes(tree, context.symbols().intern(rootName), recording.count(out), format, plan, recording);
+            return null;
+        });
+    }
+
+    public void jsonToXmlAutoRoot(InputStream json, OutputStream out, OutputFormat format, ConversionPlan plan)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            CompactTree tree = readJsonTree(recording.count(json), recording);
+            xmlBytes(tree, null, recording.count(out), format, plan, recording);
+            return null;
+        });
+    }
+
+    private CompactTree parseJsonTree(String json, ConversionMetrics.Recording recording) {
+        CompactTree tree = new SimpleJsonParser(json).parseTree(context.symbols());
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(tree);
+        return tree;
+    }
+
+    // Builds the same tree as SimpleJsonParser, reading the stream through JsonPullParser
+    private CompactTree readJsonTree(InputStream json, ConversionMetrics.Recording recording) throws IOException {
+        JsonPullParser parser = new JsonPullParser(json);
+        parser.nextToken();
+        CompactTree parsed = parser.readCompactTree(context.symbols());
+        parser.nextToken(); // rejects trailing characters
+        recording.phase(ConversionMetrics.PARSE);
+        recording.tree(parsed);
+        return parsed;
+    }
 
-        for (int i = 0; i < children.getLength(); i++) {
-            Node n = children.item(i);
-            if (n.getNodeType() == Node.TEXT_NODE) {
-                String t = n.getTextContent();
-                if (t != null && !t.isBlank()) {
-                    sb.append(t);
+    // Streaming variants: the JSON is read token by token and no tree is built.
+    // Only the total time is recorded for them
+    public void jsonToXml(Reader json, Writer out, String rootName) throws Exception {
+        jsonToXml(json, out, rootName, OutputFormat.PRETTY);
+    }
+
+    public void jsonToXml(Reader json, Writer out, String rootName, OutputFormat format) throws Exception {
+        jsonToXml(json, out, rootName, format, null);
+    }
+
+    public void jsonToXml(Reader json, Writer out, String rootName, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            new StreamingJsonToXml(new JsonPullParser(json), out, format, context.symbols(), projection)
+                    .convert(rootName);
+            out.flush();
+            return null;
+        });
+    }
+
+    public void jsonToXmlAutoRoot(Reader json, Writer out) throws Exception {
+        jsonToXmlAutoRoot(json, out, OutputFormat.PRETTY);
+    }
+
+    public void jsonToXmlAutoRoot(Reader json, Writer out, OutputFormat format) throws Exception {
+        jsonToXmlAutoRoot(json, out, format, null);
+    }
+
+    public void jsonToXmlAutoRoot(Reader json, Writer out, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            new StreamingJsonToXml(new JsonPullParser(json), out, format, context.symbols(), projection)
+                    .convertAutoRoot();
+            out.flush();
+            return null;
+        });
+    }
+
+    // Streaming file conversions: the input is read through a memory mapping and the
+    // result encoded into a FileChannel, with no tree in between. Same rules as the
+    // Reader/Writer streaming variants; for XML -> JSON the heap stays bounded because a
+    // large held-back sibling run goes to a temporary file (see StreamingXmlToJson)
+    public void streamXmlToJson(Path xml, Path out, OutputFormat format) throws Exception {
+        streamXmlToJson(xml, out, format, null);
+    }
+
+    // Repeated elements that are not adjacent make it start over on the tree path, which
+    // holds the whole document; with a projection there is no tree path and they fail
+    public void streamXmlToJson(Path xml, Path out, OutputFormat format, Projection projection) throws Exception {
+        try {
+            context.metrics().record(ConversionMetrics.XML_TO_JSON, MODE, recording -> {
+                try (OutputStream target = FileChannelOutputStream.open(out)) {
+                    XMLStreamReader reader = context.xmlInputFactory().createXMLStreamReader(
+                            recording.count(MappedTextFile.open(xml).openStream()), "UTF-8");
+                    Utf8Output utf8 = new Utf8Output(recording.count(target));
+                    new StreamingXmlToJson(utf8, format, context.symbols(), projection).convert(reader);
+                    utf8.flush();
                 }
+                return null;
+            });
+        } catch (StreamingXmlToJson.RepeatedElementException e) {
+            if (projection != null) throw e;
+            try (OutputStream target = FileChannelOutputStream.open(out)) {
+                xmlToJson(MappedTextFile.open(xml).openStream(), target, format);
             }
         }
-        return sb.toString();
     }
 
-    public String jsonToXml(String json, String rootName) throws Exception {
-        Object parsed = new SimpleJsonParser(json).parse();
-        return xmlFromParsed(rootName, parsed);
+    public void streamJsonToXml(Path json, Path out, String rootName, OutputFormat format) throws Exception {
+        streamJsonToXml(json, out, rootName, format, null);
     }
 
-    public String jsonToXmlAutoRoot(String json) throws Exception {
-        Object parsed = new SimpleJsonParser(json).parse();
+    public void streamJsonToXml(Path json, Path out, String rootName, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML, MODE, recording -> {
+            try (OutputStream target = FileChannelOutputStream.open(out)) {
+                Utf8Output utf8 = new Utf8Output(recording.count(target));
+                new StreamingJsonToXml(mappedJson(json, recording), utf8, format, context.symbols(), projection)
+                        .convert(rootName);
+                utf8.flush();
+            }
+            return null;
+        });
+    }
 
-        if (parsed instanceof Map<?, ?> map && map.size() == 1) {
-            String rootName = map.keySet().iterator().next().toString();
-            Object rootValue = map.values().iterator().next();
-            return xmlFromParsed(rootName, rootValue);
-        }
+    public void streamJsonToXmlAutoRoot(Path json, Path out, OutputFormat format) throws Exception {
+        streamJsonToXmlAutoRoot(json, out, format, null);
+    }
 
-        return xmlFromParsed("root", parsed);
+    public void streamJsonToXmlAutoRoot(Path json, Path out, OutputFormat format, Projection projection)
+            throws Exception {
+        context.metrics().record(ConversionMetrics.JSON_TO_XML_AUTO, MODE, recording -> {
+            try (OutputStream target = FileChannelOutputStream.open(out)) {
+                Utf8Output utf8 = new Utf8Output(recording.count(target));
+                new StreamingJsonToXml(mappedJson(json, recording), utf8, format, context.symbols(), projection)
+                        .convertAutoRoot();
+                utf8.flush();
+            }
+            return null;
+        });
     }
 
-    private String xmlFromParsed(String rootName, Object rootValue) {
+    private static JsonPullParser mappedJson(Path json, ConversionMetrics.Recording recording) throws IOException {
+        return new JsonPullParser(recording.count(MappedTextFile.open(json).openStream()));
+    }
+
+    private String xmlString(CompactTree tree, SymbolTable.Symbol rootName, OutputFormat format,
+                             ConversionPlan plan, ConversionMetrics.Recording recording) throws IOException {
         StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        xml.append(buildXml(rootName, rootValue, 0));
+        writeXml(xml, tree, rootName, Layout.of(format), plan);
+        recording.phase(ConversionMetrics.SERIALIZE);
+        recording.output(xml);
         return xml.toString();
     }
 
-    private String buildXml(String name, Object value, int indent) {
-        String pad = "  ".repeat(Math.max(0, indent));
+    private void xmlBytes(CompactTree tree, SymbolTable.Symbol rootName, OutputStream out, OutputFormat format,
+                          ConversionPlan plan, ConversionMetrics.Recording recording) throws IOException {
+        Utf8Output utf8 = new Utf8Output(out);
+        writeXml(utf8, tree, rootName, Layout.of(format), plan);
+        utf8.flush();
+        recording.phase(ConversionMetrics.SERIALIZE);
+    }
+
+    // rootName null picks the root like jsonToXmlAutoRoot: the single top-level field, else <root>
+    private void writeXml(Appendable out, CompactTree tree, SymbolTable.Symbol rootName, Layout layout,
+                          ConversionPlan plan) throws IOException {
+        int value = tree.root();
+        ConversionPlan.Position position = (plan != null) ? plan.document() : null;
+        if (rootName == null) {
+            if (tree.kind(value) == CompactTree.OBJECT && tree.childCount(value) == 1) {
+                if (plan != null) position = plan.autoRoot(tree, value);
+                value = tree.firstChild(value);
+                rootName = tree.nameSymbol(value);
+            } else {
+                rootName = context.symbols().intern("root");
+            }
+        }
 
-        if (value == null) {
-            return pad + "<" + name + "/>\n";
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        layout.newline(out);
+        if (position != null) {
+            ConversionPlan.write(out, tree, position, rootName, value, 0, layout, pool);
+        } else {
+            buildXml(out, tree, rootName, value, 0, layout, pool);
         }
+    }
 
-        if (value instanceof List<?> list) {
-            StringBuilder sb = new StringBuilder();
-            for (Object item : list) {
-                sb.append(buildXml(name, item, indent));
+    // Writes the element(s) for one value straight into out; arrays repeat the element name.
+    // The tags come ready-made from the symbol table. A large array is split over the pool
+    // when there is one; the chunks write their items serially
+    static void buildXml(Appendable out, CompactTree tree, SymbolTable.Symbol name, int value, int indent,
+                         Layout layout, ForkJoinPool pool) throws IOException {
+        byte kind = tree.kind(value);
+
+        if (kind == CompactTree.ARRAY) {
+            if (pool != null && tree.childCount(value) >= PARALLEL_MIN_ITEMS) {
+                writeChunked(pool, tree, value, out,
+                        (chunk, item, first) -> buildXml(chunk, tree, name, item, indent, layout, null));
+                return;
             }
-            return sb.toString();
+            for (int item = tree.firstChild(value); item != CompactTree.NONE; item = tree.nextSibling(item)) {
+                buildXml(out, tree, name, item, indent, layout, pool);
+            }
+            return;
         }
 
-        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
-            return pad + "<" + name + ">" + escapeXml(String.valueOf(value)) + "</" + name + ">\n";
+        layout.indent(out, indent);
+
+        if (kind == CompactTree.NULL) {
+            out.append(name.emptyTag);
+            layout.newline(out);
+            return;
         }
 
-        if (!(value instanceof Map<?, ?>)) {
-            return pad + "<" + name + ">" + escapeXml(String.valueOf(value)) + "</" + name + ">\n";
+        if (kind != CompactTree.OBJECT) {
+            out.append(name.openTag);
+            Escaping.appendXml(out, valueText(tree, value));
+            out.append(name.closeTag);
+            layout.newline(out);
+            return;
         }
 
-        @SuppressWarnings("unchecked")
-        Map<String, Object> map = (Map<String, Object>) value;
-
-        StringBuilder attrs = new StringBuilder();
-        Object attrObj = map.get("@attributes");
-        if (attrObj instanceof Map<?, ?>) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> a = (Map<String, Object>) attrObj;
-            for (var e : a.entrySet()) {
-                attrs.append(" ")
-                        .append(e.getKey())
-                        .append("=\"")
-                        .append(escapeXml(String.valueOf(e.getValue())))
-                        .append("\"");
+        int attrObj = CompactTree.NONE;
+        int textObj = CompactTree.NONE;
+        for (int c = tree.firstChild(value); c != CompactTree.NONE; c = tree.nextSibling(c)) {
+            String key = tree.nameText(c);
+            if (key.equals("@attributes")) attrObj = c;
+            else if (key.equals("#text")) textObj = c;
+        }
+
+        out.append(name.startTag);
+
+        if (attrObj != CompactTree.NONE && tree.kind(attrObj) == CompactTree.OBJECT) {
+            for (int a = tree.firstChild(attrObj); a != CompactTree.NONE; a = tree.nextSibling(a)) {
+                out.append(' ').append(tree.nameText(a)).append("=\"");
+                Escaping.appendXml(out, valueText(tree, a));
+                out.append('"');
             }
         }
 
-        Object textObj = map.get("#text");
-        String text = (textObj == null) ? null : String.valueOf(textObj);
+        CharSequence text = (textObj == CompactTree.NONE || tree.kind(textObj) == CompactTree.NULL)
+                ? null
+                : valueText(tree, textObj);
 
-        if (text != null && text.trim().isEmpty()) {
+        if (text != null && isBlank(text)) {
             text = null;
         }
 
-        List<String> childKeys = new ArrayList<>();
-        for (String k : map.keySet()) {
-            if (k.equals("@attributes") || k.equals("#text")) continue;
-            childKeys.add(k);
-        }
+        int special = (attrObj != CompactTree.NONE ? 1 : 0) + (textObj != CompactTree.NONE ? 1 : 0);
 
-        if (childKeys.isEmpty()) {
-            if (text == null || text.isBlank()) {
-                return pad + "<" + name + attrs + "/>\n";
+        if (tree.childCount(value) == special) {
+            if (text == null) {
+                out.append("/>");
+                layout.newline(out);
+                return;
             }
-            return pad + "<" + name + attrs + ">" + escapeXml(text) + "</" + name + ">\n";
+            out.append('>');
+            Escaping.appendXml(out, text);
+            out.append(name.closeTag);
+            layout.newline(out);
+            return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(pad).append("<").append(name).append(attrs).append(">");
+        out.append('>');
+        if (text != null) Escaping.appendXml(out, text);
+        layout.newline(out);
 
-        if (text != null && !text.isBlank()) sb.append(escapeXml(text));
-        sb.append("\n");
+        for (int c = tree.firstChild(value); c != CompactTree.NONE; c = tree.nextSibling(c)) {
+            if (c == attrObj || c == textObj) continue;
+            buildXml(out, tree, tree.nameSymbol(c), c, indent + 1, layout, pool);
+        }
 
-        for (String ck : childKeys) {
-            Object cv = map.get(ck);
+        layout.indent(out, indent);
+        out.append(name.closeTag);
+        layout.newline(out);
+    }
 
-            if (cv instanceof List<?> list) {
-                for (Object item : list) {
-                    sb.append(buildXml(ck, item, indent + 1));
+    @FunctionalInterface
+    interface ItemWriter {
+        void write(Appendable out, int item, boolean first) throws IOException;
+    }
+
+    // Writes the items of array in chunks on the pool and appends the chunks to out in
+    // input order. Only a window of chunks is pending at a time, so memory stays bounded
+    // when out is a stream
+    static void writeChunked(ForkJoinPool pool, CompactTree tree, int array, Appendable out,
+                                     ItemWriter writer) throws IOException {
+        int parallelism = pool.getParallelism();
+        int chunkItems = Math.max(MIN_CHUNK_ITEMS, tree.childCount(array) / (parallelism * 4));
+        int first = tree.firstChild(array);
+        ArrayDeque<ForkJoinTask<StringBuilder>> pending = new ArrayDeque<>();
+
+        try {
+            int next = first;
+            while (next != CompactTree.NONE || !pending.isEmpty()) {
+                if (next != CompactTree.NONE && pending.size() < parallelism * 2) {
+                    int start = next;
+                    for (int k = 0; k < chunkItems && next != CompactTree.NONE; k++) next = tree.nextSibling(next);
+                    int end = next;
+
+                    pending.add(pool.submit(() -> {
+                        StringBuilder chunk = new StringBuilder();
+                        for (int item = start; item != end; item = tree.nextSibling(item)) {
+                            writer.write(chunk, item, item == first);
+                        }
+                        return chunk;
+                    }));
+                    continue;
                 }
-            } else {
-                sb.append(buildXml(ck, cv, indent + 1));
+                out.append(pending.poll().join());
             }
+        } finally {
+            pending.forEach(task -> task.cancel(true));
         }
+    }
 
-        sb.append(pad).append("</").append(name).append(">\n");
-        return sb.toString();
+    // String.valueOf of the value the Map/List tree used to hold; strings are not copied
+    static CharSequence valueText(CompactTree tree, int node) {
+        return tree.kind(node) == CompactTree.STRING ? tree.text(node) : tree.valueString(node);
     }
 
-    private String escapeXml(String s) {
-        if (s == null) return "";
-        return s.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&apos;");
+    // Same as text.trim().isEmpty() || text.isBlank()
+    static boolean isBlank(CharSequence text) {
+        boolean trimmed = true;
+        boolean whitespace = true;
+        for (int i = 0; i < text.length() && (trimmed || whitespace); i++) {
+            char c = text.charAt(i);
+            if (c > ' ') trimmed = false;
+            if (!Character.isWhitespace(c)) whitespace = false;
+        }
+        return trimmed || whitespace;
     }
 
-    private static class JsonWriter {
-        static String pretty(Object v) {
-            StringBuilder sb = new StringBuilder();
-            write(v, sb, 0);
-            sb.append("\n");
-            return sb.toString();
+    private static final class JsonWriter {
+        private final CompactTree tree;
+        private final Layout layout;
+        private final ForkJoinPool pool;
+
+        JsonWriter(CompactTree tree, Layout layout, ForkJoinPool pool) {
+            this.tree = tree;
+            this.layout = layout;
+            this.pool = pool;
         }
 
-        private static void write(Object v, StringBuilder sb, int indent) {
-            if (v == null) { sb.append("null"); return; }
-            if (v instanceof String s) { sb.append("\"").append(escape(s)).append("\""); return; }
-            if (v instanceof Number || v instanceof Boolean) { sb.append(v); return; }
-
-            if (v instanceof List<?> list) {
-                sb.append("[");
-                if (!list.isEmpty()) sb.append("\n");
-                for (int i = 0; i < list.size(); i++) {
-                    sb.append("  ".repeat(indent + 1));
-                    write(list.get(i), sb, indent + 1);
-                    if (i < list.size() - 1) sb.append(",");
-                    sb.append("\n");
-                }
-                if (!list.isEmpty()) sb.append("  ".repeat(indent));
-                sb.append("]");
-                return;
-            }
+        void write(int node, Appendable out) throws IOException {
+            write(node, out, 0, pool);
+            layout.newline(out);
+        }
 
-            if (v instanceof Map<?, ?> mapAny) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> map = (Map<String, Object>) mapAny;
-
-                sb.append("{");
-                if (!map.isEmpty()) sb.append("\n");
-                int k = 0;
-                for (var e : map.entrySet()) {
-                    sb.append("  ".repeat(indent + 1));
-                    sb.append("\"").append(escape(e.getKey())).append("\": ");
-                    write(e.getValue(), sb, indent + 1);
-                    if (k < map.size() - 1) sb.append(",");
-                    sb.append("\n");
-                    k++;
+        // pool is null inside a chunk: arrays nested in a chunk are written serially
+        private void write(int node, Appendable sb, int indent, ForkJoinPool pool) throws IOException {
+            switch (tree.kind(node)) {
+                case CompactTree.NULL -> sb.append("null");
+                case CompactTree.STRING -> appendString(sb, tree.text(node));
+                case CompactTree.LONG -> sb.append(Long.toString(tree.longValue(node)));
+                case CompactTree.DOUBLE -> sb.append(Double.toString(tree.doubleValue(node)));
+                case CompactTree.TRUE -> sb.append("true");
+                case CompactTree.FALSE -> sb.append("false");
+                case CompactTree.ARRAY -> {
+                    sb.append("[");
+                    if (pool != null && tree.childCount(node) >= PARALLEL_MIN_ITEMS) {
+                        writeChunked(pool, tree, node, sb, (chunk, item, first) -> {
+                            if (!first) chunk.append(",");
+                            layout.newline(chunk, indent + 1);
+                            write(item, chunk, indent + 1, null);
+                        });
+                    } else {
+                        for (int c = tree.firstChild(node); c != CompactTree.NONE; c = tree.nextSibling(c)) {
+                            if (c != tree.firstChild(node)) sb.append(",");
+                            layout.newline(sb, indent + 1);
+                            write(c, sb, indent + 1, pool);
+                        }
+                    }
+                    if (tree.childCount(node) > 0) layout.newline(sb, indent);
+                    sb.append("]");
+                }
+                default -> {
+                    sb.append("{");
+                    for (int c = tree.firstChild(node); c != CompactTree.NONE; c = tree.nextSibling(c)) {
+                        if (c != tree.firstChild(node)) sb.append(",");
+                        layout.newline(sb, indent + 1);
+                        sb.append(tree.nameSymbol(c).jsonKey);
+                        sb.append(layout.colon());
+                        write(c, sb, indent + 1, pool);
+                    }
+                    if (tree.childCount(node) > 0) layout.newline(sb, indent);
+                    sb.append("}");
                 }
-                if (!map.isEmpty()) sb.append("  ".repeat(indent));
-                sb.append("}");
-                return;
             }
-
-            sb.append("\"").append(escape(String.valueOf(v))).append("\"");
         }
 
-        private static String escape(String s) {
-            return s.replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
+        private static void appendString(Appendable sb, CharSequence s) throws IOException {
+            sb.append('"');
+            Escaping.appendJson(sb, s);
+            sb.append('"');
         }
     }
 }
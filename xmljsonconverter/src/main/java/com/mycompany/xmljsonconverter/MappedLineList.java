@@ -0,0 +1,46 @@
+package com.mycompany.xmljsonconverter;
+
+import javafx.collections.ObservableListBase;
+
+/*
+ * Read-only list of the rows of a MappedTextFile, for a ListView. The ListView
+ * only asks for the rows it shows, so only those are decoded. refresh() (on the
+ * FX thread) publishes rows indexed since the last call.
+ */
+public class MappedLineList extends ObservableListBase<String> {
+
+    private final MappedTextFile file;
+    private int size;
+
+    public MappedLineList(MappedTextFile file) {
+        this.file = file;
+        refresh();
+    }
+
+    public MappedTextFile file() {
+        return file;
+    }
+
+    public void refresh() {
+        int count = file.rowCount();
+        if (count <= size) return;
+
+        beginChange();
+        nextAdd(size, count);
+        size = count;
+        endChange();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+        }
+        return file.row(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,188 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/*
+ * Read-only, memory-mapped view of a UTF-8 text file. Nothing is copied on the
+ * heap: the viewer decodes only the rows it shows, and conversions read the
+ * mapping through openStream().
+ *
+ * The row index is built separately (indexLines, usually on a background thread)
+ * and can be read while it grows. A row is a line, except that lines longer than
+ * MAX_ROW_BYTES are cut into several rows so minified documents stay viewable.
+ *
+ * The mapping is released when the object is garbage collected, Java 17 has no
+ * public way to unmap it earlier.
+ */
+public final class MappedTextFile {
+
+    static final int MAX_ROW_BYTES = 4096;
+
+    // a single MappedByteBuffer is limited to 2 GB
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final Path path;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+
+    // rowEnds[i] is the offset just after row i; only the first rowCount entries are valid
+    private volatile long[] rowEnds = new long[1024];
+    private volatile int rowCount;
+    private volatile boolean indexed;
+
+    private MappedTextFile(Path path, long size, MappedByteBuffer[] segments) {
+        this.path = path;
+        this.size = size;
+        this.segments = segments;
+    }
+
+    public static MappedTextFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            return new MappedTextFile(path, size, segments);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public InputStream openStream() {
+        return new MappedInputStream();
+    }
+
+    // Scans the whole file once; progress gets the number of bytes scanned so far
+    public void indexLines(LongConsumer progress, BooleanSupplier cancelled) {
+        long rowStart = 0;
+        long pos = 0;
+
+        for (MappedByteBuffer segment : segments) {
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++, pos++) {
+                byte b = segment.get(i);
+
+                if (b == '\n') {
+                    addRow(pos + 1);
+                    rowStart = pos + 1;
+                } else if (pos - rowStart >= MAX_ROW_BYTES && (b & 0xC0) != 0x80) {
+                    // cut before b, which starts a character
+                    addRow(pos);
+                    rowStart = pos;
+                }
+
+                if ((pos & 0xFFFFF) == 0) {
+                    if (cancelled.getAsBoolean()) return;
+                    progress.accept(pos);
+                }
+            }
+        }
+
+        if (rowStart < size || rowCount == 0) addRow(size);
+        indexed = true;
+        progress.accept(size);
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    // Row text without its line terminator
+    public String row(int index) {
+        int count = rowCount;
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + count);
+        }
+        long[] ends = rowEnds;
+        long start = (index == 0) ? 0 : ends[index - 1];
+        long end = ends[index];
+
+        if (end > start && byteAt(end - 1) == '\n') end--;
+        if (end > start && byteAt(end - 1) == '\r') end--;
+
+        byte[] bytes = new byte[(int) (end - start)];
+        read(start, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void addRow(long end) {
+        int count = rowCount;
+        long[] ends = rowEnds;
+        if (count == ends.length) {
+            ends = Arrays.copyOf(ends, count * 2);
+            rowEnds = ends;
+        }
+        ends[count] = end;
+        rowCount = count + 1;
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos / SEGMENT_SIZE)].get((int) (pos % SEGMENT_SIZE));
+    }
+
+    private void read(long pos, byte[] dst, int off, int len) {
+        while (len > 0) {
+            MappedByteBuffer segment = segments[(int) (pos / SEGMENT_SIZE)];
+            int index = (int) (pos % SEGMENT_SIZE);
+            int n = Math.min(len, segment.limit() - index);
+            segment.get(index, dst, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private final class MappedInputStream extends InputStream {
+        private long pos;
+
+        @Override
+        public int read() {
+            return (pos < size) ? byteAt(pos++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (pos >= size) return -1;
+
+            int n = (int) Math.min(len, size - pos);
+            MappedTextFile.this.read(pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - pos);
+        }
+    }
+}
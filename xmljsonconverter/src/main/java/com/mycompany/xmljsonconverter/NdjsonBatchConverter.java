@@ -0,0 +1,216 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Many documents in one stream, as NDJSON (the API's /api/batch): one item per line,
+ * e.g. {"id": 7, "direction": "json-to-xml", "root": "order", "data": "{...}"}. The
+ * input is read line by line and every item is converted on a pool of worker threads;
+ * results are written back in input order as soon as the oldest pending item is done,
+ * one line per item with "index", the "id" if one was given, and either "result" or
+ * "error". At most `window` items are pending, so a large batch neither buffers its
+ * whole input nor takes over the pool.
+ *
+ * A line is read up to maxLineChars characters; a longer one ends the batch with
+ * LineTooLongException. Nothing is flushed before the first result, so the caller
+ * can still answer a long first line with an error of its own.
+ *
+ * A broken item only produces an "error" line, the rest of the batch carries on.
+ */
+public final class NdjsonBatchConverter implements AutoCloseable {
+
+    // The conversions of the three directions, on UTF-8 bytes
+    public interface Documents {
+        byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception;
+
+        byte[] jsonToXml(byte[] json, String root, OutputFormat format) throws Exception;
+
+        byte[] jsonToXmlAuto(byte[] json, OutputFormat format) throws Exception;
+    }
+
+    public static final class LineTooLongException extends IOException {
+        LineTooLongException(int maxChars) {
+            super("Batch line longer than " + maxChars
+                    + " characters; send large documents on their own or to /api/stream");
+        }
+    }
+
+    private final ConversionContext context;
+    private final Documents documents;
+    private final ObjectWriter lineWriter;
+    private final ExecutorService workers;
+    private final int window;
+    private final int maxLineChars;
+
+    public NdjsonBatchConverter(ConversionContext context, Documents documents, int threads, int maxLineChars) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        if (maxLineChars < 1) throw new IllegalArgumentException("maxLineChars must be positive");
+        this.context = context;
+        this.documents = documents;
+        this.maxLineChars = maxLineChars;
+        this.lineWriter = context.jsonWriter(OutputFormat.COMPACT);
+
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.window = threads * 4;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    // format applies to the items that do not name their own
+    public void convert(InputStream in, OutputStream out, OutputFormat format) throws IOException {
+        LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8), maxLineChars);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        int index = 0;
+        int written = 0;
+
+        try {
+            String line;
+            while ((line = nextLine(reader, out, written > 0)) != null) {
+                if (line.isBlank()) continue;
+
+                int itemIndex = index++;
+                String item = line;
+                pending.add(workers.submit(() -> convertItem(itemIndex, item, format)));
+
+                // write what is already done, only wait when the window is full
+                while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() >= window)) {
+                    writeLine(out, pending.poll(), written++ > 0);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeLine(out, pending.poll(), written++ > 0);
+            }
+            out.flush();
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    // Flushes the results written so far before the reader would block on the client
+    private static String nextLine(LineReader reader, OutputStream out, boolean written) throws IOException {
+        if (written && !reader.ready()) out.flush();
+        return reader.readLine();
+    }
+
+    private void writeLine(OutputStream out, Future<byte[]> result, boolean written) throws IOException {
+        if (written && !result.isDone()) out.flush();
+        try {
+            out.write(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        } catch (ExecutionException e) {
+            // convertItem catches everything, this is a bug
+            throw new IOException(e.getCause());
+        }
+        out.write('\n');
+    }
+
+    private byte[] convertItem(int index, String line, OutputFormat defaultFormat) throws IOException {
+        ObjectNode response = context.jsonMapper().createObjectNode();
+        response.put("index", index);
+
+        try {
+            JsonNode item = context.jsonReader().readTree(line);
+            if (!item.isObject()) {
+                throw new IllegalArgumentException("Item must be a JSON object");
+            }
+            if (item.has("id")) response.set("id", item.get("id"));
+
+            response.put("result", convert(item, defaultFormat));
+        } catch (Exception e) {
+            response.put("error", (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName());
+        }
+
+        return lineWriter.writeValueAsBytes(response);
+    }
+
+    private String convert(JsonNode item, OutputFormat defaultFormat) throws Exception {
+        JsonNode data = item.get("data");
+        if (data == null || !data.isTextual()) {
+            throw new IllegalArgumentException("Item needs a \"data\" string");
+        }
+
+        OutputFormat format = item.hasNonNull("format") ? OutputFormat.of(item.get("format").asText()) : defaultFormat;
+        String direction = item.path("direction").asText("");
+
+        // the items travel as JSON strings, the conversions work on UTF-8 bytes
+        byte[] input = data.textValue().getBytes(StandardCharsets.UTF_8);
+        byte[] result = switch (direction) {
+            case "xml-to-json" -> documents.xmlToJson(input, format);
+            case "json-to-xml" -> documents.jsonToXml(input, item.path("root").asText("root"), format);
+            case "json-to-xml-auto" -> documents.jsonToXmlAuto(input, format);
+            default -> throw new IllegalArgumentException("Unknown direction '" + direction
+                    + "', expected xml-to-json, json-to-xml or json-to-xml-auto");
+        };
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    // readLine() that gives up on lines longer than maxChars instead of buffering them
+    private static final class LineReader {
+        private final Reader in;
+        private final int maxChars;
+        private final char[] buf = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int pos;
+        private int limit;
+
+        LineReader(Reader in, int maxChars) {
+            this.in = in;
+            this.maxChars = maxChars;
+        }
+
+        boolean ready() throws IOException {
+            return pos < limit || in.ready();
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (pos == limit) {
+                    int n = in.read(buf, 0, buf.length);
+                    if (n < 0) return (line.length() > 0) ? line.toString() : null;
+                    pos = 0;
+                    limit = n;
+                }
+
+                int start = pos;
+                while (pos < limit && buf[pos] != '\n') pos++;
+                if (line.length() + (pos - start) > maxChars) throw new LineTooLongException(maxChars);
+                line.append(buf, start, pos - start);
+
+                if (pos < limit) {
+                    pos++;
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+                    return line.toString();
+                }
+            }
+        }
+    }
+}
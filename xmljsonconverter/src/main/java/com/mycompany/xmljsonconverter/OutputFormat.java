@@ -0,0 +1,14 @@
+package com.mycompany.xmljsonconverter;
+
+// PRETTY indents the output (the default), COMPACT writes no whitespace at all
+public enum OutputFormat {
+    PRETTY,
+    COMPACT;
+
+    // "pretty" or "compact" in any case, as in the API's format parameter; null or blank is PRETTY
+    public static OutputFormat of(String name) {
+        if (name == null || name.isBlank() || name.equalsIgnoreCase("pretty")) return PRETTY;
+        if (name.equalsIgnoreCase("compact")) return COMPACT;
+        throw new IllegalArgumentException("Unknown format '" + name + "', expected pretty or compact");
+    }
+}
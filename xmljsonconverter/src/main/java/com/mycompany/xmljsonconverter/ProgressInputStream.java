@@ -0,0 +1,76 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/*
+ * Reports the number of bytes read so far to a listener. Once the cancel check
+ * returns true every read fails, which stops the parser consuming the stream.
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final LongConsumer progress;
+    private final BooleanSupplier cancelled;
+    private long count;
+
+    public ProgressInputStream(InputStream in, LongConsumer progress, BooleanSupplier cancelled) {
+        super(in);
+        this.progress = progress;
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkCancelled();
+        int b = super.read();
+        if (b >= 0) advance(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        int n = super.read(b, off, len);
+        if (n > 0) advance(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkCancelled();
+        long skipped = super.skip(n);
+        if (skipped > 0) advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    public long count() {
+        return count;
+    }
+
+    private void advance(long n) {
+        count += n;
+        progress.accept(count);
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled.getAsBoolean()) throw new InterruptedIOException("Cancelled");
+    }
+}
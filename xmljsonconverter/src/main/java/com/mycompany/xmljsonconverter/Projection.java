@@ -0,0 +1,183 @@
+package com.mycompany.xmljsonconverter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Selects the parts of a document a conversion should keep, by path. Paths address
+ * the JSON side of the conversion (for XML input, the JSON the XML converts to):
+ *
+ *   /library/book/title            XPath-style, from the root element
+ *   /library/book/@id              @id is "id" under "@attributes", text() is "#text"
+ *   $.library.book[*].title        JSONPath-style; $['library'] works too
+ *
+ * * stands for any name. Arrays are transparent: a step applies to every item, so
+ * [*] may be left out. Descendant steps (//, ..), predicates and array indexes are
+ * not supported.
+ *
+ * The projection is applied to the input: a selected node is kept whole, the objects
+ * (elements) leading to one are kept with only their selected members, and everything
+ * else is skipped by the parser without being converted.
+ */
+public final class Projection {
+
+    // Keeps everything: the step conversions without a projection start from
+    static final Step ALL = new Step(true);
+
+    private final Step root;
+
+    private Projection(Step root) {
+        this.root = root;
+    }
+
+    public static Projection of(String... paths) {
+        return of(List.of(paths));
+    }
+
+    public static Projection of(List<String> paths) {
+        if (paths.isEmpty()) throw new IllegalArgumentException("No projection paths");
+
+        Step root = new Step();
+        for (String path : paths) {
+            Step step = root;
+            for (String name : steps(path)) {
+                if (name.equals("*")) {
+                    if (step.any == null) step.any = new Step();
+                    step = step.any;
+                } else {
+                    step = step.children.computeIfAbsent(name, k -> new Step());
+                }
+            }
+            step.selected = true;
+        }
+        root.normalize();
+        return new Projection(root);
+    }
+
+    // Step of the whole document ($)
+    Step root() {
+        return root;
+    }
+
+    private static List<String> steps(String path) {
+        String p = path.strip();
+        if (p.isEmpty()) throw new IllegalArgumentException("Empty projection path");
+        return p.startsWith("$") ? jsonPathSteps(p) : xpathSteps(p);
+    }
+
+    private static List<String> xpathSteps(String path) {
+        if (path.contains("//")) {
+            throw new IllegalArgumentException("Descendant steps (//) are not supported: " + path);
+        }
+
+        List<String> steps = new ArrayList<>();
+        String p = path.startsWith("/") ? path.substring(1) : path;
+        if (p.isEmpty()) return steps;
+
+        for (String segment : p.split("/", -1)) {
+            if (segment.isEmpty() || segment.indexOf('[') >= 0
+                    || (segment.indexOf('(') >= 0 && !segment.equals("text()"))) {
+                throw new IllegalArgumentException("Unsupported path step '" + segment + "' in " + path);
+            }
+            if (segment.equals("text()")) {
+                steps.add("#text");
+            } else if (segment.startsWith("@") && !segment.equals("@attributes") && !segment.equals("@*")) {
+                steps.add("@attributes");
+                steps.add(segment.substring(1));
+            } else if (segment.equals("@*")) {
+                steps.add("@attributes");
+            } else {
+                steps.add(segment);
+            }
+        }
+        return steps;
+    }
+
+    private static List<String> jsonPathSteps(String path) {
+        List<String> steps = new ArrayList<>();
+        int i = 1;
+
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                if (i + 1 < path.length() && path.charAt(i + 1) == '.') {
+                    throw new IllegalArgumentException("Descendant steps (..) are not supported: " + path);
+                }
+                int end = i + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                if (end == i + 1) throw new IllegalArgumentException("Empty step in " + path);
+                steps.add(path.substring(i + 1, end));
+                i = end;
+            } else if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) throw new IllegalArgumentException("Unclosed [ in " + path);
+                String inner = path.substring(i + 1, end).strip();
+                if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+                        && inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+                    steps.add(inner.substring(1, inner.length() - 1));
+                } else if (!inner.equals("*")) {
+                    // [*] is the items of an array, which steps go through anyway
+                    throw new IllegalArgumentException("Unsupported selector [" + inner + "] in " + path);
+                }
+                i = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' at " + i + " in " + path);
+            }
+        }
+        return steps;
+    }
+
+    /*
+     * One node of the path trie. A selected step keeps everything below it, so its
+     * children are itself. A named child also gets what the * sibling selects.
+     */
+    static final class Step {
+        private final Map<String, Step> children = new HashMap<>();
+        private Step any;
+        private boolean selected;
+
+        private Step() {
+        }
+
+        private Step(boolean selected) {
+            this.selected = selected;
+        }
+
+        // The step of a member or child element, null when it is not on any path
+        Step child(String name) {
+            if (selected) return this;
+            Step step = children.get(name);
+            return (step != null) ? step : any;
+        }
+
+        boolean selected() {
+            return selected;
+        }
+
+        private void normalize() {
+            if (selected) {
+                children.clear();
+                any = null;
+                return;
+            }
+            if (any != null) {
+                for (Step step : children.values()) step.merge(any);
+            }
+            for (Step step : children.values()) step.normalize();
+            if (any != null) any.normalize();
+        }
+
+        private void merge(Step other) {
+            selected |= other.selected;
+            for (Map.Entry<String, Step> e : other.children.entrySet()) {
+                children.computeIfAbsent(e.getKey(), k -> new Step()).merge(e.getValue());
+            }
+            if (other.any != null) {
+                if (any == null) any = new Step();
+                any.merge(other.any);
+            }
+        }
+    }
+}
@@ -21,6 +21,23 @@ public class SimpleJsonParser {
         return v;
     }
 
+    // Same document as parse(), as a CompactTree; unescaped strings stay ranges of the input
+    public CompactTree parseTree() {
+        return parseTree(ConversionContext.shared().symbols());
+    }
+
+    public CompactTree parseTree(SymbolTable symbols) {
+        CompactTree tree = new CompactTree(s, symbols);
+        skipWs();
+        tree.setRoot(parseValueInto(tree, CompactTree.NONE));
+        skipWs();
+        if (i != s.length()) {
+            throw new IllegalArgumentException("Extra characters at position " + i);
+        }
+        tree.finish();
+        return tree;
+    }
+
     private Object parseValue() {
         skipWs();
         if (i >= s.length()) throw new IllegalArgumentException("Unexpected end of JSON");
@@ -39,6 +56,95 @@ public class SimpleJsonParser {
         throw new IllegalArgumentException("Unexpected char '" + c + "' at position " + i);
     }
 
+    private int parseValueInto(CompactTree tree, int name) {
+        skipWs();
+        if (i >= s.length()) throw new IllegalArgumentException("Unexpected end of JSON");
+
+        char c = s.charAt(i);
+
+        if (c == '{') return parseObjectInto(tree, name);
+        if (c == '[') return parseArrayInto(tree, name);
+        if (c == '"') return parseStringInto(tree, name);
+        if (c == 't') { expect("true"); return tree.newNode(CompactTree.TRUE, name); }
+        if (c == 'f') { expect("false"); return tree.newNode(CompactTree.FALSE, name); }
+        if (c == 'n') { expect("null"); return tree.newNode(CompactTree.NULL, name); }
+
+        if (c == '-' || Character.isDigit(c)) return parseNumberInto(tree, name);
+
+        throw new IllegalArgumentException("Unexpected char '" + c + "' at position " + i);
+    }
+
+    private int parseObjectInto(CompactTree tree, int name) {
+        int object = tree.newNode(CompactTree.OBJECT, name);
+        expectChar('{');
+        skipWs();
+
+        if (peek('}')) { i++; return object; }
+
+        while (true) {
+            skipWs();
+            if (!peek('"')) throw new IllegalArgumentException("Expected string key at position " + i);
+
+            int key = parseKey(tree);
+
+            skipWs();
+            expectChar(':');
+
+            tree.put(object, parseValueInto(tree, key));
+
+            skipWs();
+            if (peek('}')) { i++; break; }
+            expectChar(',');
+        }
+        return object;
+    }
+
+    private int parseArrayInto(CompactTree tree, int name) {
+        int array = tree.newNode(CompactTree.ARRAY, name);
+        expectChar('[');
+        skipWs();
+
+        if (peek(']')) { i++; return array; }
+
+        while (true) {
+            tree.append(array, parseValueInto(tree, CompactTree.NONE));
+
+            skipWs();
+            if (peek(']')) { i++; break; }
+            expectChar(',');
+        }
+        return array;
+    }
+
+    // Key symbol, looked up straight from the input when it has no escapes
+    private int parseKey(CompactTree tree) {
+        int end = plainStringEnd();
+        if (end < 0) return tree.symbol(parseString());
+
+        int key = tree.symbol(s, i + 1, end);
+        i = end + 1;
+        return key;
+    }
+
+    private int parseStringInto(CompactTree tree, int name) {
+        int end = plainStringEnd();
+        if (end < 0) return tree.newString(name, parseString());
+
+        int node = tree.newSourceString(name, i + 1, end);
+        i = end + 1;
+        return node;
+    }
+
+    // Position of the closing quote of the string at i, or -1 if it has escapes (or no end)
+    private int plainStringEnd() {
+        for (int j = i + 1; j < s.length(); j++) {
+            char c = s.charAt(j);
+            if (c == '"') return j;
+            if (c == '\\') return -1;
+        }
+        return -1;
+    }
+
     private Map<String, Object> parseObject() {
         Map<String, Object> map = new LinkedHashMap<>();
         expectChar('{');
@@ -119,6 +225,35 @@ public class SimpleJsonParser {
 
     private Number parseNumber() {
         int start = i;
+        boolean isFloat = scanNumber();
+        String num = s.substring(start, i);
+
+        try {
+            if (isFloat) return Double.parseDouble(num);
+            long L = Long.parseLong(num);
+            if (L >= Integer.MIN_VALUE && L <= Integer.MAX_VALUE) return (int) L;
+            return L;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number: " + num);
+        }
+    }
+
+    // Same number as parseNumber, without boxing it
+    private int parseNumberInto(CompactTree tree, int name) {
+        int start = i;
+        boolean isFloat = scanNumber();
+
+        try {
+            if (isFloat) return tree.newDouble(name, Double.parseDouble(s.substring(start, i)));
+            return tree.newLong(name, Long.parseLong(s, start, i, 10));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number: " + s.substring(start, i));
+        }
+    }
+
+    // Moves past the number at i; true if it has a fraction or an exponent
+    private boolean scanNumber() {
+        int start = i;
 
         if (peek('-')) i++;
         int digitsStart = i;
@@ -140,20 +275,10 @@ public class SimpleJsonParser {
             while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
         }
 
-        String num = s.substring(start, i);
-
-        if (digitsStart == i || num.equals("-")) {
+        if (digitsStart == i || (i - start == 1 && s.charAt(start) == '-')) {
             throw new IllegalArgumentException("Invalid number at position " + start);
         }
-
-        try {
-            if (isFloat) return Double.parseDouble(num);
-            long L = Long.parseLong(num);
-            if (L >= Integer.MIN_VALUE && L <= Integer.MAX_VALUE) return (int) L;
-            return L;
-        } catch (NumberFormatException ex) {
-            throw new IllegalArgumentException("Invalid number: " + num);
-        }
+        return isFloat;
     }
 
     private void skipWs() {
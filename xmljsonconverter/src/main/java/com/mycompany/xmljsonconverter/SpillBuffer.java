@@ -0,0 +1,124 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Text held back by the streaming writers until they know where it goes.
+ * Kept in memory up to a limit, then moved to a temporary file, so holding back a
+ * large subtree does not hold it on the heap.
+ */
+final class SpillBuffer implements Appendable {
+
+    private final int limit;
+    private final StringBuilder memory = new StringBuilder();
+    private Path file;
+    private Writer spill;
+
+    SpillBuffer(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public SpillBuffer append(CharSequence s) throws IOException {
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public SpillBuffer append(CharSequence s, int start, int end) throws IOException {
+        if (spill != null) {
+            spill.append(s, start, end);
+            return this;
+        }
+        memory.append(s, start, end);
+        if (memory.length() > limit) spill();
+        return this;
+    }
+
+    @Override
+    public SpillBuffer append(char c) throws IOException {
+        if (spill != null) {
+            spill.write(c);
+            return this;
+        }
+        memory.append(c);
+        if (memory.length() > limit) spill();
+        return this;
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile("xmljson-", ".pending");
+        spill = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        spill.append(memory);
+        memory.setLength(0);
+        memory.trimToSize();
+    }
+
+    boolean isEmpty() {
+        return spill == null && memory.length() == 0;
+    }
+
+    // Appends the text to out and empties the buffer. Shifted, every line after the first
+    // gets two more spaces of indentation; a line break at the very end gets none
+    void moveTo(Appendable out, boolean shifted) throws IOException {
+        if (spill == null) {
+            copy(out, memory, shifted, false);
+            memory.setLength(0);
+            return;
+        }
+
+        spill.close();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            char[] chunk = new char[8192];
+            boolean lineBreak = false;
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                lineBreak = copy(out, CharBuffer.wrap(chunk, 0, n), shifted, lineBreak);
+            }
+        } finally {
+            discard();
+        }
+    }
+
+    // Drops the text, deleting the temporary file if there is one
+    void discard() throws IOException {
+        memory.setLength(0);
+        if (spill == null) return;
+        try {
+            spill.close();
+        } finally {
+            Files.deleteIfExists(file);
+            spill = null;
+            file = null;
+        }
+    }
+
+    // lineBreak: the text before this chunk ended with a line break, the shift of the next line is still owed
+    private static boolean copy(Appendable out, CharSequence text, boolean shifted, boolean lineBreak)
+            throws IOException {
+        if (!shifted) {
+            out.append(text);
+            return false;
+        }
+
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (lineBreak) {
+                out.append("  ");
+                lineBreak = false;
+            }
+            if (text.charAt(i) == '\n') {
+                out.append(text, start, i + 1);
+                start = i + 1;
+                lineBreak = true;
+            }
+        }
+        out.append(text, start, text.length());
+        return lineBreak;
+    }
+}
@@ -0,0 +1,370 @@
+package com.mycompany.xmljsonconverter;
+
+import com.mycompany.xmljsonconverter.JsonPullParser.Token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * JSON -> XML writer driven by JsonPullParser tokens. Produces the XML of
+ * ManualConverterService.buildXml without materializing the JSON tree, except where
+ * that would take the whole object first:
+ * - a child key that repeats in an object is written every time, where buildXml keeps
+ *   the last value in the place of the first (repeated "@attributes", "#text" and
+ *   attribute names do go by the last value, as there);
+ * - "@attributes" has to appear before the first child element of an object (the
+ *   start tag is already written by then), and a "#text" value that comes after child
+ *   elements is written after them instead of after the start tag;
+ * - auto-root puts a lone top-level "@attributes" or "#text" field into <root> instead
+ *   of taking it as the element name.
+ *
+ * Auto-root has to see past the first top-level field to know whether it names the
+ * root element or is one of several children of <root>. Its value is held back
+ * (spilling to a temporary file past SPILL_CHARS, see SpillBuffer) until the next
+ * token tells. A first field named "@attributes" or "#text" always goes to <root>.
+ *
+ * With a Projection, members off its paths are skipped token by token without being
+ * written, and scalars are only written where a path selects them.
+ */
+public class StreamingJsonToXml {
+
+    private final JsonPullParser parser;
+    private final Appendable target;
+    private final Layout layout;
+    private final SymbolTable symbols;
+    private final Projection.Step projection;
+    private final int spillChars;
+    // target, or the buffer of a held-back auto-root field
+    private Appendable out;
+
+    public StreamingJsonToXml(JsonPullParser parser, Appendable out) {
+        this(parser, out, OutputFormat.PRETTY);
+    }
+
+    public StreamingJsonToXml(JsonPullParser parser, Appendable out, OutputFormat format) {
+        this(parser, out, format, ConversionContext.shared().symbols());
+    }
+
+    public StreamingJsonToXml(JsonPullParser parser, Appendable out, OutputFormat format, SymbolTable symbols) {
+        this(parser, out, format, symbols, null);
+    }
+
+    // A null projection converts everything
+    public StreamingJsonToXml(JsonPullParser parser, Appendable out, OutputFormat format, SymbolTable symbols,
+                              Projection projection) {
+        this(parser, out, format, symbols, projection, StreamingXmlToJson.SPILL_CHARS);
+    }
+
+    StreamingJsonToXml(JsonPullParser parser, Appendable out, OutputFormat format, SymbolTable symbols,
+                       Projection projection, int spillChars) {
+        this.parser = parser;
+        this.projection = (projection != null) ? projection.root() : Projection.ALL;
+        this.target = out;
+        this.out = out;
+        this.layout = Layout.of(format);
+        this.symbols = symbols;
+        this.spillChars = spillChars;
+    }
+
+    public void convert(String rootName) throws IOException {
+        parser.nextToken();
+        writeDeclaration();
+        writeRoot(symbols.intern(rootName), projection);
+        expectEnd();
+    }
+
+    // The single top-level field is the root element, anything else goes into <root>
+    public void convertAutoRoot() throws IOException {
+        Token first = parser.nextToken();
+        writeDeclaration();
+
+        SymbolTable.Symbol root = symbols.intern("root");
+        if (first != Token.START_OBJECT) {
+            writeRoot(root, projection);
+            expectEnd();
+            return;
+        }
+
+        if (parser.nextToken() == Token.END_OBJECT) {
+            new Element(root, 0).end();
+            expectEnd();
+            return;
+        }
+
+        SymbolTable.Symbol name = parser.nameSymbol(symbols);
+        Token value = parser.nextToken();
+        Projection.Step step = projection.child(name.name);
+
+        if (name.name.equals("@attributes") || name.name.equals("#text")) {
+            Element element = new Element(root, 0);
+            element.member(name, value, step);
+            parser.nextToken();
+            writeMembers(element, projection);
+            expectEnd();
+            return;
+        }
+
+        // a scalar that is not selected: an empty root element on its own, nothing as a child
+        boolean dropped = step != null && !step.selected()
+                && value != Token.START_OBJECT && value != Token.START_ARRAY;
+        SpillBuffer held = new SpillBuffer(spillChars);
+        try {
+            if (step == null || dropped) {
+                parser.skipChildren();
+            } else {
+                out = held;
+                writeValue(name, 0, step);
+                out = target;
+            }
+
+            if (parser.nextToken() == Token.END_OBJECT) {
+                if (step == null) {
+                    new Element(root, 0).end();
+                } else if (dropped) {
+                    out.append(name.emptyTag);
+                    layout.newline(out);
+                } else {
+                    held.moveTo(out, false);
+                }
+            } else {
+                // more fields: the held-back value is the first child of <root>, one level deeper
+                Element element = new Element(root, 0);
+                if (!held.isEmpty()) {
+                    element.closeStartTag();
+                    layout.indent(out, 1);
+                    held.moveTo(out, layout.pretty);
+                }
+                writeMembers(element, projection);
+            }
+        } finally {
+            out = target;
+            held.discard();
+        }
+        expectEnd();
+    }
+
+    private void writeDeclaration() throws IOException {
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        layout.newline(out);
+    }
+
+    private void expectEnd() throws IOException {
+        parser.nextToken();
+    }
+
+    // The root element is written even when the projection selects nothing in it
+    private void writeRoot(SymbolTable.Symbol name, Projection.Step step) throws IOException {
+        Token t = parser.currentToken();
+        if (step.selected() || t == Token.START_OBJECT || t == Token.START_ARRAY) {
+            writeValue(name, 0, step);
+            return;
+        }
+        out.append(name.emptyTag);
+        layout.newline(out);
+    }
+
+    // Writes the value the parser is positioned on as one (or, for arrays, several) <name> elements
+    private void writeValue(SymbolTable.Symbol name, int indent, Projection.Step step) throws IOException {
+        Token t = parser.currentToken();
+
+        if (!step.selected() && t != Token.START_OBJECT && t != Token.START_ARRAY) {
+            return; // a scalar on the way to a path that goes deeper
+        }
+
+        switch (t) {
+            case VALUE_NULL -> {
+                layout.indent(out, indent);
+                out.append(name.emptyTag);
+                layout.newline(out);
+            }
+            case START_ARRAY -> {
+                while (parser.nextToken() != Token.END_ARRAY) {
+                    writeValue(name, indent, step);
+                }
+            }
+            case START_OBJECT -> {
+                Element element = new Element(name, indent);
+                parser.nextToken();
+                writeMembers(element, step);
+            }
+            default -> {
+                layout.indent(out, indent);
+                out.append(name.openTag);
+                Escaping.appendXml(out, scalarText());
+                out.append(name.closeTag);
+                layout.newline(out);
+            }
+        }
+    }
+
+    // The members from the one the parser is on to the end of the object, then the end tag
+    private void writeMembers(Element element, Projection.Step step) throws IOException {
+        for (Token t = parser.currentToken(); t != Token.END_OBJECT; t = parser.nextToken()) {
+            SymbolTable.Symbol key = parser.nameSymbol(symbols);
+            Token value = parser.nextToken();
+            element.member(key, value, step.child(key.name));
+        }
+        element.end();
+    }
+
+    // name -> value, the last one winning like in the tree; a non-object clears them
+    private Map<String, String> readAttributes(Token value, Projection.Step step) throws IOException {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (value != Token.START_OBJECT) {
+            parser.skipChildren();
+            return attributes;
+        }
+
+        while (parser.nextToken() != Token.END_OBJECT) {
+            String attr = parser.nameSymbol(symbols).name;
+            Token v = parser.nextToken();
+            Projection.Step selected = step.child(attr);
+            if (selected == null || !selected.selected()) {
+                parser.skipChildren();
+                continue;
+            }
+            attributes.put(attr, String.valueOf(readValue(v)));
+        }
+        return attributes;
+    }
+
+    private String skip() throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+
+    private String readText(Token value) throws IOException {
+        if (value == Token.VALUE_NULL) return null;
+
+        String t = String.valueOf(readValue(value));
+        return ManualConverterService.isBlank(t) ? null : t;
+    }
+
+    // The value the parser is on as the Map/List tree held it, for the values buildXml
+    // writes with String.valueOf ("@attributes" members, "#text")
+    private Object readValue(Token value) throws IOException {
+        switch (value) {
+            case START_OBJECT -> {
+                Map<String, Object> map = new LinkedHashMap<>();
+                while (parser.nextToken() != Token.END_OBJECT) {
+                    String key = parser.getText();
+                    map.put(key, readValue(parser.nextToken()));
+                }
+                return map;
+            }
+            case START_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                for (Token t = parser.nextToken(); t != Token.END_ARRAY; t = parser.nextToken()) {
+                    list.add(readValue(t));
+                }
+                return list;
+            }
+            case VALUE_NULL -> {
+                return null;
+            }
+            default -> {
+                return scalarText();
+            }
+        }
+    }
+
+    // String.valueOf of the value SimpleJsonParser would have produced
+    private String scalarText() {
+        return parser.currentToken() == Token.VALUE_NUMBER
+                ? String.valueOf(parser.getNumber())
+                : parser.getText();
+    }
+
+    // An element written from the members of a JSON object: the start tag stays open for
+    // "@attributes" until the first child element or the end
+    private final class Element {
+        private final SymbolTable.Symbol name;
+        private final int indent;
+        private boolean startTagOpen = true;
+        private Map<String, String> attributes = Map.of();
+        private String text;
+
+        Element(SymbolTable.Symbol name, int indent) throws IOException {
+            this.name = name;
+            this.indent = indent;
+            layout.indent(out, indent);
+            out.append(name.startTag);
+        }
+
+        // The parser is on the member's value; a null step skips it
+        void member(SymbolTable.Symbol key, Token value, Projection.Step step) throws IOException {
+            if (step == null) {
+                parser.skipChildren();
+                return;
+            }
+
+            if (key.name.equals("@attributes")) {
+                if (!startTagOpen) {
+                    throw new IllegalArgumentException("\"@attributes\" of <" + name
+                            + "> must come before its child elements in streaming mode");
+                }
+                attributes = readAttributes(value, step);
+                return;
+            }
+
+            if (key.name.equals("#text")) {
+                String t = step.selected() ? readText(value) : skip();
+                if (startTagOpen) {
+                    text = t;
+                } else if (t != null) {
+                    layout.indent(out, indent + 1);
+                    Escaping.appendXml(out, t);
+                    layout.newline(out);
+                }
+                return;
+            }
+
+            // a scalar on the way to a path that goes deeper, dropped before it can open the tag
+            if (!step.selected() && value != Token.START_OBJECT && value != Token.START_ARRAY) {
+                return;
+            }
+
+            closeStartTag();
+            writeValue(key, indent + 1, step);
+        }
+
+        void closeStartTag() throws IOException {
+            if (!startTagOpen) return;
+            writeAttributes();
+            out.append(">");
+            if (text != null) Escaping.appendXml(out, text);
+            layout.newline(out);
+            startTagOpen = false;
+        }
+
+        void end() throws IOException {
+            if (startTagOpen) {
+                writeAttributes();
+                if (text == null) {
+                    out.append("/>");
+                } else {
+                    out.append(">");
+                    Escaping.appendXml(out, text);
+                    out.append(name.closeTag);
+                }
+                layout.newline(out);
+                return;
+            }
+
+            layout.indent(out, indent);
+            out.append(name.closeTag);
+            layout.newline(out);
+        }
+
+        private void writeAttributes() throws IOException {
+            for (Map.Entry<String, String> attr : attributes.entrySet()) {
+                out.append(' ').append(attr.getKey()).append("=\"");
+                Escaping.appendXml(out, attr.getValue());
+                out.append('"');
+            }
+        }
+    }
+}
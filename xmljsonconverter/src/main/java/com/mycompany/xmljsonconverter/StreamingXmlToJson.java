@@ -0,0 +1,310 @@
+package com.mycompany.xmljsonconverter;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.*;
+
+/*
+ * XML -> JSON writer driven by StAX events. It follows the same rules as
+ * ManualConverterService.elementToValue (attributes under "@attributes",
+ * direct text under "#text", repeated elements as arrays) but writes each
+ * element as soon as it is closed instead of building a tree first.
+ *
+ * The first element of a run of siblings is held back, with everything in
+ * it, because we cannot know whether it is a single value or the start of an
+ * array until the next sibling shows up. For a wrapped document
+ * (<feed><items><item/>...) that is nearly the whole document, so what is held
+ * back moves from memory to a temporary file past SPILL_CHARS characters per
+ * nesting level, and the heap stays bounded whatever the shape.
+ *
+ * With a Projection, elements off its paths are skipped event by event without
+ * being looked at, and the elements leading to a selected one keep only their
+ * selected attributes and text.
+ *
+ * An element name that comes back after other siblings (<a/><b/><a/>) would have to
+ * join an array that is already written, so it fails with RepeatedElementException;
+ * the tree conversion takes such documents.
+ */
+public class StreamingXmlToJson {
+
+    // Thrown part-way through the output, which is incomplete by then
+    public static final class RepeatedElementException extends IllegalArgumentException {
+        RepeatedElementException(SymbolTable.Symbol name) {
+            super("Element <" + name + "> repeats after other siblings; "
+                    + "streaming mode needs repeated elements to be adjacent");
+        }
+    }
+
+    // 2 MB of held-back text per nesting level before it goes to a temporary file
+    static final int SPILL_CHARS = 1 << 20;
+
+    private final Appendable out;
+    private final Layout layout;
+    private final SymbolTable symbols;
+    private final SymbolTable.Symbol attributesKey;
+    private final SymbolTable.Symbol textKey;
+    private final Projection.Step projection;
+    private final int spillChars;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final StringBuilder textNode = new StringBuilder();
+
+    public StreamingXmlToJson(Appendable out) {
+        this(out, OutputFormat.PRETTY);
+    }
+
+    public StreamingXmlToJson(Appendable out, OutputFormat format) {
+        this(out, format, ConversionContext.shared().symbols());
+    }
+
+    public StreamingXmlToJson(Appendable out, OutputFormat format, SymbolTable symbols) {
+        this(out, format, symbols, null);
+    }
+
+    // A null projection converts everything
+    public StreamingXmlToJson(Appendable out, OutputFormat format, SymbolTable symbols, Projection projection) {
+        this(out, format, symbols, projection, SPILL_CHARS);
+    }
+
+    StreamingXmlToJson(Appendable out, OutputFormat format, SymbolTable symbols, Projection projection,
+                       int spillChars) {
+        this.out = out;
+        this.spillChars = spillChars;
+        this.projection = (projection != null) ? projection.root() : Projection.ALL;
+        this.layout = Layout.of(format);
+        this.symbols = symbols;
+        this.attributesKey = symbols.intern("@attributes");
+        this.textKey = symbols.intern("#text");
+    }
+
+    public void convert(XMLStreamReader reader) throws XMLStreamException, IOException {
+        try {
+            events(reader);
+        } finally {
+            // a failed conversion leaves frames behind, with their temporary files
+            for (Frame frame : stack) {
+                if (frame.pending != null) frame.pending.discard();
+            }
+            stack.clear();
+        }
+        reader.close();
+    }
+
+    private void events(XMLStreamReader reader) throws XMLStreamException, IOException {
+        boolean cdata = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            // a CDATA section is a text node of its own in the DOM; the parser may split it into several events
+            if (cdata != (event == XMLStreamConstants.CDATA)) {
+                commitText();
+                cdata = !cdata;
+            }
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    commitText();
+                    Frame parent = stack.peek();
+                    String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                    Projection.Step step = (parent != null ? parent.step : projection).child(name);
+                    if (step != null) {
+                        startElement(reader, name, step);
+                        continue;
+                    }
+                    skipElement(reader);
+                    if (parent == null) {
+                        // not even the root is selected
+                        out.append("{}");
+                        layout.newline(out);
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    commitText();
+                    endElement();
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE, XMLStreamConstants.CDATA -> {
+                    if (!stack.isEmpty() && stack.peek().keepText) {
+                        textNode.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                default -> commitText();
+            }
+        }
+    }
+
+    // Skips the element the reader is on, with everything in it
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    private void startElement(XMLStreamReader reader, String qualifiedName, Projection.Step step)
+            throws IOException {
+        SymbolTable.Symbol name = symbols.intern(qualifiedName);
+        Frame parent = stack.peek();
+        Frame frame;
+
+        if (parent == null) {
+            out.append("{");
+            layout.newline(out, 1);
+            out.append(name.jsonKey);
+            out.append(layout.colon());
+            frame = new Frame(out, 1);
+        } else {
+            frame = openChild(parent, name);
+        }
+        frame.step = step;
+        Projection.Step text = step.child("#text");
+        frame.keepText = text != null && text.selected();
+        stack.push(frame);
+
+        Projection.Step attributes = step.child("@attributes");
+        int count = (attributes != null) ? reader.getAttributeCount() : 0;
+        // the DOM keeps attributes sorted by name, do the same here
+        SortedMap<String, String> attrs = null;
+        for (int i = 0; i < count; i++) {
+            String attr = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            Projection.Step selected = attributes.child(attr);
+            if (selected == null || !selected.selected()) continue;
+            if (attrs == null) attrs = new TreeMap<>();
+            attrs.put(attr, reader.getAttributeValue(i));
+        }
+
+        if (attrs != null) {
+            frame.open();
+            frame.memberPrefix(attributesKey);
+            frame.out.append("{");
+            int k = 0;
+            for (var e : attrs.entrySet()) {
+                if (k++ > 0) frame.out.append(",");
+                layout.newline(frame.out, frame.level + 2);
+                appendString(frame.out, e.getKey());
+                frame.out.append(layout.colon());
+                appendString(frame.out, e.getValue());
+            }
+            layout.newline(frame.out, frame.level + 1);
+            frame.out.append("}");
+        }
+    }
+
+    private Frame openChild(Frame parent, SymbolTable.Symbol name) throws IOException {
+        parent.open();
+
+        if (parent.runName != null && name.name.equals(parent.runName.name)) {
+            if (parent.runCount == 1) {
+                parent.memberPrefix(name);
+                parent.out.append("[");
+                layout.newline(parent.out, parent.level + 2);
+                // the value was rendered as a member, one level less deep than an array item
+                parent.pending.moveTo(parent.out, layout.pretty);
+            }
+            parent.out.append(",");
+            layout.newline(parent.out, parent.level + 2);
+            parent.runCount++;
+            return new Frame(parent.out, parent.level + 2);
+        }
+
+        parent.flushRun();
+        if (!parent.seen.add(name.name)) {
+            throw new RepeatedElementException(name);
+        }
+        parent.runName = name;
+        parent.runCount = 1;
+        if (parent.pending == null) parent.pending = new SpillBuffer(spillChars);
+        return new Frame(parent.pending, parent.level + 1);
+    }
+
+    private void endElement() throws IOException {
+        Frame frame = stack.pop();
+        frame.flushRun();
+
+        String text = frame.text.toString().trim();
+        if (!frame.open) {
+            appendString(frame.out, text);
+        } else {
+            if (!text.isEmpty()) {
+                frame.memberPrefix(textKey);
+                appendString(frame.out, text);
+            }
+            layout.newline(frame.out, frame.level);
+            frame.out.append("}");
+        }
+
+        if (stack.isEmpty()) {
+            layout.newline(out, 0);
+            out.append("}");
+            layout.newline(out);
+        }
+    }
+
+    private void commitText() {
+        if (textNode.length() == 0) return;
+        Frame frame = stack.peek();
+        if (frame != null && !textNode.toString().isBlank()) {
+            frame.text.append(textNode);
+        }
+        textNode.setLength(0);
+    }
+
+    private static void appendString(Appendable out, String s) throws IOException {
+        out.append('"');
+        Escaping.appendJson(out, s);
+        out.append('"');
+    }
+
+    private static String qualifiedName(String prefix, String local) {
+        return (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+    }
+
+    private final class Frame {
+        final Appendable out;
+        final int level;
+        final StringBuilder text = new StringBuilder();
+        final Set<String> seen = new HashSet<>();
+        Projection.Step step;
+        boolean keepText;
+
+        boolean open;
+        int members;
+
+        SymbolTable.Symbol runName;
+        int runCount;
+        SpillBuffer pending;
+
+        Frame(Appendable out, int level) {
+            this.out = out;
+            this.level = level;
+        }
+
+        void open() throws IOException {
+            if (!open) {
+                out.append("{");
+                open = true;
+            }
+        }
+
+        void memberPrefix(SymbolTable.Symbol key) throws IOException {
+            if (members++ > 0) out.append(",");
+            layout.newline(out, level + 1);
+            out.append(key.jsonKey);
+            out.append(layout.colon());
+        }
+
+        void flushRun() throws IOException {
+            if (runName == null) return;
+
+            if (runCount == 1) {
+                memberPrefix(runName);
+                pending.moveTo(out, false);
+            } else {
+                layout.newline(out, level + 1);
+                out.append("]");
+            }
+            runName = null;
+            runCount = 0;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mycompany.xmljsonconverter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Element and field names shared across conversions. A name is looked up from the
+ * characters it was parsed from, so a known name costs a hash and a compare instead
+ * of a new String, and its markup ("<book>", "</book>", "\"book\"") is built once.
+ *
+ * The table is a fixed array of slots, so it never grows: a name whose slots are
+ * taken replaces one of the entries (the old Symbol stays valid for whoever holds
+ * it, it is just no longer shared). Very long names are not kept at all.
+ * Lookups take no lock; Symbols are immutable and published through the array.
+ */
+public final class SymbolTable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_NAME_LENGTH = 64;
+
+    public static final class Symbol {
+        final String name;
+        final int hash;
+        // "<name", "<name>", "</name>", "<name/>" and the quoted JSON key
+        final String startTag;
+        final String openTag;
+        final String closeTag;
+        final String emptyTag;
+        final String jsonKey;
+
+        private Symbol(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+            this.startTag = "<" + name;
+            this.openTag = startTag + ">";
+            this.closeTag = "</" + name + ">";
+            this.emptyTag = startTag + "/>";
+
+            StringBuilder key = new StringBuilder(name.length() + 2).append('"');
+            Escaping.appendJson(key, name);
+            this.jsonKey = key.append('"').toString();
+        }
+
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final AtomicReferenceArray<Symbol> slots;
+    private final int mask;
+
+    public SymbolTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // capacity is rounded up to a power of two
+    public SymbolTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public Symbol intern(String name) {
+        return intern(name, name.hashCode(), name, 0, name.length());
+    }
+
+    public Symbol intern(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);
+        return intern(null, h, s, start, end);
+    }
+
+    // h is the String.hashCode of s[start, end); name is that String if the caller has it
+    private Symbol intern(String name, int h, CharSequence s, int start, int end) {
+        int slot = (h ^ (h >>> 16)) & mask;
+        int other = (slot + 1) & mask;
+
+        Symbol first = slots.get(slot);
+        if (first != null && matches(first, name, h, s, start, end)) return first;
+        Symbol second = slots.get(other);
+        if (second != null && matches(second, name, h, s, start, end)) return second;
+
+        Symbol created = new Symbol(name != null ? name : s.subSequence(start, end).toString(), h);
+        if (end - start > MAX_NAME_LENGTH) return created;
+
+        // an empty slot if there is one, otherwise the second one is recycled
+        if (first == null) {
+            slots.compareAndSet(slot, null, created);
+        } else {
+            slots.set(other, created);
+        }
+        return created;
+    }
+
+    private static boolean matches(Symbol symbol, String name, int h, CharSequence s, int start, int end) {
+        if (symbol.hash != h) return false;
+        if (symbol.name == name) return true;
+
+        String known = symbol.name;
+        if (known.length() != end - start) return false;
+        for (int i = 0; i < known.length(); i++) {
+            if (known.charAt(i) != s.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mycompany.xmljsonconverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Appendable that encodes straight into UTF-8 bytes for the manual and streaming
+ * writers (also behind the API's /api/stream endpoints), so a result goes to an
+ * OutputStream without being built as a String first. ASCII is copied byte for
+ * byte; unpaired surrogates become '?', as in String.getBytes.
+ *
+ * Bytes are buffered; flush() must be called once the document is written.
+ */
+public final class Utf8Output implements Appendable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private char highSurrogate;
+
+    public Utf8Output(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public Utf8Output append(CharSequence s) throws IOException {
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public Utf8Output append(CharSequence s, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            // plain ASCII runs, bounded by the room left in the buffer
+            int room = Math.min(end - i, buf.length - pos);
+            int stop = i + room;
+            while (i < stop && highSurrogate == 0) {
+                char c = s.charAt(i);
+                if (c >= 0x80) break;
+                buf[pos++] = (byte) c;
+                i++;
+            }
+            if (i == end) break;
+            if (pos == buf.length) {
+                drain();
+                continue;
+            }
+            append(s.charAt(i++));
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Output append(char c) throws IOException {
+        if (pos > buf.length - 4) drain();
+
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                return this;
+            }
+            buf[pos++] = '?';
+        }
+
+        if (c < 0x80) {
+            buf[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buf[pos++] = '?';
+        } else {
+            buf[pos++] = (byte) (0xE0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    // Writes out what is buffered; a high surrogate still waiting for its pair is written as '?'
+    public void flush() throws IOException {
+        if (highSurrogate != 0) {
+            if (pos == buf.length) drain();
+            buf[pos++] = '?';
+            highSurrogate = 0;
+        }
+        drain();
+        out.flush();
+    }
+
+    private void drain() throws IOException {
+        if (pos > 0) out.write(buf, 0, pos);
+        pos = 0;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mycompany.xmljsonconverter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Against a stand-in server that echoes the request body, as the API would answer it
+class ApiConverterServiceTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile long delayMillis;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api", this::echo);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(encoding)) in = new GZIPInputStream(in);
+            byte[] body = in.readAllBytes();
+            requests.add(exchange.getRequestURI() + " " + encoding + " " + body.length);
+            Thread.sleep(delayMillis);
+
+            if (exchange.getRequestURI().getQuery() != null && exchange.getRequestURI().getQuery().contains("fail")) {
+                send(exchange, 400, "bad root".getBytes(StandardCharsets.UTF_8), false);
+                return;
+            }
+            boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            send(exchange, 200, body, gzip);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body, boolean gzip) throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(zipped)) {
+                out.write(body);
+            }
+            body = zipped.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    void compressesLargeBodiesAndDecodesResponses() throws Exception {
+        ApiConverterService service = new ApiConverterService(baseUrl, 4, true);
+        String small = "<a>1</a>";
+        String large = "<a>" + "x".repeat(100_000) + "</a>";
+
+        assertEquals(small, service.xmlToJson(small, OutputFormat.PRETTY));
+        assertEquals(large, service.xmlToJson(large, OutputFormat.COMPACT));
+        assertEquals(large, service.jsonToXml(
+                new ByteArrayInputStream(large.getBytes(StandardCharsets.UTF_8)), "r", OutputFormat.PRETTY));
+
+        assertEquals(List.of(
+                "/api/xml-to-json null " + small.length(),
+                "/api/xml-to-json?format=compact gzip " + large.length(),
+                "/api/json-to-xml?root=r gzip " + large.length()), new ArrayList<>(requests));
+    }
+
+    @Test
+    void sendsPlainBodiesWithoutCompression() throws Exception {
+        ApiConverterService service = new ApiConverterService(baseUrl, 4, false);
+        String large = "{\"a\":\"" + "x".repeat(10_000) + "\"}";
+
+        assertEquals(large, service.jsonToXmlAutoRoot(large, OutputFormat.PRETTY));
+        assertEquals(List.of("/api/json-to-xml-auto null " + large.length()), new ArrayList<>(requests));
+    }
+
+    // Requests past maxInFlight wait in the client instead of going out
+    @Test
+    void holdsRequestsToMaxInFlight() throws Exception {
+        ApiConverterService service = new ApiConverterService(baseUrl, 2, true);
+        delayMillis = 50;
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            results.add(service.xmlToJsonAsync("<a>" + i + "</a>", OutputFormat.PRETTY));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("<a>" + i + "</a>", results.get(i).get());
+        }
+        assertEquals(12, requests.size());
+        assertTrue(maxActive.get() <= 2, "at most 2 requests at once, saw " + maxActive.get());
+    }
+
+    @Test
+    void errorStatusFailsTheConversion() {
+        ApiConverterService service = new ApiConverterService(baseUrl, 1, true);
+        Exception e = assertThrows(RuntimeException.class,
+                () -> service.jsonToXml("{}", "fail", OutputFormat.PRETTY));
+        assertEquals("API error 400: bad root", e.getMessage());
+    }
+}
@@ -0,0 +1,80 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryFormatTest {
+
+    private static final String XML = "<order id=\"7\"><customer>A &amp; B</customer><line><sku>x</sku></line>"
+            + "<line><sku>y</sku><qty>2</qty></line><note/></order>";
+    private static final String JSON = "{\"order\":{\"id\":7,\"price\":-2.5,\"big\":12345678901234,"
+            + "\"name\":\"\u00e9<>\",\"tags\":[\"a\",null,true,{\"k\":[]}],\"empty\":{}}}";
+
+    private final LocalConverterService service = new LocalConverterService();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void parsesTheCodecName() {
+        assertEquals(BinaryFormat.SMILE, BinaryFormat.of("smile"));
+        assertEquals(BinaryFormat.CBOR, BinaryFormat.of("CBOR"));
+        assertEquals("cbor", BinaryFormat.CBOR.id());
+        assertEquals("application/x-jackson-smile", BinaryFormat.SMILE.mediaType());
+        assertThrows(IllegalArgumentException.class, () -> BinaryFormat.of("msgpack"));
+        assertThrows(IllegalArgumentException.class, () -> BinaryFormat.of(null));
+    }
+
+    // Each encoding is read back by Jackson's own mapper for it
+    @Test
+    void writesTheBinaryEncodings() throws Exception {
+        assertEquals(mapper.readTree(JSON),
+                new ObjectMapper(new SmileFactory()).readTree(jsonToBinary(JSON, BinaryFormat.SMILE)));
+        assertEquals(mapper.readTree(JSON),
+                new ObjectMapper(new CBORFactory()).readTree(jsonToBinary(JSON, BinaryFormat.CBOR)));
+    }
+
+    // Going through binary gives what the JSON conversions give
+    @Test
+    void binaryHopsMatchTheJsonConversions() throws Exception {
+        for (BinaryFormat binary : BinaryFormat.values()) {
+            byte[] encoded = jsonToBinary(JSON, binary);
+            assertEquals(mapper.readTree(JSON), mapper.readTree(binaryToJson(encoded, binary, OutputFormat.PRETTY)));
+            assertEquals(JSON, binaryToJson(encoded, binary, OutputFormat.COMPACT));
+
+            for (OutputFormat format : OutputFormat.values()) {
+                ByteArrayOutputStream xml = new ByteArrayOutputStream();
+                service.binaryToXml(new ByteArrayInputStream(encoded), xml, binary, "doc", format);
+                assertEquals(service.jsonToXml(JSON, "doc", format), xml.toString(StandardCharsets.UTF_8));
+
+                ByteArrayOutputStream auto = new ByteArrayOutputStream();
+                service.binaryToXmlAutoRoot(new ByteArrayInputStream(encoded), auto, binary, format);
+                assertEquals(service.jsonToXmlAutoRoot(JSON, format), auto.toString(StandardCharsets.UTF_8));
+            }
+
+            ByteArrayOutputStream fromXml = new ByteArrayOutputStream();
+            service.xmlToBinary(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), fromXml, binary);
+            assertEquals(mapper.readTree(service.xmlToJson(XML, OutputFormat.COMPACT)),
+                    mapper.readTree(binaryToJson(fromXml.toByteArray(), binary, OutputFormat.COMPACT)));
+        }
+    }
+
+    private byte[] jsonToBinary(String json, BinaryFormat binary) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.jsonToBinary(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), out, binary);
+        return out.toByteArray();
+    }
+
+    private String binaryToJson(byte[] data, BinaryFormat binary, OutputFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.binaryToJson(new ByteArrayInputStream(data), out, binary, format);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
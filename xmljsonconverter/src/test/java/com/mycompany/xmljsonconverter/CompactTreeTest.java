@@ -0,0 +1,103 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CompactTreeTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    // valueString is String.valueOf of the LinkedHashMap / ArrayList tree the same text parses to
+    @Test
+    void holdsWhatTheMapTreeHolds() {
+        for (String json : new String[]{
+                "{}", "[]", "\"a\\u00e9\\n\"", "-12", "3.5e2", "true", "null",
+                "{\"a\":1,\"b\":[true,false,null,{\"c\":\"x\"}],\"d\":{\"e\":[]},\"f\":-0.25}",
+                "{\"a\":1,\"b\":2,\"a\":{\"z\":3}}",
+                "[9223372036854775807,-9223372036854775808,1e300,\"\\\"q\\\"\"]"}) {
+            assertEquals(String.valueOf(new SimpleJsonParser(json).parse()), valueString(json), json);
+        }
+    }
+
+    @Test
+    void keepsNumbersAsPrimitives() {
+        CompactTree tree = new SimpleJsonParser("[9223372036854775807,-1,2.5]").parseTree(symbols);
+        int first = tree.firstChild(tree.root());
+        int second = tree.nextSibling(first);
+        int third = tree.nextSibling(second);
+
+        assertEquals(CompactTree.ARRAY, tree.kind(tree.root()));
+        assertEquals(CompactTree.LONG, tree.kind(first));
+        assertEquals(Long.MAX_VALUE, tree.longValue(first));
+        assertEquals(-1, tree.longValue(second));
+        assertEquals(CompactTree.DOUBLE, tree.kind(third));
+        assertEquals(2.5, tree.doubleValue(third));
+        assertEquals(CompactTree.NONE, tree.nextSibling(third));
+        assertEquals(3, tree.childCount(tree.root()));
+    }
+
+    // A repeated key replaces the value where the first one was, like LinkedHashMap.put
+    @Test
+    void putReplacesInPlace() {
+        CompactTree tree = new CompactTree(symbols);
+        int object = tree.newNode(CompactTree.OBJECT, CompactTree.NONE);
+        tree.put(object, tree.newLong(tree.symbol("a"), 1));
+        tree.put(object, tree.newLong(tree.symbol("b"), 2));
+        tree.put(object, tree.newString(tree.symbol("a"), "x"));
+        tree.put(object, tree.newLong(tree.symbol("c"), 3));
+
+        assertEquals("{a=x, b=2, c=3}", tree.valueString(object));
+        assertEquals(3, tree.childCount(object));
+        assertEquals("x", tree.text(tree.member(object, tree.findSymbol("a"))).toString());
+    }
+
+    // Repeated XML elements become one array where the first one was
+    @Test
+    void groupCollectsRepeatsIntoAnArray() {
+        CompactTree tree = new CompactTree(symbols);
+        int object = tree.newNode(CompactTree.OBJECT, CompactTree.NONE);
+        tree.group(object, tree.newString(tree.symbol("line"), "1"));
+        tree.group(object, tree.newString(tree.symbol("id"), "7"));
+        tree.group(object, tree.newString(tree.symbol("line"), "2"));
+        tree.group(object, tree.newString(tree.symbol("line"), "3"));
+        tree.finish();
+
+        assertEquals("{line=[1, 2, 3], id=7}", tree.valueString(object));
+        int lines = tree.member(object, tree.findSymbol("line"));
+        assertEquals(CompactTree.ARRAY, tree.kind(lines));
+        assertEquals(object, tree.parent(lines));
+        assertEquals(3, tree.childCount(lines));
+        assertEquals(3, tree.depth(object));
+    }
+
+    @Test
+    void stringsPointIntoTheSourceOrTheirOwnChars() {
+        String source = "<a>text</a>";
+        CompactTree tree = new CompactTree(source, symbols);
+        int object = tree.newNode(CompactTree.OBJECT, CompactTree.NONE);
+        tree.put(object, tree.newSourceString(tree.symbol(source, 1, 2), 3, 7));
+        tree.put(object, tree.newString(tree.symbol("b"), new StringBuilder("copied")));
+
+        assertEquals("{a=text, b=copied}", tree.valueString(object));
+    }
+
+    // Names are numbered per tree and shared through the SymbolTable
+    @Test
+    void namesAreInterned() {
+        CompactTree first = new SimpleJsonParser("{\"order\":{\"id\":1},\"id\":2}").parseTree(symbols);
+        CompactTree second = new SimpleJsonParser("{\"id\":3}").parseTree(symbols);
+
+        int id = first.findSymbol("id");
+        assertEquals(CompactTree.NONE, first.findSymbol("missing"));
+        assertSame(first.symbol(id), second.nameSymbol(second.firstChild(second.root())));
+        assertSame(symbols.intern("order"), first.nameSymbol(first.firstChild(first.root())));
+        assertEquals("id", first.nameText(first.member(first.root(), id)));
+    }
+
+    private String valueString(String json) {
+        CompactTree tree = new SimpleJsonParser(json).parseTree(symbols);
+        return tree.valueString(tree.root());
+    }
+}
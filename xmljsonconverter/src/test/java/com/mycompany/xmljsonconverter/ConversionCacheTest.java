@@ -0,0 +1,138 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConversionCacheTest {
+
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    @Test
+    void sameInputAndOptionsAreAnsweredFromTheCache() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20);
+
+        assertEquals("A", convert(cache, "a", "x"));
+        assertEquals("A", convert(cache, "a", "x"));
+        assertEquals("B", convert(cache, "b", "x"));
+        // other options are another conversion
+        assertEquals("A", convert(cache, "a", "y"));
+        assertEquals(3, conversions.get());
+
+        ConversionCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(3, stats.entries());
+        assertEquals(0.25, stats.hitRate());
+    }
+
+    @Test
+    void stringsAndBytesAreCachedApart() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20);
+        byte[] input = "a".getBytes(StandardCharsets.UTF_8);
+
+        convert(cache, "a", "x");
+        assertArrayEquals("A".getBytes(StandardCharsets.UTF_8), convert(cache, input, "x"));
+        assertEquals(2, conversions.get());
+
+        // the cache kept its own copy of the input
+        input[0] = 'b';
+        assertArrayEquals("B".getBytes(StandardCharsets.UTF_8), convert(cache, input, "x"));
+        assertEquals(3, conversions.get());
+        byte[] cached = convert(cache, input, "x");
+        assertSame(cached, convert(cache, "b".getBytes(StandardCharsets.UTF_8), "x"));
+        assertEquals(3, conversions.get());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPastTheLimit() throws Exception {
+        // each entry weighs 128 + 2 + 2 * 100 = 330 bytes, six fit in 2000
+        ConversionCache cache = new ConversionCache(2000);
+        for (int i = 10; i < 16; i++) convertLong(cache, String.valueOf(i));
+        assertEquals(6, cache.stats().entries());
+        assertEquals(1980, cache.stats().bytes());
+
+        convertLong(cache, "10");
+        convertLong(cache, "16");
+        ConversionCache.Stats stats = cache.stats();
+        assertEquals(6, stats.entries());
+        assertEquals(1, stats.evictions());
+        assertEquals(7, conversions.get());
+
+        // 10 was used last, so 11 went
+        convertLong(cache, "10");
+        assertEquals(7, conversions.get());
+        convertLong(cache, "11");
+        assertEquals(8, conversions.get());
+    }
+
+    @Test
+    void doesNotStoreResultsOverAQuarterOfTheCache() throws Exception {
+        ConversionCache cache = new ConversionCache(2000);
+        convertLong(cache, "a");
+        ConversionCache.Conversion large = () -> {
+            conversions.incrementAndGet();
+            return "x".repeat(300);
+        };
+        cache.convert("b", "x", large);
+        cache.convert("b", "x", large);
+
+        assertEquals(3, conversions.get());
+        assertEquals(1, cache.stats().entries());
+        assertEquals(0, cache.stats().evictions());
+    }
+
+    @Test
+    void clearDropsEverything() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20);
+        convert(cache, "a", "x");
+        cache.clear();
+        assertEquals(0, cache.stats().entries());
+        assertEquals(0, cache.stats().bytes());
+        convert(cache, "a", "x");
+        assertEquals(2, conversions.get());
+    }
+
+    @Test
+    void failedConversionsAreNotCached() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20);
+        assertThrows(IllegalArgumentException.class, () -> cache.convert("a", "x", () -> {
+            throw new IllegalArgumentException("broken");
+        }));
+        assertEquals("A", convert(cache, "a", "x"));
+        assertEquals(1, conversions.get());
+    }
+
+    @Test
+    void rejectsANonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new ConversionCache(0));
+    }
+
+    private String convert(ConversionCache cache, String input, String options) throws Exception {
+        return cache.convert(input, options, () -> {
+            conversions.incrementAndGet();
+            return input.toUpperCase();
+        });
+    }
+
+    private byte[] convert(ConversionCache cache, byte[] input, String options) throws Exception {
+        String text = new String(input, StandardCharsets.UTF_8);
+        return cache.convert(input, options, () -> {
+            conversions.incrementAndGet();
+            return text.toUpperCase().getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    private void convertLong(ConversionCache cache, String input) throws Exception {
+        cache.convert(input, "x", () -> {
+            conversions.incrementAndGet();
+            return input.repeat(50);
+        });
+    }
+}
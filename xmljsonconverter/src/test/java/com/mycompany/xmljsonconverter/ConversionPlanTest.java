@@ -0,0 +1,77 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConversionPlanTest {
+
+    private static final String SAMPLE = "{\"order\":{\"@attributes\":{\"id\":\"1\",\"state\":\"new\"},"
+            + "\"customer\":{\"name\":\"A\",\"#text\":\"vip\"},"
+            + "\"line\":[{\"sku\":\"x\",\"qty\":1},{\"sku\":\"y\",\"qty\":2,\"note\":null}]}}";
+
+    // Documents of the sample's shape, and ones that leave it at some position
+    private static final String[] DOCUMENTS = {
+            SAMPLE,
+            "{\"order\":{\"@attributes\":{\"id\":\"2\",\"state\":\"<&>\"},\"customer\":{\"name\":\"B\",\"#text\":\" \"},"
+                    + "\"line\":[{\"sku\":\"z\",\"qty\":3}]}}",
+            "{\"order\":{\"@attributes\":{\"id\":\"3\"},\"customer\":{\"name\":\"C\",\"#text\":\"t\"},\"line\":[]}}",
+            "{\"order\":{\"customer\":{\"name\":\"D\"},\"@attributes\":{\"id\":\"4\",\"state\":\"x\"},"
+                    + "\"line\":{\"sku\":\"w\",\"qty\":4}}}",
+            "{\"order\":{\"@attributes\":{\"id\":\"5\",\"state\":\"s\"},\"customer\":null,"
+                    + "\"line\":[{\"qty\":1,\"sku\":\"v\"},{\"sku\":\"u\",\"qty\":2,\"extra\":[1,2]}]}}",
+            "{\"invoice\":{\"total\":10}}",
+            "{\"order\":1,\"other\":2}",
+            "[1,2]"
+    };
+
+    private final ManualConverterService service = new ManualConverterService();
+    private final ConversionPlan plan = service.compilePlan(SAMPLE);
+
+    // A plan never changes the output, whether a document matches it or not
+    @Test
+    void plannedOutputIsTheGenericOne() throws Exception {
+        for (String json : DOCUMENTS) {
+            for (OutputFormat format : OutputFormat.values()) {
+                assertEquals(service.jsonToXml(json, "doc", format),
+                        service.jsonToXml(json, "doc", format, plan), json);
+                assertEquals(service.jsonToXmlAutoRoot(json, format),
+                        service.jsonToXmlAutoRoot(json, format, plan), json);
+            }
+        }
+    }
+
+    // The tags a position keeps follow the name, indent and layout of each write
+    @Test
+    void sharedPlanWritesEachCallersTags() throws Exception {
+        String[] roots = {"doc", "feed", "x"};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                runs.add(executor.submit(() -> {
+                    for (int i = 0; i < 300; i++) {
+                        String json = DOCUMENTS[(thread + i) % DOCUMENTS.length];
+                        String root = roots[(thread + i) % roots.length];
+                        OutputFormat format = OutputFormat.values()[(thread + i) % 2];
+                        assertEquals(service.jsonToXml(json, root, format),
+                                service.jsonToXml(json, root, format, plan), json);
+                        assertEquals(service.jsonToXmlAutoRoot(json, format),
+                                service.jsonToXmlAutoRoot(json, format, plan), json);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) run.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EscapingTest {
+
+    @Test
+    void xmlEntities() throws IOException {
+        assertEquals("a &amp; b &lt;c&gt; &quot;d&quot; &apos;e&apos;", xml("a & b <c> \"d\" 'e'"));
+        assertEquals("&amp;&amp;", xml("&&"));
+        assertEquals("", xml(""));
+        assertEquals("\u00e9\u4e2d\ud83d\ude00\n", xml("\u00e9\u4e2d\ud83d\ude00\n"));
+    }
+
+    @Test
+    void jsonControlCharacters() {
+        assertEquals("\\\"q\\\" \\\\ \\n\\r\\t\\b\\f \\u0001\\u001f x", json("\"q\" \\ \n\r\t\b\f \u0001\u001f x"));
+        assertEquals("\u00e9\u2028/", json("\u00e9\u2028/"));
+    }
+
+    // Text with nothing to escape is appended as the same object, not copied
+    @Test
+    void cleanTextIsAppendedWhole() throws IOException {
+        String clean = "nothing to escape";
+        Recorder out = new Recorder();
+        Escaping.appendXml(out, clean);
+        assertSame(clean, out.last);
+        Escaping.appendJson(out, clean);
+        assertSame(clean, out.last);
+    }
+
+    private static String xml(String s) throws IOException {
+        StringBuilder out = new StringBuilder();
+        Escaping.appendXml(out, s);
+        return out.toString();
+    }
+
+    private static String json(String s) {
+        StringBuilder out = new StringBuilder();
+        Escaping.appendJson(out, s);
+        return out.toString();
+    }
+
+    private static final class Recorder implements Appendable {
+        CharSequence last;
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            last = csq;
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            last = csq.subSequence(start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            last = String.valueOf(c);
+            return this;
+        }
+    }
+}
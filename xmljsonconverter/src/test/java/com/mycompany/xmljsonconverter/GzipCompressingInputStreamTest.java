@@ -0,0 +1,43 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class GzipCompressingInputStreamTest {
+
+    @Test
+    void readsAsGzipOfTheInput() throws IOException {
+        Random random = new Random(1);
+        for (int size : new int[]{0, 1, 8191, 8192, 8193, 300_000}) {
+            byte[] data = new byte[size];
+            // half random, half repeated, so the deflater both stores and compresses
+            random.nextBytes(data);
+            for (int i = size / 2; i < size; i++) data[i] = (byte) ('a' + i % 7);
+
+            assertArrayEquals(data, gunzip(new GzipCompressingInputStream(new ByteArrayInputStream(data))
+                    .readAllBytes()));
+            assertArrayEquals(data, gunzip(byteByByte(
+                    new GzipCompressingInputStream(new ByteArrayInputStream(data)))));
+        }
+    }
+
+    private static byte[] byteByByte(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0; b = in.read()) out.write(b);
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return in.readAllBytes();
+        }
+    }
+}
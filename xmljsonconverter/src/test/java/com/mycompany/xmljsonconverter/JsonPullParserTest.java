@@ -0,0 +1,116 @@
+package com.mycompany.xmljsonconverter;
+
+import com.mycompany.xmljsonconverter.JsonPullParser.Token;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonPullParserTest {
+
+    @Test
+    void tokensAndValues() throws IOException {
+        JsonPullParser parser = parser("{\"a\": [1, -2.5e1, 3000000000], \"b\\n\": \"x\\\"\\\\\\u00e9\\ud83d\\ude00\","
+                + " \"c\": true, \"d\": false, \"e\": null, \"f\": {}}");
+
+        assertEquals(List.of(
+                "START_OBJECT {", "FIELD_NAME a", "START_ARRAY [", "VALUE_NUMBER 1", "VALUE_NUMBER -2.5e1",
+                "VALUE_NUMBER 3000000000", "END_ARRAY ]", "FIELD_NAME b\n",
+                "VALUE_STRING x\"\\\u00e9\ud83d\ude00", "FIELD_NAME c", "VALUE_TRUE true", "FIELD_NAME d",
+                "VALUE_FALSE false", "FIELD_NAME e", "VALUE_NULL null", "FIELD_NAME f", "START_OBJECT {",
+                "END_OBJECT }", "END_OBJECT }"), tokens(parser));
+        assertNull(parser.currentToken());
+    }
+
+    @Test
+    void numbersAsSimpleJsonParserHoldsThem() throws IOException {
+        assertEquals(1, number("1"));
+        assertEquals(3000000000L, number("3000000000"));
+        assertEquals(-25.0, number("-2.5e1"));
+        assertEquals(0.5, number("0.5"));
+    }
+
+    // Tokens longer than the buffer, and UTF-8 sequences cut by the buffer boundaries
+    @Test
+    void valuesAcrossBufferBoundaries() throws IOException {
+        String text = "\u00e9\u4e2d\ud83d\ude00x".repeat(5000);
+        String json = "[\"" + text + "\", \"" + "k".repeat(20_000) + "\"]";
+
+        for (JsonPullParser parser : List.of(parser(json),
+                new JsonPullParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))))) {
+            assertEquals(Token.START_ARRAY, parser.nextToken());
+            assertEquals(Token.VALUE_STRING, parser.nextToken());
+            assertEquals(text, parser.getText());
+            assertEquals(Token.VALUE_STRING, parser.nextToken());
+            assertEquals(20_000, parser.getText().length());
+            assertEquals(Token.END_ARRAY, parser.nextToken());
+            assertNull(parser.nextToken());
+        }
+    }
+
+    @Test
+    void malformedUtf8ReadsAsReplacementCharacter() throws IOException {
+        byte[] json = {'"', 'a', (byte) 0xff, 'b', '"'};
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(json));
+        assertEquals(Token.VALUE_STRING, parser.nextToken());
+        assertEquals("a\ufffdb", parser.getText());
+    }
+
+    @Test
+    void skipChildrenStopsOnTheMatchingEnd() throws IOException {
+        JsonPullParser parser = parser("{\"a\": {\"b\": [1, {\"c\": []}]}, \"d\": 2}");
+        parser.nextToken();
+        parser.nextToken();
+        assertEquals(Token.START_OBJECT, parser.nextToken());
+        parser.skipChildren();
+        assertEquals(Token.END_OBJECT, parser.currentToken());
+        assertEquals(Token.FIELD_NAME, parser.nextToken());
+        assertEquals("d", parser.getText());
+    }
+
+    @Test
+    void readsTheTreeOfSimpleJsonParser() throws IOException {
+        String json = "{\"a\": [1, 2.5, \"x\", null, {\"b\": true}], \"a\": {\"c\": \"\\u00e9\"}, \"d\": []}";
+        SymbolTable symbols = new SymbolTable();
+        CompactTree expected = new SimpleJsonParser(json).parseTree(symbols);
+
+        JsonPullParser parser = parser(json);
+        parser.nextToken();
+        CompactTree tree = parser.readCompactTree(symbols);
+
+        assertEquals(expected.valueString(expected.root()), tree.valueString(tree.root()));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        for (String json : new String[]{"", "{\"a\" 1}", "[1 2]", "{\"a\": 1} x", "[1,]", "\"open", "{\"a\": tru}"}) {
+            assertThrows(IllegalArgumentException.class, () -> tokens(parser(json)), json);
+        }
+    }
+
+    private static JsonPullParser parser(String json) {
+        return new JsonPullParser(new StringReader(json));
+    }
+
+    private static Number number(String json) throws IOException {
+        JsonPullParser parser = parser(json);
+        parser.nextToken();
+        return parser.getNumber();
+    }
+
+    private static List<String> tokens(JsonPullParser parser) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        for (Token t = parser.nextToken(); t != null; t = parser.nextToken()) {
+            tokens.add(t + " " + parser.getText());
+        }
+        return tokens;
+    }
+}
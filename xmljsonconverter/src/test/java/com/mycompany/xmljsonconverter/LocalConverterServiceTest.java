@@ -0,0 +1,52 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalConverterServiceTest {
+
+    private final LocalConverterService service = new LocalConverterService();
+    private final ObjectMapper json = new ObjectMapper();
+
+    // The root name read from the parser is the tag name a DOM parse used to give
+    @Test
+    void rootNameAfterTheProlog() throws Exception {
+        String[] documents = {
+                "<order><id>1</id></order>",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- first -->\n<?app x?>\n<order id=\"1\"/>",
+                "<ns:order xmlns:ns=\"urn:x\"><ns:id>1</ns:id></ns:order>",
+                "<order xmlns=\"urn:x\"><id>1</id></order>",
+                "\n  <r\u00e9sum\u00e9>text</r\u00e9sum\u00e9>"
+        };
+        for (String xml : documents) {
+            String expected = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(xml))).getDocumentElement().getTagName();
+
+            assertEquals(expected, rootField(service.xmlToJson(xml, OutputFormat.COMPACT)), xml);
+            assertEquals(expected, rootField(service.xmlToJson(
+                    new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), OutputFormat.COMPACT)), xml);
+        }
+    }
+
+    // The tree comes from the same parser the name was read from, so nothing is skipped
+    @Test
+    void contentIsReadOnce() throws Exception {
+        String result = service.xmlToJson("<a x=\"1\"><b>2</b><b>3</b><c/></a>", OutputFormat.COMPACT);
+        assertEquals(json.readTree("{\"a\":{\"x\":\"1\",\"b\":[\"2\",\"3\"],\"c\":\"\"}}"), json.readTree(result));
+    }
+
+    private String rootField(String result) throws Exception {
+        JsonNode node = json.readTree(result);
+        assertEquals(1, node.size(), result);
+        return node.fieldNames().next();
+    }
+}
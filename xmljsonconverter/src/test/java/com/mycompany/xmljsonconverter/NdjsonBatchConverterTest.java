@@ -0,0 +1,115 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NdjsonBatchConverterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Writes what it was asked to do; "slow N" sleeps N ms first, "fail" throws
+    private static final NdjsonBatchConverter.Documents ECHO = new NdjsonBatchConverter.Documents() {
+        @Override
+        public byte[] xmlToJson(byte[] xml, OutputFormat format) throws Exception {
+            return result("xml-to-json", xml, null, format);
+        }
+
+        @Override
+        public byte[] jsonToXml(byte[] json, String root, OutputFormat format) throws Exception {
+            return result("json-to-xml", json, root, format);
+        }
+
+        @Override
+        public byte[] jsonToXmlAuto(byte[] json, OutputFormat format) throws Exception {
+            return result("json-to-xml-auto", json, null, format);
+        }
+
+        private byte[] result(String direction, byte[] data, String root, OutputFormat format) throws Exception {
+            String text = new String(data, StandardCharsets.UTF_8);
+            if (text.startsWith("slow ")) Thread.sleep(Long.parseLong(text.substring(5)));
+            if (text.equals("fail")) throw new IllegalArgumentException("cannot convert");
+            return (direction + " " + root + " " + format + " " + text).getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    @Test
+    void resultsKeepTheInputOrder() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            input.append("{\"id\":").append(i).append(",\"direction\":\"xml-to-json\",\"data\":\"slow ")
+                    .append((40 - i) % 7).append("\"}\n");
+        }
+
+        List<JsonNode> lines = convert(input.toString(), 4, 1024);
+        assertEquals(40, lines.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, lines.get(i).get("index").asInt());
+            assertEquals(i, lines.get(i).get("id").asInt());
+            assertTrue(lines.get(i).has("result"));
+        }
+    }
+
+    @Test
+    void brokenItemsOnlyGetAnError() throws Exception {
+        List<JsonNode> lines = convert("""
+                {"direction":"json-to-xml","root":"order","data":"{}","format":"compact"}
+
+                not json
+                {"id":"x","direction":"json-to-xml-auto","data":"fail"}
+                {"direction":"sideways","data":"a"}
+                {"direction":"xml-to-json"}
+                [1]
+                {"direction":"xml-to-json","data":"<a/>","format":"tiny"}
+                {"direction":"json-to-xml","data":"[]"}\r
+                """, 2, 1024);
+
+        assertEquals("json-to-xml order COMPACT {}", lines.get(0).get("result").asText());
+        assertTrue(lines.get(1).has("error"));
+        assertEquals("x", lines.get(2).get("id").asText());
+        assertEquals("cannot convert", lines.get(2).get("error").asText());
+        assertTrue(lines.get(3).get("error").asText().startsWith("Unknown direction 'sideways'"));
+        assertEquals("Item needs a \"data\" string", lines.get(4).get("error").asText());
+        assertEquals("Item must be a JSON object", lines.get(5).get("error").asText());
+        assertTrue(lines.get(6).get("error").asText().startsWith("Unknown format 'tiny'"));
+        // the default format and root
+        assertEquals("json-to-xml root PRETTY []", lines.get(7).get("result").asText());
+        assertEquals(8, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(i, lines.get(i).get("index").asInt());
+            assertFalse(lines.get(i).has("result") && lines.get(i).has("error"));
+        }
+    }
+
+    @Test
+    void lineLongerThanTheLimitEndsTheBatch() {
+        String input = "{\"direction\":\"xml-to-json\",\"data\":\"" + "x".repeat(200) + "\"}\n";
+        assertThrows(NdjsonBatchConverter.LineTooLongException.class, () -> convert(input, 1, 100));
+    }
+
+    private List<JsonNode> convert(String ndjson, int threads, int maxLineChars) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NdjsonBatchConverter batch = new NdjsonBatchConverter(new ConversionContext(), ECHO, threads,
+                maxLineChars)) {
+            batch.convert(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), out,
+                    OutputFormat.PRETTY);
+        }
+
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(mapper.readTree(line));
+        }
+        return lines;
+    }
+}
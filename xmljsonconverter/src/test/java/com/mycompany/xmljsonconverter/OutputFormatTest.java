@@ -0,0 +1,85 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OutputFormatTest {
+
+    private static final String XML = "<order id=\"7\"><customer>A &amp; B</customer><line><sku>x</sku></line>"
+            + "<line><sku>y</sku><qty>2</qty></line><note/>text</order>";
+    private static final String JSON = "{\"order\":{\"@attributes\":{\"id\":\"7\"},\"customer\":\"A & B\","
+            + "\"line\":[{\"sku\":\"x\"},{\"sku\":\"y\",\"qty\":2}],\"note\":null,\"empty\":{},\"none\":[]}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void parsesTheFormatParameter() {
+        assertEquals(OutputFormat.PRETTY, OutputFormat.of(null));
+        assertEquals(OutputFormat.PRETTY, OutputFormat.of(" "));
+        assertEquals(OutputFormat.PRETTY, OutputFormat.of("Pretty"));
+        assertEquals(OutputFormat.COMPACT, OutputFormat.of("COMPACT"));
+        assertThrows(IllegalArgumentException.class, () -> OutputFormat.of("minified"));
+    }
+
+    // COMPACT is PRETTY without the line breaks and indentation
+    @Test
+    void manualCompactDropsOnlyTheLayout() throws Exception {
+        ManualConverterService service = new ManualConverterService();
+
+        assertCompactJson(service.xmlToJson(XML, OutputFormat.PRETTY), service.xmlToJson(XML, OutputFormat.COMPACT));
+        assertCompactXml(service.jsonToXml(JSON, "doc", OutputFormat.PRETTY),
+                service.jsonToXml(JSON, "doc", OutputFormat.COMPACT));
+        assertCompactXml(service.jsonToXmlAutoRoot(JSON, OutputFormat.PRETTY),
+                service.jsonToXmlAutoRoot(JSON, OutputFormat.COMPACT));
+
+        assertEquals(service.xmlToJson(XML, OutputFormat.COMPACT), new String(
+                service.xmlToJson(XML.getBytes(StandardCharsets.UTF_8), OutputFormat.COMPACT), StandardCharsets.UTF_8));
+        assertEquals(service.jsonToXml(JSON, "doc", OutputFormat.COMPACT), new String(
+                service.jsonToXml(JSON.getBytes(StandardCharsets.UTF_8), "doc", OutputFormat.COMPACT),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void streamingCompactIsTheTreeCompact() throws Exception {
+        ManualConverterService service = new ManualConverterService();
+
+        StringWriter json = new StringWriter();
+        service.xmlToJson(new StringReader(XML), json, OutputFormat.COMPACT);
+        assertEquals(service.xmlToJson(XML, OutputFormat.COMPACT), json.toString());
+
+        StringWriter xml = new StringWriter();
+        service.jsonToXml(new StringReader(JSON), xml, "doc", OutputFormat.COMPACT);
+        assertEquals(service.jsonToXml(JSON, "doc", OutputFormat.COMPACT), xml.toString());
+    }
+
+    @Test
+    void jacksonCompactHasTheSameContent() throws Exception {
+        LocalConverterService service = new LocalConverterService();
+
+        String compact = service.xmlToJson(XML, OutputFormat.COMPACT);
+        assertFalse(compact.contains("\n"), compact);
+        assertEquals(mapper.readTree(service.xmlToJson(XML, OutputFormat.PRETTY)), mapper.readTree(compact));
+
+        assertCompactXml(service.jsonToXml(JSON, "doc", OutputFormat.PRETTY),
+                service.jsonToXml(JSON, "doc", OutputFormat.COMPACT));
+        assertCompactXml(service.jsonToXmlAutoRoot(JSON, OutputFormat.PRETTY),
+                service.jsonToXmlAutoRoot(JSON, OutputFormat.COMPACT));
+    }
+
+    private void assertCompactJson(String pretty, String compact) throws Exception {
+        assertEquals(pretty.replaceAll("\n\\s*", "").replace("\": ", "\":"), compact);
+        assertEquals(mapper.readTree(pretty), mapper.readTree(compact));
+    }
+
+    private static void assertCompactXml(String pretty, String compact) {
+        assertEquals(pretty.replaceAll("\n\\s*", ""), compact);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Arrays of PARALLEL_MIN_ITEMS or more are written in chunks on the pool; the output must not change
+class ParallelWritingTest {
+
+    private static final int ITEMS = ManualConverterService.PARALLEL_MIN_ITEMS * 3 + 17;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final ManualConverterService serial = new ManualConverterService();
+    private final ManualConverterService parallel = new ManualConverterService(new ConversionContext(), pool);
+
+    @AfterEach
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void xmlToJsonIsTheSerialOutput() throws Exception {
+        StringBuilder xml = new StringBuilder("<feed><title>t</title>");
+        for (int i = 0; i < ITEMS; i++) {
+            xml.append("<item id=\"").append(i).append("\"><name>n").append(i).append(" &amp; co</name>");
+            // a large repeated element inside a chunk is written serially
+            if (i == 5) xml.append("<tag>x</tag>".repeat(ManualConverterService.PARALLEL_MIN_ITEMS));
+            xml.append("</item>");
+        }
+        String document = xml.append("<end/></feed>").toString();
+
+        for (OutputFormat format : OutputFormat.values()) {
+            String expected = serial.xmlToJson(document, format);
+            assertEquals(expected, parallel.xmlToJson(document, format));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            parallel.xmlToJson(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), out, format);
+            assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void jsonToXmlIsTheSerialOutput() throws Exception {
+        StringBuilder json = new StringBuilder("{\"feed\":{\"item\":[");
+        for (int i = 0; i < ITEMS; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"@attributes\":{\"id\":\"").append(i).append("\"},\"v\":").append(i % 3 == 0 ? "null" : i)
+                    .append(",\"d\":").append(i / 7.0).append(",\"s\":\"<").append(i).append(">\"}");
+        }
+        json.append("],\"values\":[");
+        for (int i = 0; i < ITEMS; i++) json.append(i > 0 ? "," : "").append('[').append(i).append(",\"a\"]");
+        String document = json.append("]}}").toString();
+
+        ConversionPlan plan = serial.compilePlan(document);
+        for (OutputFormat format : OutputFormat.values()) {
+            String expected = serial.jsonToXml(document, "doc", format);
+            assertEquals(expected, parallel.jsonToXml(document, "doc", format));
+            assertEquals(expected, parallel.jsonToXml(document, "doc", format, plan));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            parallel.jsonToXml(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), out, "doc",
+                    format);
+            assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+            assertEquals(serial.jsonToXmlAutoRoot(document, format), parallel.jsonToXmlAutoRoot(document, format));
+        }
+    }
+
+    @Test
+    void topLevelArrayIsTheSerialOutput() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < ITEMS; i++) json.append(i > 0 ? "," : "").append("{\"k\":\"\\u00e9").append(i).append("\"}");
+        String document = json.append(']').toString();
+
+        for (OutputFormat format : OutputFormat.values()) {
+            assertEquals(serial.jsonToXml(document, "r", format), parallel.jsonToXml(document, "r", format));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.mycompany.xmljsonconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectionTest {
+
+    private static final String XML = "<library><name>L</name>"
+            + "<book id=\"1\" lang=\"en\"><title>A</title><author>X</author></book>"
+            + "<book id=\"2\"><title>B</title><author>Y</author><note lang=\"de\">n</note></book></library>";
+    private static final String JSON = "{\"library\":{\"name\":\"L\",\"book\":["
+            + "{\"@attributes\":{\"id\":\"1\"},\"title\":\"A\",\"author\":\"X\"},"
+            + "{\"title\":\"B\",\"author\":\"Y\",\"tags\":[\"t\",{\"k\":1}]}]}}";
+
+    private final ManualConverterService manual = new ManualConverterService();
+    private final LocalConverterService local = new LocalConverterService();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void xpathAndJsonPathBuildTheSameSteps() {
+        List<Projection> same = List.of(
+                Projection.of("/library/book/title"),
+                Projection.of("library/book/title"),
+                Projection.of("$.library.book[*].title"),
+                Projection.of("$.library.book.title"),
+                Projection.of("$['library'][\"book\"][*]['title']"),
+                Projection.of(" /library/book/title "));
+        for (Projection projection : same) {
+            Projection.Step book = projection.root().child("library").child("book");
+            assertTrue(book.child("title").selected());
+            assertNull(book.child("author"));
+            assertNull(projection.root().child("other"));
+        }
+    }
+
+    @Test
+    void attributeAndTextSteps() {
+        Projection.Step book = Projection.of("/library/book/@id", "/library/book/text()").root()
+                .child("library").child("book");
+        assertTrue(book.child("@attributes").child("id").selected());
+        assertNull(book.child("@attributes").child("lang"));
+        assertTrue(book.child("#text").selected());
+
+        assertTrue(Projection.of("/library/book/@*").root().child("library").child("book")
+                .child("@attributes").selected());
+    }
+
+    // * matches any name, and a named sibling also gets what * selects
+    @Test
+    void wildcardsMergeIntoNamedSteps() {
+        Projection.Step library = Projection.of("/library/*/title", "/library/book/author").root().child("library");
+        assertTrue(library.child("book").child("title").selected());
+        assertTrue(library.child("book").child("author").selected());
+        assertTrue(library.child("magazine").child("title").selected());
+        assertNull(library.child("magazine").child("author"));
+
+        // a selected step keeps everything below it
+        Projection.Step all = Projection.of("/library", "/library/book/title").root().child("library");
+        assertTrue(all.selected());
+        assertSame(all, all.child("anything"));
+    }
+
+    @Test
+    void rejectsUnsupportedPaths() {
+        for (String path : new String[]{"", "  ", "//book", "/library//book", "/library/book[1]", "/a/count()",
+                "/a//", "$..book", "$.library..book", "$.", "$.library.book[0]", "$['library'", "$library"}) {
+            assertThrows(IllegalArgumentException.class, () -> Projection.of(path), path);
+        }
+        assertThrows(IllegalArgumentException.class, () -> Projection.of(List.of()));
+    }
+
+    @Test
+    void manualXmlToJsonKeepsTheSelectedParts() throws Exception {
+        assertEquals(tree("{\"library\":{\"book\":[{\"title\":\"A\"},{\"title\":\"B\"}]}}"),
+                manualXmlToJson(Projection.of("/library/book/title")));
+        assertEquals(tree("{\"library\":{\"book\":[{\"@attributes\":{\"id\":\"1\"}},"
+                        + "{\"@attributes\":{\"id\":\"2\"}}]}}"),
+                manualXmlToJson(Projection.of("/library/book/@id")));
+        assertEquals(tree("{\"library\":{\"name\":\"L\",\"book\":[{\"author\":\"X\"},"
+                        + "{\"author\":\"Y\",\"note\":{\"@attributes\":{\"lang\":\"de\"},\"#text\":\"n\"}}]}}"),
+                manualXmlToJson(Projection.of("$.library.name", "$.library.book[*].author", "/library/book/note")));
+    }
+
+    // Jackson's XML tree has attributes as plain members
+    @Test
+    void localXmlToJsonKeepsTheSelectedParts() throws Exception {
+        assertEquals(tree("{\"library\":{\"book\":[{\"title\":\"A\"},{\"title\":\"B\"}]}}"),
+                localXmlToJson(Projection.of("/library/book/title")));
+        assertEquals(tree("{\"library\":{\"book\":[{\"id\":\"1\"},{\"id\":\"2\"}]}}"),
+                localXmlToJson(Projection.of("/library/book/id")));
+        assertEquals(tree("{}"), localXmlToJson(Projection.of("/other")));
+    }
+
+    // A projected conversion writes what the unprojected one writes for the projected document
+    @Test
+    void jsonToXmlConvertsTheSelectedParts() throws Exception {
+        Projection projection = Projection.of("$.library.book[*].title", "/library/book/@id");
+        String projected = "{\"library\":{\"book\":[{\"@attributes\":{\"id\":\"1\"},\"title\":\"A\"},"
+                + "{\"title\":\"B\"}]}}";
+
+        for (OutputFormat format : OutputFormat.values()) {
+            StringWriter xml = new StringWriter();
+            manual.jsonToXml(new StringReader(JSON), xml, "doc", format, projection);
+            assertEquals(manual.jsonToXml(projected, "doc", format), xml.toString());
+
+            StringWriter auto = new StringWriter();
+            manual.jsonToXmlAutoRoot(new StringReader(JSON), auto, format, projection);
+            assertEquals(manual.jsonToXmlAutoRoot(projected, format), auto.toString());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            local.jsonToXml(input(JSON), bytes, "doc", format, projection);
+            assertEquals(local.jsonToXml(projected, "doc", format), bytes.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private JsonNode manualXmlToJson(Projection projection) throws Exception {
+        StringWriter json = new StringWriter();
+        manual.xmlToJson(new StringReader(XML), json, OutputFormat.COMPACT, projection);
+        return mapper.readTree(json.toString());
+    }
+
+    private JsonNode localXmlToJson(Projection projection) throws Exception {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        local.xmlToJson(input(XML), json, OutputFormat.COMPACT, projection);
+        return mapper.readTree(json.toByteArray());
+    }
+
+    private JsonNode tree(String json) throws Exception {
+        return mapper.readTree(json);
+    }
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
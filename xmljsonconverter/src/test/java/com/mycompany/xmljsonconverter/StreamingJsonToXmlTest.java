@@ -0,0 +1,113 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingJsonToXmlTest {
+
+    private static final String[] SCALARS = {
+            "1", "-2", "3.5", "1e3", "12345678901", "true", "false", "null",
+            "\"x\"", "\"<a & \\\"b\\\">\"", "\"\"", "\"  \"", "\"\\u2003\"", "\"\\u0001\"", "\" y \""
+    };
+
+    private final ManualConverterService service = new ManualConverterService();
+
+    // Objects without repeated keys and with "@attributes" and "#text" first: the streamed
+    // XML is the one buildXml writes from the tree. The top level has a child element, as
+    // auto-root would not take a lone "@attributes" or "#text" as the element name
+    @Test
+    void writesTheXmlOfTheTree() throws Exception {
+        for (long seed = 0; seed < 500; seed++) {
+            String json = randomObject(new Random(seed), 3, 1);
+            assertSameXml(json);
+        }
+    }
+
+    @Test
+    void lastAttributesAndTextWin() throws Exception {
+        assertSameXml("{\"a\":{\"@attributes\":{\"x\":1,\"y\":2,\"x\":3},\"#text\":\"t\",\"#text\":\"u\"}}");
+        assertSameXml("{\"a\":{\"@attributes\":{\"x\":1},\"@attributes\":{\"y\":2},\"b\":1}}");
+        assertSameXml("{\"a\":{\"@attributes\":{\"x\":1},\"@attributes\":\"none\"}}");
+        assertSameXml("{\"a\":{\"#text\":\"t\",\"#text\":null,\"b\":1}}");
+    }
+
+    @Test
+    void structuredAttributesAndTextAreWrittenAsStrings() throws Exception {
+        assertSameXml("{\"a\":{\"@attributes\":{\"x\":{\"p\":1,\"q\":[true,null]},\"y\":[]},"
+                + "\"#text\":{\"r\":{}}}}");
+        assertSameXml("{\"a\":{\"#text\":[\"s\",2.5],\"b\":\"c\"}}");
+    }
+
+    private void assertSameXml(String json) throws Exception {
+        for (OutputFormat format : OutputFormat.values()) {
+            assertEquals(service.jsonToXml(json, "doc", format), streamed(json, format, false), json);
+            String autoRoot = service.jsonToXmlAutoRoot(json, format);
+            assertEquals(autoRoot, streamed(json, format, true), json);
+        }
+    }
+
+    private String streamed(String json, OutputFormat format, boolean autoRoot) throws Exception {
+        StringBuilder out = new StringBuilder();
+        StreamingJsonToXml writer = new StreamingJsonToXml(new JsonPullParser(new StringReader(json)), out, format,
+                ConversionContext.shared().symbols(), null, 8);
+        if (autoRoot) {
+            writer.convertAutoRoot();
+        } else {
+            writer.convert("doc");
+        }
+        return out.toString();
+    }
+
+    private static String randomObject(Random random, int depth, int minChildren) {
+        StringBuilder sb = new StringBuilder("{");
+        int fields = 0;
+        if (random.nextInt(3) == 0) {
+            sb.append("\"@attributes\":").append(random.nextInt(5) == 0 ? randomScalar(random) : attributes(random));
+            fields++;
+        }
+        if (random.nextInt(3) == 0) {
+            if (fields++ > 0) sb.append(',');
+            sb.append("\"#text\":").append(random.nextInt(6) == 0 ? "[1,{\"k\":\"v\"}]" : randomScalar(random));
+        }
+        int children = Math.max(minChildren, random.nextInt(depth > 0 ? 4 : 2));
+        for (int c = 0; c < children; c++) {
+            if (fields++ > 0) sb.append(',');
+            sb.append("\"e").append(c).append("\":").append(randomValue(random, depth - 1));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String attributes(Random random) {
+        StringBuilder sb = new StringBuilder("{");
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"a").append(i).append("\":");
+            sb.append(random.nextInt(5) == 0 ? "{\"n\":[1,\"z\"]}" : randomScalar(random));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String randomValue(Random random, int depth) {
+        int kind = random.nextInt(depth > 0 ? 4 : 2);
+        if (kind == 2) return randomObject(random, depth, 0);
+        if (kind == 3) {
+            StringBuilder sb = new StringBuilder("[");
+            int items = random.nextInt(4);
+            for (int i = 0; i < items; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(randomValue(random, depth - 1));
+            }
+            return sb.append(']').toString();
+        }
+        return randomScalar(random);
+    }
+
+    private static String randomScalar(Random random) {
+        return SCALARS[random.nextInt(SCALARS.length)];
+    }
+}
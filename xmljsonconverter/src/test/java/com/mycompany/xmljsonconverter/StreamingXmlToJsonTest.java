@@ -0,0 +1,237 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class StreamingXmlToJsonTest {
+
+    private final ManualConverterService service = new ManualConverterService();
+
+    @Test
+    void spillingKeepsTheOutput() throws Exception {
+        long tempFiles = pendingFiles();
+        for (long seed = 0; seed < 300; seed++) {
+            String xml = randomXml(new Random(seed));
+            for (OutputFormat format : OutputFormat.values()) {
+                String dom = service.xmlToJson(xml, format);
+                assertEquals(dom, streamed(xml, format, StreamingXmlToJson.SPILL_CHARS), xml);
+                assertEquals(dom, streamed(xml, format, 8), xml);
+            }
+        }
+        assertEquals(tempFiles, pendingFiles());
+    }
+
+    // Each CDATA section is one text node, also when the parser reports it in pieces
+    @Test
+    void cdataIsTextInBothPaths() throws Exception {
+        String blank = " ".repeat(100_000);
+        String xml = "<a>x <![CDATA[<y> & z]]> w<b><![CDATA[1]]></b><c><![CDATA[ ]]></c>"
+                + "<d><![CDATA[p" + blank + "q]]></d></a>";
+        String expected = "{\"a\":{\"b\":\"1\",\"c\":\"\",\"d\":\"p" + blank + "q\",\"#text\":\"x <y> & z w\"}}";
+
+        assertEquals(expected, service.xmlToJson(xml, OutputFormat.COMPACT));
+        assertEquals(expected, streamed(xml, OutputFormat.COMPACT, StreamingXmlToJson.SPILL_CHARS));
+    }
+
+    // Nearly the whole of a wrapped document is held back behind its first element
+    @Test
+    void wrappedDocumentStreamsInBoundedHeap() throws Exception {
+        assertEquals(0, inSmallHeap("feed/items", 500_000));
+        assertEquals(0, inSmallHeap("feed/batch/items", 500_000));
+    }
+
+    @Test
+    void repeatedElementAfterOtherSiblingsFails() {
+        String xml = "<r><a>1</a><b/><a>2</a></r>";
+        assertThrows(StreamingXmlToJson.RepeatedElementException.class,
+                () -> streamed(xml, OutputFormat.COMPACT, StreamingXmlToJson.SPILL_CHARS));
+    }
+
+    // The file variant starts over on the tree path, over the partial output
+    @Test
+    void fileConversionFallsBackToTheTree() throws Exception {
+        String xml = "<r><a>1</a><b x=\"y\"/><a>2</a>" + "<c>text</c>".repeat(1000) + "</r>";
+        Path in = Files.createTempFile("repeated", ".xml");
+        Path out = Files.createTempFile("repeated", ".json");
+        try {
+            Files.writeString(in, xml);
+            service.streamXmlToJson(in, out, OutputFormat.PRETTY);
+            assertEquals(service.xmlToJson(xml, OutputFormat.PRETTY), Files.readString(out));
+
+            assertThrows(StreamingXmlToJson.RepeatedElementException.class,
+                    () -> service.streamXmlToJson(in, out, OutputFormat.PRETTY, Projection.of("/r/*")));
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    private String streamed(String xml, OutputFormat format, int spillChars) throws Exception {
+        ConversionContext context = ConversionContext.shared();
+        XMLStreamReader reader = context.xmlInputFactory().createXMLStreamReader(new StringReader(xml));
+        StringWriter out = new StringWriter();
+        new StreamingXmlToJson(out, format, context.symbols(), null, spillChars).convert(reader);
+        return out.toString();
+    }
+
+    private static long pendingFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".pending")).count();
+        }
+    }
+
+    // Adjacent repeats only, which is what the streaming converter accepts
+    private static String randomXml(Random random) {
+        StringBuilder sb = new StringBuilder();
+        element(sb, "root", random, 4);
+        return sb.toString();
+    }
+
+    private static void element(StringBuilder sb, String name, Random random, int depth) {
+        sb.append('<').append(name);
+        if (random.nextInt(3) == 0) sb.append(" id=\"").append(random.nextInt(100)).append("\" a=\"x&amp;y\"");
+        sb.append('>');
+        if (random.nextInt(3) == 0) sb.append("text ").append(random.nextInt(10));
+        if (random.nextInt(4) == 0) sb.append("<![CDATA[<").append(random.nextInt(10)).append("> ]]>");
+        if (depth > 0) {
+            int names = random.nextInt(4);
+            for (int n = 0; n < names; n++) {
+                int repeats = 1 + random.nextInt(random.nextBoolean() ? 1 : 5);
+                for (int r = 0; r < repeats; r++) {
+                    sb.append("\n  ");
+                    element(sb, "e" + n, random, depth - 1);
+                }
+            }
+        }
+        sb.append("</").append(name).append('>');
+    }
+
+    // Converts a generated document in a JVM with a 32 MB heap; exits with 0 if the output's CRC matches
+    private static int inSmallHeap(String wrappers, int items) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        Process process = new ProcessBuilder(java, "-Xmx32m", "-cp", classPath,
+                SmallHeap.class.getName(), wrappers, String.valueOf(items))
+                .inheritIO()
+                .start();
+        if (!process.waitFor(5, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            fail("Conversion in a small heap timed out");
+        }
+        return process.exitValue();
+    }
+
+    static final class SmallHeap {
+        public static void main(String[] args) throws Exception {
+            List<String> wrappers = List.of(args[0].split("/"));
+            int items = Integer.parseInt(args[1]);
+
+            StringBuilder head = new StringBuilder();
+            StringBuilder tail = new StringBuilder();
+            StringBuilder jsonHead = new StringBuilder("{");
+            StringBuilder jsonTail = new StringBuilder();
+            for (String w : wrappers) {
+                head.append('<').append(w).append('>');
+                tail.insert(0, "</" + w + ">");
+                jsonHead.append('"').append(w).append("\":{");
+                jsonTail.append('}');
+            }
+            jsonHead.append("\"item\":[");
+            jsonTail.insert(0, "]").append('}');
+
+            CrcWriter out = new CrcWriter();
+            new ManualConverterService().xmlToJson(new Generated(head.toString(), items, tail.toString()),
+                    out, OutputFormat.COMPACT);
+
+            CRC32 expected = new CRC32();
+            update(expected, jsonHead);
+            for (int i = 0; i < items; i++) {
+                if (i > 0) update(expected, ",");
+                update(expected, "{\"@attributes\":{\"id\":\"" + i + "\"},\"name\":\"Item " + i
+                        + "\",\"price\":\"" + i + ".5\"}");
+            }
+            update(expected, jsonTail);
+
+            System.exit(expected.getValue() == out.crc.getValue() ? 0 : 1);
+        }
+
+        private static void update(CRC32 crc, CharSequence ascii) {
+            for (int i = 0; i < ascii.length(); i++) crc.update(ascii.charAt(i));
+        }
+    }
+
+    // <head><item id="0">...</item>...<tail>, produced as it is read
+    private static final class Generated extends Reader {
+        private final String tail;
+        private final int items;
+        private final StringBuilder chunk = new StringBuilder();
+        private int next;
+        private int pos;
+        private boolean done;
+
+        Generated(String head, int items, String tail) {
+            this.items = items;
+            this.tail = tail;
+            chunk.append(head);
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) {
+            if (pos == chunk.length()) {
+                if (done) return -1;
+                chunk.setLength(0);
+                pos = 0;
+                for (int end = Math.min(items, next + 1000); next < end; next++) {
+                    chunk.append("<item id=\"").append(next).append("\"><name>Item ").append(next)
+                            .append("</name><price>").append(next).append(".5</price></item>");
+                }
+                if (next == items) {
+                    chunk.append(tail);
+                    done = true;
+                }
+            }
+            int n = Math.min(len, chunk.length() - pos);
+            chunk.getChars(pos, pos + n, buf, off);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CrcWriter extends Writer {
+        final CRC32 crc = new CRC32();
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            for (int i = off; i < off + len; i++) crc.update(buf[i]);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
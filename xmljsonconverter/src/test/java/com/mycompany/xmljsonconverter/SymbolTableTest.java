@@ -0,0 +1,89 @@
+package com.mycompany.xmljsonconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SymbolTableTest {
+
+    @Test
+    void sameNameIsTheSameSymbol() {
+        SymbolTable symbols = new SymbolTable();
+        SymbolTable.Symbol book = symbols.intern("book");
+
+        assertSame(book, symbols.intern(new String("book")));
+        assertSame(book, symbols.intern("<book>", 1, 5));
+        assertSame(book, symbols.intern(new StringBuilder("a book"), 2, 6));
+        assertNotSame(book, symbols.intern("books"));
+        assertEquals("book", book.name());
+    }
+
+    @Test
+    void buildsTheMarkupOnce() {
+        SymbolTable.Symbol symbol = new SymbolTable().intern("a\"b");
+
+        assertEquals("<a\"b", symbol.startTag);
+        assertEquals("<a\"b>", symbol.openTag);
+        assertEquals("</a\"b>", symbol.closeTag);
+        assertEquals("<a\"b/>", symbol.emptyTag);
+        assertEquals("\"a\\\"b\"", symbol.jsonKey);
+    }
+
+    // A full table recycles slots; the evicted Symbol still works, it is just no longer shared
+    @Test
+    void neverGrowsPastItsSlots() {
+        SymbolTable symbols = new SymbolTable(16);
+        List<SymbolTable.Symbol> interned = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) interned.add(symbols.intern("name" + i));
+
+        for (int i = 0; i < 1000; i++) {
+            SymbolTable.Symbol again = symbols.intern("name" + i);
+            assertEquals(interned.get(i).name(), again.name());
+            assertEquals("<name" + i + ">", again.openTag);
+        }
+        SymbolTable.Symbol last = symbols.intern("name999");
+        assertSame(last, symbols.intern("name999"));
+    }
+
+    @Test
+    void longNamesAreNotKept() {
+        SymbolTable symbols = new SymbolTable();
+        String name = "n".repeat(65);
+
+        SymbolTable.Symbol first = symbols.intern(name);
+        assertEquals(name, first.name());
+        assertNotSame(first, symbols.intern(name));
+        assertSame(symbols.intern("n".repeat(64)), symbols.intern("n".repeat(64)));
+    }
+
+    @Test
+    void sharedAcrossThreads() throws Exception {
+        SymbolTable symbols = new SymbolTable(64);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        String name = "tag" + (i % 200);
+                        SymbolTable.Symbol symbol = symbols.intern(("<" + name + ">"), 1, name.length() + 1);
+                        assertEquals(name, symbol.name());
+                        assertEquals("</" + name + ">", symbol.closeTag);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) result.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}